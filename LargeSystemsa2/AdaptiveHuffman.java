@@ -0,0 +1,364 @@
+import java.io.*;
+
+/**
+ * AdaptiveHuffman
+ *
+ * A single pass Huffman coder (the FGK algorithm) for inputs that can only be
+ * read once, such as pipes, sockets and standard input. No frequencies are
+ * known up front and no header is written: the encoder and decoder each
+ * start with the same empty tree and update it identically after every byte,
+ * so the code always fits the bytes seen so far.
+ *
+ * The tree begins as a single NYT ("not yet transmitted") leaf. A byte that
+ * has not been seen is sent as the code of the NYT leaf followed by the byte
+ * in ESCAPE_BITS raw bits; the NYT leaf then splits into a new NYT leaf and a
+ * leaf for the byte. The escaped value END marks the end of the stream.
+ *
+ * Every node has a number, and the numbers are kept in order of weight, the
+ * sibling property that makes the tree a Huffman tree:
+ *
+ *          512 (root, weight 3)
+ *          /               \
+ *     510 (1)            511 'a' (2)
+ *      /     \
+ *  508 NYT   509 'b' (1)
+ *
+ * After a byte is coded its leaf and every node above it gain one in weight.
+ * Before a node's weight is raised it is swapped with the highest numbered
+ * node of the same weight (unless that is its parent), which keeps the
+ * numbers in order.
+ *
+ * The nodes are held in primitive arrays indexed by number. Coding works a
+ * bit at a time, so this is slower than the two pass coder; PeriodicHuffman
+ * is the faster single pass alternative.
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class AdaptiveHuffman
+{
+    //---------------------------------------------Constants------------------
+
+    /*
+     * The number of byte values.
+     */
+    public static final int SYMBOLS = 256;
+
+    /*
+     * The number of raw bits sent after the NYT code: enough for every byte
+     * value and END.
+     */
+    public static final int ESCAPE_BITS = 9;
+
+    /*
+     * The escaped value that marks the end of the stream.
+     */
+    public static final int END = SYMBOLS;
+
+    /*
+     * The number of the root. There are at most 257 leaves (every byte and
+     * NYT) and 256 internal nodes.
+     */
+    private static final int ROOT = 2 * SYMBOLS;
+
+    /*
+     * Marks a node with no byte value, an internal node or NYT.
+     */
+    private static final int NONE = -1;
+
+    //---------------------------------------------Variables----------------
+    private long [] weight; //The weight of each node, by number
+    private int [] parent; //The parent of each node, NONE for the root
+    private int [] left; //The left (0) child of each internal node, NONE for a leaf
+    private int [] right; //The right (1) child of each internal node
+    private int [] symbol; //The byte value of each leaf, NONE otherwise
+    private int [] leaf; //The number of the leaf of each byte value, NONE if not yet seen
+    private int nyt; //The number of the NYT leaf
+    private int [] path; //Scratch space for the bits of a code, leaf to root
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * Constructor
+     * Creates the starting tree, which holds only the NYT leaf.
+     */
+    public AdaptiveHuffman()
+    {
+        weight = new long [ROOT + 1];
+        parent = new int [ROOT + 1];
+        left = new int [ROOT + 1];
+        right = new int [ROOT + 1];
+        symbol = new int [ROOT + 1];
+        leaf = new int [SYMBOLS];
+        path = new int [ROOT + 1];
+
+        java.util.Arrays.fill(leaf, NONE);
+
+        nyt = ROOT;
+        parent[ROOT] = NONE;
+        left[ROOT] = NONE;
+        right[ROOT] = NONE;
+        symbol[ROOT] = NONE;
+    }
+
+    //-----------------------------------------Factory methods----------------
+    /**
+     * encode
+     * Encodes every byte of the input, then END, and pads the last byte. The
+     * output is flushed but neither stream is closed.
+     * @param in The bytes to encode, read once
+     * @param out The stream to write the encoding to
+     * @throws IOException if either stream fails
+     */
+    public static void encode(InputStream in, OutputStream out) throws IOException
+    {
+        AdaptiveHuffman model = new AdaptiveHuffman();
+        HuffmanEncoder bits = new HuffmanEncoder(new int [SYMBOLS], new byte [SYMBOLS], out); //used for raw bits only
+        byte [] block = new byte [Histogram.BLOCK_SIZE];
+
+        int read = in.read(block);
+
+        while (read != -1)
+        {
+            for (int i = 0; i < read; i++)
+                model.encode(block[i] & 0xFF, bits);
+
+            read = in.read(block);
+        }
+
+        model.encodeEnd(bits);
+        bits.finish();
+    }
+
+    /**
+     * decode
+     * Decodes bytes until END and writes them to the output. The output is
+     * flushed but neither stream is closed.
+     * @param in The encoding
+     * @param out The stream the restored bytes are written to
+     * @throws IOException if the input ends before END, or if either stream fails
+     */
+    public static void decode(InputStream in, OutputStream out) throws IOException
+    {
+        AdaptiveHuffman model = new AdaptiveHuffman();
+        HuffmanDecoder bits = new HuffmanDecoder(new int [SYMBOLS], new byte [SYMBOLS]); //used for raw bits only
+        byte [] block = new byte [Histogram.BLOCK_SIZE];
+        int pos = 0;
+
+        bits.begin(in);
+
+        for (int b = model.decode(bits); b != END; b = model.decode(bits))
+        {
+            block[pos++] = (byte)b;
+
+            if (pos == block.length)
+            {
+                out.write(block, 0, pos);
+                pos = 0;
+            }
+        }
+
+        bits.endBlock(); //fails if the input ran out
+        out.write(block, 0, pos);
+        out.flush();
+    }
+
+    //-----------------------------------------Public methods-----------------
+    /**
+     * encode
+     * Writes the code of one byte and updates the tree.
+     * @param b The byte value, 0 - 255
+     * @param out Where the bits are written
+     * @throws IOException if the output stream fails
+     */
+    public void encode(int b, HuffmanEncoder out) throws IOException
+    {
+        if (leaf[b] == NONE) //not seen yet, escape it
+        {
+            writeCode(nyt, out);
+            out.writeBits(b, ESCAPE_BITS);
+        }
+        else
+        {
+            writeCode(leaf[b], out);
+        }
+
+        update(b);
+    }
+
+    /**
+     * encodeEnd
+     * Writes the mark for the end of the stream.
+     * @param out Where the bits are written
+     * @throws IOException if the output stream fails
+     */
+    public void encodeEnd(HuffmanEncoder out) throws IOException
+    {
+        writeCode(nyt, out);
+        out.writeBits(END, ESCAPE_BITS);
+    }
+
+    /**
+     * decode
+     * Reads the code of one byte and updates the tree.
+     * @param in Where the bits are read from
+     * @return The byte value, 0 - 255, or END
+     * @throws IOException if the input ends early or is not a valid encoding
+     */
+    public int decode(HuffmanDecoder in) throws IOException
+    {
+        int n = ROOT;
+
+        while (left[n] != NONE) //walk down to a leaf
+            n = (in.readBits(1) == 0) ? left[n] : right[n];
+
+        int b = symbol[n];
+
+        if (n == nyt)
+        {
+            b = in.readBits(ESCAPE_BITS);
+
+            if (b == END)
+                return END;
+
+            if (b > END || leaf[b] != NONE)
+                throw new IOException("Corrupt Huffman data: escaped byte " + b + " is not new");
+        }
+
+        update(b);
+
+        return b;
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * writeCode
+     * Writes the code of a node: the path to it from the root.
+     * @param n The number of the node
+     * @param out Where the bits are written
+     */
+    private void writeCode(int n, HuffmanEncoder out) throws IOException
+    {
+        int length = 0;
+
+        for (; n != ROOT; n = parent[n]) //collect the bits from the leaf up...
+            path[length++] = (right[parent[n]] == n) ? 1 : 0;
+
+        while (length > 0) //...and write them from the root down
+            out.writeBits(path[--length], 1);
+    }
+
+    /**
+     * update
+     * Adds one to the weight of a byte's leaf and of every node above it,
+     * swapping nodes to keep their numbers in order of weight.
+     * @param b The byte value just coded
+     */
+    private void update(int b)
+    {
+        int n;
+
+        if (leaf[b] == NONE) //NYT gives birth to a new NYT and a leaf for the byte
+        {
+            int old = nyt;
+
+            nyt = old - 2;
+            int fresh = old - 1;
+
+            makeLeaf(nyt, NONE, old);
+            makeLeaf(fresh, b, old);
+
+            left[old] = nyt;
+            right[old] = fresh;
+            symbol[old] = NONE;
+
+            weight[fresh] = 1;
+            weight[old] = 1;
+
+            if (old == ROOT)
+                return;
+
+            n = parent[old];
+        }
+        else
+        {
+            n = leaf[b];
+        }
+
+        while (n != NONE)
+        {
+            int leader = n;
+
+            while (leader < ROOT && weight[leader + 1] == weight[n]) //the highest numbered node of this weight
+                leader++;
+
+            if (leader != n && leader != parent[n])
+            {
+                swap(n, leader);
+                n = leader;
+            }
+
+            weight[n]++;
+            n = parent[n];
+        }
+    }
+
+    /**
+     * makeLeaf
+     * Sets up a node as a leaf of weight zero.
+     * @param n The number of the node
+     * @param b The byte value of the leaf, NONE for NYT
+     * @param p The parent of the leaf
+     */
+    private void makeLeaf(int n, int b, int p)
+    {
+        weight[n] = 0;
+        parent[n] = p;
+        left[n] = NONE;
+        right[n] = NONE;
+        symbol[n] = b;
+
+        if (b != NONE)
+            leaf[b] = n;
+    }
+
+    /**
+     * swap
+     * Swaps the subtrees at two numbers. The numbers, and so the parents, stay
+     * where they are; the weights, children and byte values move.
+     * @param a The number of one node
+     * @param c The number of the other, which is not above or below it
+     */
+    private void swap(int a, int c)
+    {
+        long w = weight[a]; weight[a] = weight[c]; weight[c] = w;
+        int l = left[a]; left[a] = left[c]; left[c] = l;
+        int r = right[a]; right[a] = right[c]; right[c] = r;
+        int s = symbol[a]; symbol[a] = symbol[c]; symbol[c] = s;
+
+        adopt(a);
+        adopt(c);
+    }
+
+    /**
+     * adopt
+     * Points the children of a node, or the leaf of its byte value, back at it
+     * after it has moved.
+     * @param n The number of the node
+     */
+    private void adopt(int n)
+    {
+        if (left[n] != NONE)
+        {
+            parent[left[n]] = n;
+            parent[right[n]] = n;
+        }
+        else if (symbol[n] != NONE)
+        {
+            leaf[symbol[n]] = n;
+        }
+        else
+        {
+            nyt = n;
+        }
+    }
+}
@@ -0,0 +1,701 @@
+import java.io.*;
+import java.lang.management.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Benchmark
+ *
+ * Times each stage of the Huffman coder on its own, apart from the file I/O,
+ * so an optimisation can be measured and a regression caught. Each stage is
+ * run on inputs held in memory:
+ *
+ *  histogram - counting the byte frequencies (Histogram, what freqDist uses)
+ *  tree      - building the tree through the priority queue and the code table
+ *  sorted    - finding the code lengths from the sorted counts instead, with no tree
+ *  radix     - building the tree through a RadixPriorityQueue instead
+ *  encode    - packing the codes of the input (HuffmanEncoder, what transcode uses)
+ *  decode    - restoring the input from its codes (HuffmanDecoder)
+ *  queue     - each priority queue, filled with random priorities and emptied,
+ *              and held at a constant size while its front is taken and
+ *              put back later, as a scheduler does: the binary
+ *              PriorityQueueHeap, 4-ary and 8-ary DaryPriorityQueueHeaps,
+ *              and the PairingPriorityQueueHeap; also the LongPriorityQueueHeap,
+ *              which boxes nothing, and the RadixPriorityQueue, filled and
+ *              emptied (the hold model is not monotone, as a radix queue needs)
+ *  shared    - a queue shared by 1 to 64 threads that each enqueue and poll:
+ *              the ConcurrentPriorityQueue, and a PriorityQueueHeap behind a lock
+ *
+ * The inputs are the bundled largetest.txt, small.txt and test, and synthetic
+ * data of several sizes and entropies: uniform random bytes (8 bits a byte),
+ * a geometric distribution (about 2 bits a byte) and a single repeated byte.
+ *
+ * Every stage is run repeatedly for a warm up period, so the JIT has compiled
+ * it, and then for a measured period. Reported are the throughput in MB of
+ * input a second, the runs a second (the better measure of the tree, which
+ * depends on the number of byte values rather than the size of the input),
+ * and the bytes allocated by the measuring thread per run, as reported by the
+ * JVM. A stage run on a tiny input is repeated many times over, so the
+ * figures for small inputs are still meaningful.
+ *
+ * Usage: Benchmark [directory of bundled files] [seconds to measure each stage]
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class Benchmark
+{
+    //---------------------------------------------Constants------------------
+
+    /*
+     * The sizes of the synthetic inputs.
+     */
+    private static final int [] SIZES = { 1 << 16, 1 << 20, 16 << 20 };
+
+    /*
+     * The bundled inputs, looked for in the given directory.
+     */
+    private static final String [] BUNDLED = { "largetest.txt", "small.txt", "test" };
+
+    /*
+     * The sizes of the queues filled and emptied by the queue stage.
+     */
+    private static final int [] QUEUE_SIZES = { 256, 1 << 16, 1 << 20 };
+
+    /*
+     * The priority queues compared by the queue stages: PriorityQueueHeap, the
+     * DaryPriorityQueueHeap of 4 and of 8 children and the PairingPriorityQueueHeap.
+     */
+    private static final String [] QUEUES = { "binary", "4-ary", "8-ary", "pairing" };
+
+    /*
+     * The numbers of threads sharing a queue in the shared queue stage.
+     */
+    private static final int [] THREADS = { 1, 2, 4, 8, 16, 32, 64 };
+
+    /*
+     * The number of enqueues, each followed by a poll, in a run of the shared
+     * queue stage, split between the threads.
+     */
+    private static final int SHARED_OPS = 1 << 16;
+
+    /*
+     * The number of elements a shared queue holds before the threads start.
+     */
+    private static final int SHARED_START = 1024;
+
+    /*
+     * The fixed seed for the synthetic inputs, so every run measures the same data.
+     */
+    private static final long SEED = 42;
+
+    /*
+     * One MB, for the throughput.
+     */
+    private static final double MB = 1 << 20;
+
+    //---------------------------------------------Variables----------------
+    private static volatile long sink; //Results are folded in here, so the JIT cannot discard the work
+
+    private long warmupNanos; //How long to run a stage before measuring it
+    private long measureNanos; //How long to measure a stage for
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * Constructor
+     * Creates a benchmark that measures each stage for the given time.
+     * @param seconds The time to measure each stage for, and to warm it up for
+     */
+    public Benchmark(double seconds)
+    {
+        measureNanos = (long)(seconds * 1e9);
+        warmupNanos = measureNanos;
+    }
+
+    /**
+     * main
+     * Runs every stage on every input and prints a table of the results.
+     * Usage: Benchmark [directory of bundled files] [seconds to measure each stage]
+     */
+    public static void main(String [] args) throws IOException, EmptyQueueException
+    {
+        File dir = new File(args.length > 0 ? args[0] : ".");
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+
+        Benchmark b = new Benchmark(seconds);
+
+        System.out.println(String.format("%-24s %10s %8s %-10s %10s %12s %14s", "input", "bytes", "bits/B", "stage", "MB/s", "ops/s", "alloc B/op"));
+
+        for (int i = 0; i < BUNDLED.length; i++)
+        {
+            File f = new File(dir, BUNDLED[i]);
+
+            if (f.isFile())
+                b.run(BUNDLED[i], readFile(f));
+            else
+                System.out.println("Skipping " + f + ": not found");
+        }
+
+        Random random = new Random(SEED);
+
+        for (int i = 0; i < SIZES.length; i++)
+        {
+            b.run("uniform", uniform(SIZES[i], random));
+            b.run("geometric", geometric(SIZES[i], random));
+            b.run("single", new byte [SIZES[i]]);
+        }
+
+        for (int i = 0; i < QUEUE_SIZES.length; i++)
+            b.runQueue(QUEUE_SIZES[i], random);
+
+        b.runShared(random);
+    }
+
+    //-----------------------------------------Public methods-----------------
+    /**
+     * run
+     * Measures every coding stage on one input and prints the results.
+     * @param name The name of the input
+     * @param data The input
+     */
+    public void run(String name, final byte [] data) throws IOException
+    {
+        final Histogram histogram = Histogram.of(data, 0, data.length);
+        final HuffmanTree tree = new HuffmanTree(histogram);
+        final int [] codes = tree.getCodes();
+        final byte [] lengths = tree.getCodeLengths();
+
+        final ByteArrayOutputStream encoded = new ByteArrayOutputStream(data.length + 16);
+        HuffmanEncoder encoder = new HuffmanEncoder(codes, lengths, encoded);
+        encoder.encode(data, 0, data.length);
+        encoder.finish();
+
+        final byte [] packed = encoded.toByteArray();
+        final HuffmanDecoder decoder = new HuffmanDecoder(codes, lengths);
+        final ByteBuffer restored = ByteBuffer.allocate(data.length);
+
+        decoder.begin(packed, 0, packed.length);
+        decoder.decodeBlock(restored, data.length);
+
+        if (! Arrays.equals(data, restored.array()))
+            throw new IllegalStateException("The round trip of " + name + " failed");
+
+        String label = String.format("%-24s %10d %8.3f", name, data.length, entropy(histogram));
+
+        report(label, "histogram", data.length, measure(new Stage()
+        {
+            public long run()
+            {
+                return Histogram.of(data, 0, data.length).getTotal();
+            }
+        }));
+
+        report(label, "tree", data.length, measure(new Stage()
+        {
+            public long run()
+            {
+                return new HuffmanTree(histogram).getCodeLengths()[0];
+            }
+        }));
+
+        final HuffmanOptions sorted = new HuffmanOptions();
+        sorted.setSortedBuild(true);
+
+        report(label, "sorted", data.length, measure(new Stage()
+        {
+            public long run()
+            {
+                return new HuffmanTree(histogram, sorted).getCodeLengths()[0];
+            }
+        }));
+
+        final HuffmanOptions radix = new HuffmanOptions();
+        radix.setRadixQueue(true);
+
+        report(label, "radix", data.length, measure(new Stage()
+        {
+            public long run()
+            {
+                return new HuffmanTree(histogram, radix).getCodeLengths()[0];
+            }
+        }));
+
+        report(label, "encode", data.length, measure(new Stage()
+        {
+            public long run() throws IOException
+            {
+                encoded.reset();
+
+                HuffmanEncoder e = new HuffmanEncoder(codes, lengths, encoded);
+                e.encode(data, 0, data.length);
+                e.finish();
+
+                return e.getBitsWritten();
+            }
+        }));
+
+        report(label, "decode", data.length, measure(new Stage()
+        {
+            public long run() throws IOException
+            {
+                restored.clear();
+
+                decoder.begin(packed, 0, packed.length);
+                decoder.decodeBlock(restored, data.length);
+
+                return restored.get(0);
+            }
+        }));
+    }
+
+    /**
+     * runQueue
+     * Measures each priority queue on two workloads. In the first the queue is
+     * filled with random priorities and emptied. In the second, the hold model
+     * of a scheduler, a queue of the given size repeatedly has its front taken
+     * and an element put back a random distance later, so it stays the same
+     * size. The throughput is given in MB of 8 byte priorities.
+     * @param size The number of elements queued
+     * @param random The source of the priorities
+     */
+    public void runQueue(final int size, Random random) throws EmptyQueueException
+    {
+        final long [] priorities = new long [size];
+
+        for (int i = 0; i < size; i++)
+            priorities[i] = random.nextInt(1 << 20);
+
+        final Object element = new Object();
+        String fillLabel = String.format("%-24s %10d %8s", "queue fill and empty", size, "-");
+        String holdLabel = String.format("%-24s %10d %8s", "queue hold", size, "-");
+
+        for (int q = 0; q < QUEUES.length; q++)
+        {
+            final String kind = QUEUES[q];
+
+            report(fillLabel, kind, 8L * size, measure(new Stage()
+            {
+                public long run() throws EmptyQueueException
+                {
+                    PriorityQueue<Object, Long> pq = newQueue(kind);
+
+                    for (int i = 0; i < size; i++)
+                        pq.enqueue(priorities[i], element);
+
+                    long n = 0;
+
+                    while (! pq.isEmpty())
+                    {
+                        pq.dequeue();
+                        n++;
+                    }
+
+                    return n;
+                }
+            }));
+        }
+
+        report(fillLabel, "long", 8L * size, measure(new Stage()
+        {
+            public long run() throws EmptyQueueException
+            {
+                LongPriorityQueue<Object> pq = new LongPriorityQueueHeap<Object>();
+
+                for (int i = 0; i < size; i++)
+                    pq.enqueue(priorities[i], element);
+
+                long n = 0;
+
+                while (! pq.isEmpty())
+                {
+                    pq.dequeue();
+                    n++;
+                }
+
+                return n;
+            }
+        }));
+
+        report(fillLabel, "radix", 8L * size, measure(new Stage()
+        {
+            public long run() throws EmptyQueueException
+            {
+                LongPriorityQueue<Object> pq = new RadixPriorityQueue<Object>();
+
+                for (int i = 0; i < size; i++)
+                    pq.enqueue(priorities[i], element);
+
+                long n = 0;
+
+                while (! pq.isEmpty())
+                {
+                    pq.dequeue();
+                    n++;
+                }
+
+                return n;
+            }
+        }));
+
+        for (int q = 0; q < QUEUES.length; q++)
+        {
+            final PriorityQueue<Object, Long> pq = newQueue(QUEUES[q]);
+
+            for (int i = 0; i < size; i++)
+                pq.enqueue(priorities[i], element);
+
+            report(holdLabel, QUEUES[q], 8L * size, measure(new Stage()
+            {
+                public long run() throws EmptyQueueException
+                {
+                    PriorityQueue<Object, Long> held = pq;
+                    long now = 0;
+
+                    for (int i = 0; i < size; i++) //take the front, put it back later
+                    {
+                        held.dequeue();
+                        now = now + priorities[i] % 64;
+                        held.enqueue(now + priorities[i], element);
+                    }
+
+                    return now;
+                }
+            }));
+        }
+    }
+
+    /**
+     * runShared
+     * Measures a queue shared by many threads, each enqueuing an element and
+     * then polling one, like a job queue fed and drained by the same workers:
+     * the ConcurrentPriorityQueue against a PriorityQueueHeap behind a lock.
+     * The throughput is given in MB of 8 byte priorities, over all the threads;
+     * the allocation is that of the measuring thread alone.
+     * @param random The source of the priorities
+     */
+    public void runShared(Random random) throws EmptyQueueException
+    {
+        long [] priorities = new long [SHARED_START + SHARED_OPS];
+
+        for (int i = 0; i < priorities.length; i++)
+            priorities[i] = random.nextInt(1 << 20);
+
+        for (int t = 0; t < THREADS.length; t++)
+        {
+            ExecutorService pool = Executors.newFixedThreadPool(THREADS[t]);
+            String label = String.format("%-24s %10d %8s", "shared queue, threads", THREADS[t], "-");
+
+            try
+            {
+                report(label, "locked", 8L * SHARED_OPS, measure(sharedStage(pool, THREADS[t], true, priorities)));
+                report(label, "skiplist", 8L * SHARED_OPS, measure(sharedStage(pool, THREADS[t], false, priorities)));
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+        }
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * sharedStage
+     * Returns a run of the shared queue stage: a queue is filled with
+     * SHARED_START elements, then the threads share SHARED_OPS enqueues, each
+     * followed by a poll.
+     * @param pool The threads
+     * @param threads The number of threads in the pool
+     * @param locked true for a PriorityQueueHeap behind a lock, false for a ConcurrentPriorityQueue
+     * @param priorities The priorities to enqueue
+     */
+    private Stage sharedStage(final ExecutorService pool, final int threads, final boolean locked, final long [] priorities)
+    {
+        return new Stage()
+        {
+            public long run() throws Exception
+            {
+                final PriorityQueue<Object, Long> pq;
+
+                if (locked)
+                    pq = new LockedQueue<Object, Long>(new PriorityQueueHeap<Object, Long>());
+                else
+                    pq = new ConcurrentPriorityQueue<Object, Long>();
+
+                final Object element = new Object();
+
+                for (int i = 0; i < SHARED_START; i++)
+                    pq.enqueue(priorities[i], element);
+
+                List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+
+                for (int t = 0; t < threads; t++)
+                {
+                    final int from = SHARED_START + (int)((long)SHARED_OPS * t / threads);
+                    final int to = SHARED_START + (int)((long)SHARED_OPS * (t + 1) / threads);
+
+                    tasks.add(new Callable<Long>()
+                    {
+                        public Long call() throws EmptyQueueException
+                        {
+                            long n = 0;
+
+                            for (int i = from; i < to; i++)
+                            {
+                                pq.enqueue(priorities[i], element);
+
+                                if (pq.poll() != null)
+                                    n++;
+                            }
+
+                            return n;
+                        }
+                    });
+                }
+
+                long n = 0;
+
+                for (Future<Long> f : pool.invokeAll(tasks))
+                    n = n + f.get();
+
+                return n;
+            }
+        };
+    }
+
+    /**
+     * measure
+     * Runs the stage for the warm up period, then for the measured period.
+     * @param stage The stage to measure
+     * @return The number of runs, the nanoseconds they took and the bytes they allocated
+     */
+    private long [] measure(Stage stage)
+    {
+        try
+        {
+            long end = System.nanoTime() + warmupNanos;
+
+            while (System.nanoTime() < end)
+                sink = sink + stage.run();
+
+            long allocStart = allocated();
+            long start = System.nanoTime();
+            end = start + measureNanos;
+            long runs = 0;
+            long now = start;
+
+            while (now < end)
+            {
+                sink = sink + stage.run();
+                runs++;
+                now = System.nanoTime();
+            }
+
+            long allocEnd = allocated();
+
+            return new long [] { runs, now - start, allocStart < 0 ? -1 : allocEnd - allocStart };
+        }
+        catch (Exception e)
+        {
+            throw new IllegalStateException("The stage failed", e);
+        }
+    }
+
+    /**
+     * report
+     * Prints one line of results.
+     * @param label The input the stage was run on
+     * @param stage The name of the stage
+     * @param bytes The number of bytes a run of the stage processes
+     * @param result The runs, nanoseconds and bytes allocated, from measure
+     */
+    private void report(String label, String stage, long bytes, long [] result)
+    {
+        double opsPerSecond = result[0] / (result[1] / 1e9);
+        double mbPerSecond = bytes * opsPerSecond / MB;
+        String alloc = result[2] < 0 ? "n/a" : String.valueOf(result[2] / result[0]);
+
+        System.out.println(String.format("%s %-10s %10.1f %12.1f %14s", label, stage, mbPerSecond, opsPerSecond, alloc));
+    }
+
+    /**
+     * newQueue
+     * Returns an empty priority queue of the given kind.
+     * @param kind One of QUEUES
+     */
+    private static PriorityQueue<Object, Long> newQueue(String kind)
+    {
+        if (kind.equals("4-ary"))
+            return new DaryPriorityQueueHeap<Object, Long>(4);
+
+        if (kind.equals("8-ary"))
+            return new DaryPriorityQueueHeap<Object, Long>(8);
+
+        if (kind.equals("pairing"))
+            return new PairingPriorityQueueHeap<Object, Long>();
+
+        return new PriorityQueueHeap<Object, Long>();
+    }
+
+    /**
+     * allocated
+     * Returns the number of bytes the current thread has allocated, or -1 if the
+     * JVM cannot say.
+     */
+    private static long allocated()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+
+        return -1;
+    }
+
+    /**
+     * entropy
+     * Returns the order 0 entropy of a distribution, the fewest bits a byte any
+     * prefix code could average.
+     * @param h The distribution
+     */
+    private static double entropy(Histogram h)
+    {
+        double bits = 0;
+
+        for (int b = 0; b < Histogram.SYMBOLS; b++)
+        {
+            if (h.getCount(b) > 0)
+            {
+                double p = (double)h.getCount(b) / h.getTotal();
+                bits = bits - p * Math.log(p) / Math.log(2);
+            }
+        }
+
+        return bits;
+    }
+
+    /**
+     * uniform
+     * Returns random bytes, every value equally likely.
+     * @param size The number of bytes
+     * @param random The source of the bytes
+     */
+    private static byte [] uniform(int size, Random random)
+    {
+        byte [] data = new byte [size];
+        random.nextBytes(data);
+
+        return data;
+    }
+
+    /**
+     * geometric
+     * Returns bytes where each value is half as likely as the one before it.
+     * @param size The number of bytes
+     * @param random The source of the bytes
+     */
+    private static byte [] geometric(int size, Random random)
+    {
+        byte [] data = new byte [size];
+
+        for (int i = 0; i < size; i++)
+        {
+            int b = Long.numberOfTrailingZeros(random.nextLong() | Long.MIN_VALUE); //0 half the time, 1 a quarter...
+            data[i] = (byte)('a' + b);
+        }
+
+        return data;
+    }
+
+    /**
+     * readFile
+     * Reads a whole file into memory.
+     * @param f The file
+     */
+    private static byte [] readFile(File f) throws IOException
+    {
+        byte [] data = new byte [(int)f.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(f));
+
+        try
+        {
+            in.readFully(data);
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return data;
+    }
+
+    /**
+     * LockedQueue
+     * A priority queue made thread safe by one lock around every method, the
+     * usual way to share a queue that is not.
+     * @param <T> The type of the elements being stored
+     * @param <K> The key value of the elements
+     */
+    private static class LockedQueue <T, K extends Comparable<K>> implements PriorityQueue <T, K>
+    {
+        private PriorityQueue<T, K> queue; //The queue behind the lock
+
+        /**
+         * Constructor
+         * @param q The queue to lock
+         */
+        private LockedQueue(PriorityQueue<T, K> q)
+        {
+            queue = q;
+        }
+
+        public synchronized boolean isEmpty()
+        {
+            return queue.isEmpty();
+        }
+
+        public synchronized void enqueue(K priority, T element)
+        {
+            queue.enqueue(priority, element);
+        }
+
+        public synchronized void dequeue() throws EmptyQueueException
+        {
+            queue.dequeue();
+        }
+
+        public synchronized T front() throws EmptyQueueException
+        {
+            return queue.front();
+        }
+
+        public synchronized T poll() throws EmptyQueueException
+        {
+            return queue.poll();
+        }
+
+        public synchronized void replaceTop(K priority, T element) throws EmptyQueueException
+        {
+            queue.replaceTop(priority, element);
+        }
+
+        public synchronized void enqueueAll(K [] priorities, T [] elements)
+        {
+            queue.enqueueAll(priorities, elements);
+        }
+    }
+
+    /**
+     * Stage
+     * One stage of the coder, run repeatedly to be measured.
+     */
+    private interface Stage
+    {
+        /**
+         * run
+         * Runs the stage once.
+         * @return Some result of the run, so the work cannot be discarded
+         */
+        long run() throws Exception;
+    }
+}
@@ -0,0 +1,300 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * BlockDecoder
+ *
+ * Decodes a file written by a BlockEncoder on several threads at once. The
+ * index at the end of the file gives the compressed size of every block, so
+ * the offset of each block in the compressed file is known before any is
+ * decoded; the offset of its original in the restored output is simply its
+ * number times the block size:
+ *
+ * compressed: [header][block 0][block 1]...[block n-1][index]
+ *                        |        |            |
+ * restored:   [block 0 ][block 1 ]...      [block n-1]
+ *
+ * The blocks are handed out in runs of at least RUN_SIZE bytes of output. A
+ * task reads the compressed bytes of its run with one positional read and
+ * decodes every block straight into its place in the output: either a
+ * preallocated byte array or a region of the output file mapped into memory.
+ * No task waits on another, so the work spreads across every core. The
+ * blocks of a STORED file are copied into place rather than decoded.
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class BlockDecoder
+{
+    //---------------------------------------------Constants------------------
+
+    /*
+     * The least number of bytes of output each task restores, so small blocks
+     * are not each given a task and a mapping of their own.
+     */
+    public static final int RUN_SIZE = 1 << 20;
+
+    //---------------------------------------------Variables----------------
+    private int threads; //The number of worker threads
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * Constructor
+     * Creates a block decoder that uses the given number of threads.
+     * @param threads The number of worker threads
+     */
+    public BlockDecoder(int threads)
+    {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is required");
+
+        this.threads = threads;
+    }
+
+    //-----------------------------------------Public methods-----------------
+    /**
+     * decode
+     * Restores a blocked compressed file to the output file, which is created at
+     * its full length up front and filled in through memory mapped regions.
+     * @param input The compressed file
+     * @param output The file the restored bytes are written to
+     * @throws IOException if either file cannot be accessed or the input is not a valid blocked encoding
+     */
+    public void decode(File input, File output) throws IOException
+    {
+        FileInputStream in = new FileInputStream(input);
+        RandomAccessFile out = null;
+
+        try
+        {
+            FileChannel channel = in.getChannel();
+            HuffmanHeader header = HuffmanHeader.read(in); //read unbuffered, so the channel is left at the first block
+
+            out = new RandomAccessFile(output, "rw");
+            out.setLength(header.getLength());
+
+            decodeBlocks(channel, header, out.getChannel(), null);
+        }
+        finally
+        {
+            in.close();
+
+            if (out != null)
+                out.close();
+        }
+    }
+
+    /**
+     * decode
+     * Restores a blocked compressed file into a new byte array.
+     * @param input The compressed file
+     * @return The restored bytes
+     * @throws IOException if the file cannot be read or is not a valid blocked encoding
+     */
+    public byte [] decode(File input) throws IOException
+    {
+        FileInputStream in = new FileInputStream(input);
+
+        try
+        {
+            FileChannel channel = in.getChannel();
+            HuffmanHeader header = HuffmanHeader.read(in);
+
+            if (header.getLength() > Integer.MAX_VALUE - 8)
+                throw new IOException("The restored file is too large for an array");
+
+            byte [] restored = new byte [(int)header.getLength()];
+            decodeBlocks(channel, header, null, restored);
+
+            return restored;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * decodeBlocks
+     * Reads the block index, then decodes every run of blocks on the pool into
+     * either the output file or the array, whichever is given.
+     * @param channel The compressed file, positioned at the first block
+     * @param header The header of the compressed file
+     * @param file The file to restore to, already at its full length, or null
+     * @param array The array to restore to, or null
+     */
+    private void decodeBlocks(final FileChannel channel, HuffmanHeader header, final FileChannel file, final byte [] array) throws IOException
+    {
+        if (! header.isBlocked())
+            throw new IOException("The compressed file is not made up of blocks");
+
+        final long [] offsets = readIndex(channel, header.getBlockCount());
+        final long length = header.getLength();
+        final int blockSize = header.getBlockSize();
+        final HuffmanDecoder shared = header.isStored() ? null : new HuffmanDecoder(header.getCodes(), header.getCodeLengths()); //no code to build for stored blocks
+
+        int blocks = offsets.length - 1;
+        int run = Math.max(1, RUN_SIZE / blockSize); //blocks per task
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        try
+        {
+            LinkedList<Future<Void>> tasks = new LinkedList<Future<Void>>();
+
+            for (int first = 0; first < blocks; first = first + run)
+            {
+                final int from = first;
+                final int to = Math.min(first + run, blocks);
+
+                tasks.add(pool.submit(new Callable<Void>()
+                {
+                    public Void call() throws IOException
+                    {
+                        long start = (long)from * blockSize;
+                        int len = (int)(Math.min((long)to * blockSize, length) - start);
+
+                        ByteBuffer target = (file != null) ? file.map(FileChannel.MapMode.READ_WRITE, start, len)
+                                                           : ByteBuffer.wrap(array, (int)start, len);
+
+                        decodeRun(channel, offsets, from, to, blockSize, (shared == null) ? null : new HuffmanDecoder(shared), target);
+
+                        return null;
+                    }
+                }));
+            }
+
+            while (! tasks.isEmpty())
+                await(tasks.removeFirst());
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * decodeRun
+     * Reads the compressed bytes of a run of blocks and decodes each block in turn
+     * into the target.
+     * @param channel The compressed file
+     * @param offsets The offset of every block in the compressed file, and of the end of the last
+     * @param from The first block of the run
+     * @param to The block after the last of the run
+     * @param blockSize The number of bytes of original in a whole block
+     * @param decoder A decoder for this task alone, or null if the blocks are stored
+     * @param target The buffer the run is restored to, exactly the length of its original
+     */
+    private void decodeRun(FileChannel channel, long [] offsets, int from, int to, int blockSize, HuffmanDecoder decoder, ByteBuffer target) throws IOException
+    {
+        long base = offsets[from];
+
+        if (offsets[to] - base > Integer.MAX_VALUE - 8)
+            throw new IOException("Corrupt Huffman data: blocks " + from + " - " + (to - 1) + " are too large");
+
+        ByteBuffer compressed = ByteBuffer.allocate((int)(offsets[to] - base));
+
+        while (compressed.hasRemaining())
+        {
+            if (channel.read(compressed, base + compressed.position()) < 0)
+                throw new EOFException("The compressed file shrank while being decoded");
+        }
+
+        byte [] data = compressed.array();
+
+        for (int b = from; b < to; b++)
+        {
+            int len = Math.min(blockSize, target.remaining());
+            int size = (int)(offsets[b + 1] - offsets[b]);
+
+            if (decoder == null) //stored, so the block is its own original
+            {
+                if (size != len)
+                    throw new IOException("Corrupt Huffman data: stored block " + b + " is " + size + " bytes, not " + len);
+
+                target.put(data, (int)(offsets[b] - base), len);
+            }
+            else
+            {
+                decoder.begin(data, (int)(offsets[b] - base), size); //nothing outside the block is read
+                decoder.decodeBlock(target, len);
+            }
+        }
+    }
+
+    /**
+     * readIndex
+     * Reads the compressed size of every block from the end of the file and turns
+     * them into offsets. The blocks must exactly fill the space between the header
+     * and the index.
+     * @param channel The compressed file, positioned at the first block
+     * @param blocks The number of blocks
+     * @return The offset of every block, followed by the offset of the index
+     * @throws IOException if the index does not match the file
+     */
+    private long [] readIndex(FileChannel channel, long blocks) throws IOException
+    {
+        long start = channel.position();
+        long indexStart = channel.size() - 4 * blocks;
+
+        if (blocks > Integer.MAX_VALUE - 1 || indexStart < start)
+            throw new IOException("Corrupt Huffman data: the file is too short for its block index");
+
+        ByteBuffer index = ByteBuffer.allocate((int)(4 * blocks)); //big endian, as DataOutputStream wrote it
+
+        while (index.hasRemaining())
+        {
+            if (channel.read(index, indexStart + index.position()) < 0)
+                throw new EOFException("The compressed file shrank while being decoded");
+        }
+
+        index.flip();
+
+        long [] offsets = new long [(int)blocks + 1];
+        offsets[0] = start;
+
+        for (int b = 0; b < blocks; b++)
+        {
+            int size = index.getInt();
+
+            if (size < 0)
+                throw new IOException("Corrupt Huffman data: block " + b + " has a negative size");
+
+            offsets[b + 1] = offsets[b] + size;
+        }
+
+        if (offsets[(int)blocks] != indexStart)
+            throw new IOException("Corrupt Huffman data: the block index does not match the file");
+
+        return offsets;
+    }
+
+    /**
+     * await
+     * Waits for a run of blocks to be decoded, passing on any failure.
+     * @param f The run being decoded
+     */
+    private void await(Future<Void> f) throws IOException
+    {
+        try
+        {
+            f.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decoding blocks");
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+                throw (IOException)e.getCause();
+
+            throw new IOException("A block could not be decoded", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,228 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * BlockEncoder
+ *
+ * Encodes a file as a run of independent blocks, each on its own worker
+ * thread. The file is cut into blocks of blockSize bytes (the last may be
+ * shorter); each block is read with a positional read, encoded with the
+ * shared code table into its own buffer and padded to a whole byte. The
+ * blocks are written out in order, followed by an index of the compressed
+ * size of every block:
+ *
+ * [block 0][block 1]...[block n-1][size 0 : 4 bytes][size 1]...[size n-1]
+ *
+ * With setStored the blocks are copied as they are instead of coded, and the
+ * index gives the length of each; for an input no code can shrink.
+ *
+ * Only a window of a few blocks per thread is in flight at once, so memory
+ * use is bounded however large the file. Because no block depends on
+ * another, both compression and decompression can proceed a block per core.
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class BlockEncoder
+{
+    //---------------------------------------------Constants------------------
+
+    /*
+     * The largest block allowed, so the compressed size of a block of codes
+     * up to 32 bits still fits the int in the index.
+     */
+    public static final int MAX_BLOCK_SIZE = 1 << 28;
+
+    /*
+     * The number of blocks each thread may have in flight.
+     */
+    private static final int WINDOW_PER_THREAD = 2;
+
+    //---------------------------------------------Variables----------------
+    private int [] codes; //The code of each byte value
+    private byte [] lengths; //The length of the code of each byte value
+    private int blockSize; //The length of the original of each block
+    private int threads; //The number of worker threads
+    private long [] counts; //Where the bytes encoded are also counted, null if they are not
+    private boolean stored; //Whether the blocks are copied as they are rather than coded
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * Constructor
+     * Creates a block encoder for the given code table.
+     * @param codes The code for each of the 256 byte values, right aligned
+     * @param lengths The length of each code in bits
+     * @param blockSize The number of bytes of input in each block
+     * @param threads The number of worker threads
+     */
+    public BlockEncoder(int [] codes, byte [] lengths, int blockSize, int threads)
+    {
+        if (blockSize < 1 || blockSize > MAX_BLOCK_SIZE)
+            throw new IllegalArgumentException("The block size must be between 1 and " + MAX_BLOCK_SIZE);
+
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is required");
+
+        this.codes = codes;
+        this.lengths = lengths;
+        this.blockSize = blockSize;
+        this.threads = threads;
+    }
+
+    //-----------------------------------------Public methods-----------------
+    /**
+     * setCounts
+     * Has every byte encoded from now on counted into the given array as well,
+     * so a code built from estimated counts can be measured against the exact
+     * ones without reading the input again. Each block is counted by the
+     * thread that encodes it.
+     * @param c The counts, indexed by byte value, or null to count nothing
+     */
+    public void setCounts(long [] c)
+    {
+        counts = c;
+    }
+
+    /**
+     * setStored
+     * Sets whether the blocks are copied as they are rather than coded, as the
+     * header of a STORED file promises.
+     * @param s true to store the blocks
+     */
+    public void setStored(boolean s)
+    {
+        stored = s;
+    }
+
+    /**
+     * encode
+     * Encodes every block of the file and writes them, then the index, to the output.
+     * The output is flushed but not closed.
+     * @param input The file to encode
+     * @param out The stream to write to, positioned after the header
+     * @throws IOException if the file cannot be read or the output written
+     */
+    public void encode(File input, OutputStream out) throws IOException
+    {
+        FileInputStream in = new FileInputStream(input);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        try
+        {
+            final FileChannel channel = in.getChannel();
+            long size = channel.size();
+            long blocks = (size + blockSize - 1) / blockSize;
+
+            int [] sizes = new int [(int)blocks];
+
+            LinkedList<Future<byte []>> window = new LinkedList<Future<byte []>>();
+            long next = 0; //the next block to submit
+            int written = 0; //the next block to write
+
+            while (written < blocks)
+            {
+                while (next < blocks && window.size() < threads * WINDOW_PER_THREAD) //keep the workers busy
+                {
+                    final long position = next * blockSize;
+                    final int len = (int)Math.min(blockSize, size - position);
+
+                    window.add(pool.submit(new Callable<byte []>()
+                    {
+                        public byte [] call() throws IOException
+                        {
+                            return encodeBlock(channel, position, len);
+                        }
+                    }));
+                    next++;
+                }
+
+                byte [] block = await(window.removeFirst()); //write the oldest block as soon as it is done
+                out.write(block);
+                sizes[written++] = block.length;
+            }
+
+            DataOutputStream data = new DataOutputStream(out);
+            for (int i = 0; i < sizes.length; i++)
+                data.writeInt(sizes[i]);
+
+            data.flush();
+        }
+        finally
+        {
+            pool.shutdownNow();
+            in.close();
+        }
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * encodeBlock
+     * Reads one block of the file and encodes it into a byte array of its own,
+     * or returns the block itself if it is stored.
+     * @param channel The file being encoded
+     * @param position The offset of the block in the file
+     * @param len The length of the block
+     * @return The encoded block, padded to a whole byte, or the stored block
+     */
+    private byte [] encodeBlock(FileChannel channel, long position, int len) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(len);
+
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("The file shrank while being encoded");
+        }
+
+        if (counts != null)
+        {
+            Histogram h = Histogram.of(buffer.array(), 0, len);
+
+            synchronized (counts)
+            {
+                for (int b = 0; b < counts.length; b++)
+                    counts[b] = counts[b] + h.getCount(b);
+            }
+        }
+
+        if (stored)
+            return buffer.array();
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(len / 2 + 16);
+        HuffmanEncoder encoder = new HuffmanEncoder(codes, lengths, encoded, Math.min(len + 8, HuffmanEncoder.BUFFER_SIZE));
+
+        encoder.encode(buffer.array(), 0, len);
+        encoder.finish();
+
+        return encoded.toByteArray();
+    }
+
+    /**
+     * await
+     * Waits for a block to be encoded, passing on any failure.
+     * @param f The block being encoded
+     * @return The encoded block
+     */
+    private byte [] await(Future<byte []> f) throws IOException
+    {
+        try
+        {
+            return f.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while encoding blocks");
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+                throw (IOException)e.getCause();
+
+            throw new IOException("A block could not be encoded", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,479 @@
+/**
+ * CanonicalCode
+ *
+ * Static helpers for canonical Huffman codes. A canonical code is fully
+ * determined by the length of each symbol's code: codes are handed out in
+ * order of length, and within a length in order of symbol value, each one
+ * being the previous code plus one (shifted left whenever the length grows).
+ *
+ * example, for the lengths a=2, b=1, c=3, d=3:
+ *
+ * b = 0, a = 10, c = 110, d = 111
+ *
+ * Only the lengths need to be stored or transmitted to rebuild the code, and
+ * both codes and lengths fit primitive arrays indexed by symbol: an int per
+ * code and a byte per length.
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class CanonicalCode
+{
+    /**
+     * Constructor
+     * Not used. All methods are static.
+     */
+    private CanonicalCode() { }
+
+    /**
+     * assign
+     * Assigns canonical codes to the given code lengths.
+     * @param lengths The length of the code of each symbol, at most 32. Zero for symbols without a code.
+     * @return The code of each symbol, right aligned
+     * @throws IllegalArgumentException if the lengths describe more codes than can exist
+     */
+    public static int [] assign(byte [] lengths)
+    {
+        int maxLength = 0;
+
+        for (int i = 0; i < lengths.length; i++)
+            maxLength = Math.max(maxLength, lengths[i]);
+
+        int [] lengthCount = new int [maxLength + 1]; //the number of codes of each length
+        for (int i = 0; i < lengths.length; i++)
+        {
+            if (lengths[i] > 0)
+                lengthCount[lengths[i]]++;
+        }
+
+        long [] nextCode = new long [maxLength + 1]; //the first code of each length
+        long code = 0;
+        for (int len = 1; len <= maxLength; len++)
+        {
+            code = (code + lengthCount[len - 1]) << 1;
+            nextCode[len] = code;
+        }
+
+        if (maxLength > 32)
+            throw new IllegalArgumentException("Code lengths are limited to 32 bits");
+
+        int [] codes = new int [lengths.length];
+        for (int i = 0; i < lengths.length; i++) //hand them out in symbol order
+        {
+            int len = lengths[i];
+
+            if (len > 0)
+            {
+                if (nextCode[len] >= (1L << len)) //ran out of codes of this length
+                    throw new IllegalArgumentException("Code lengths are oversubscribed");
+
+                codes[i] = (int)nextCode[len]++;
+            }
+        }
+
+        return codes;
+    }
+
+    /**
+     * lengths
+     * Computes Huffman code lengths for a small alphabet, such as the one used to
+     * code the lengths in a header. Symbols with a frequency of zero get no code
+     * and a lone symbol is given a length of one.
+     * @param freqs The frequency of each symbol
+     * @return The length of the code of each symbol
+     */
+    public static byte [] lengths(long [] freqs)
+    {
+        int n = freqs.length;
+        int [] parent = new int [2 * n]; //the parent of every leaf and branch, leaves first
+        LongPriorityQueue<Object> pq = new LongPriorityQueueHeap<Object>(Math.max(1, n)); //holds the numbers of leaves and branches
+        long [] weight = new long [2 * n];
+
+        for (int i = 0; i < n; i++)
+        {
+            if (freqs[i] > 0)
+            {
+                weight[i] = freqs[i];
+                pq.enqueueIndex(freqs[i], i);
+            }
+        }
+
+        byte [] lengths = new byte [n];
+        int next = n; //the next free branch
+        try
+        {
+            if (pq.length() == 1) //a lone symbol still needs one bit
+                lengths[pq.frontIndex()] = 1;
+
+            if (pq.length() <= 1)
+                return lengths;
+
+            while (pq.length() > 1) //join the two lightest until one remains
+            {
+                int l = pq.frontIndex();
+                pq.dequeue();
+                int r = pq.frontIndex();
+                pq.dequeue();
+
+                weight[next] = weight[l] + weight[r];
+                parent[l] = next;
+                parent[r] = next;
+                pq.enqueueIndex(weight[next], next);
+                next++;
+            }
+        }
+        catch (EmptyQueueException e)
+        {
+            throw new IllegalStateException("Empty Queue Exception - Strange error");
+        }
+
+        int root = next - 1;
+        int [] depth = new int [2 * n];
+        for (int i = root - 1; i >= 0; i--) //parents are always created after their children
+        {
+            if (i >= n || freqs[i] > 0)
+                depth[i] = depth[parent[i]] + 1;
+        }
+
+        for (int i = 0; i < n; i++)
+        {
+            if (freqs[i] > 0)
+                lengths[i] = (byte)depth[i];
+        }
+
+        return lengths;
+    }
+
+    /**
+     * limit
+     * Shortens any code longer than maxLength. While a length is too long, a pair
+     * of its codes is taken: one moves up to replace their parent, and the other
+     * joins the deepest code that is shorter still, turning it into a branch. The
+     * code stays complete. The new lengths are then handed back out, shortest to
+     * the most frequent symbols.
+     *
+     * This is not optimal, but it is only needed for unusually skewed input.
+     * @param lengths The code lengths from a complete Huffman code. Altered in place.
+     * @param freqs The frequency of each symbol
+     * @param maxLength The longest code allowed
+     * @throws IllegalArgumentException if there are too many symbols to fit maxLength
+     */
+    public static void limit(byte [] lengths, final long [] freqs, int maxLength)
+    {
+        int longest = 0;
+        int symbols = 0;
+
+        for (int i = 0; i < lengths.length; i++)
+        {
+            longest = Math.max(longest, lengths[i]);
+
+            if (lengths[i] > 0)
+                symbols++;
+        }
+
+        if (longest <= maxLength)
+            return;
+
+        if (symbols > (1L << maxLength))
+            throw new IllegalArgumentException(symbols + " symbols cannot be coded in " + maxLength + " bits");
+
+        int [] lengthCount = new int [longest + 1]; //the number of codes of each length
+        for (int i = 0; i < lengths.length; i++)
+        {
+            if (lengths[i] > 0)
+                lengthCount[lengths[i]]++;
+        }
+
+        for (int len = longest; len > maxLength; len--)
+        {
+            while (lengthCount[len] > 0)
+            {
+                int j = len - 2; //find a shorter code to become a branch
+                while (lengthCount[j] == 0)
+                    j--;
+
+                lengthCount[len] = lengthCount[len] - 2; //the pair leaves this length...
+                lengthCount[len - 1]++; //...one taking the place of its parent...
+                lengthCount[j + 1] = lengthCount[j + 1] + 2; //...and the other sharing the new branch
+                lengthCount[j]--;
+            }
+        }
+
+        //Order the symbols most frequent first, ties to the shorter code then the lower value
+        Integer [] order = new Integer [symbols];
+        int n = 0;
+        for (int i = 0; i < lengths.length; i++)
+        {
+            if (lengths[i] > 0)
+                order[n++] = i;
+        }
+
+        final byte [] old = lengths.clone();
+        java.util.Arrays.sort(order, new java.util.Comparator<Integer>()
+        {
+            public int compare(Integer a, Integer b)
+            {
+                if (freqs[a] != freqs[b])
+                    return freqs[a] > freqs[b] ? -1 : 1;
+                if (old[a] != old[b])
+                    return old[a] - old[b];
+                return a - b;
+            }
+        });
+
+        n = 0;
+        for (int len = 1; len <= maxLength; len++) //hand the lengths back out, shortest first
+        {
+            for (int k = 0; k < lengthCount[len]; k++)
+                lengths[order[n++]] = (byte)len;
+        }
+    }
+
+    /**
+     * packageMerge
+     * Builds an optimal code in which no code is longer than maxLength: of all
+     * the codes that fit the limit, the one with the fewest bits in total
+     * (Larmore and Hirschberg's package-merge).
+     *
+     * The symbols are sorted by frequency. The list for the deepest level holds
+     * just the symbols; the list for each level above holds the symbols merged,
+     * in order of weight, with packages made by pairing off the list below:
+     *
+     * level L:   a b c d            (symbols only)
+     * level L-1: a b [ab] c [cd] d  (symbols and packages of pairs from below)
+     *
+     * The first 2n - 2 items of the top list are chosen, and a package chosen
+     * at one level chooses the pair it was made from at the level below. The
+     * length of a symbol's code is the number of levels it is chosen at.
+     * @param freqs The frequency of each symbol. Symbols of frequency 0 get no code.
+     * @param maxLength The longest code allowed
+     * @return The length of each symbol's code
+     * @throws IllegalArgumentException if there are too many symbols to fit maxLength
+     */
+    public static byte [] packageMerge(final long [] freqs, int maxLength)
+    {
+        byte [] lengths = new byte [freqs.length];
+
+        int [] order = sortByFrequency(freqs); //the symbols that occur, least frequent first
+        int n = order.length;
+
+        if (n == 0)
+            return lengths;
+
+        if (n == 1) //a lone symbol still needs a bit
+        {
+            lengths[order[0]] = 1;
+            return lengths;
+        }
+
+        if (maxLength < 1 || n > (1L << Math.min(maxLength, 62)))
+            throw new IllegalArgumentException(n + " symbols cannot be coded in " + maxLength + " bits");
+
+        //kind[level][i] is the symbol at item i of a level's list, or -1 for a package
+        int [][] kind = new int [maxLength][];
+        long [] weight = new long [0]; //the weights of the list below
+        int below = 0; //the length of the list below
+
+        for (int level = maxLength - 1; level >= 0; level--) //the deepest level first
+        {
+            int packages = below / 2;
+            int [] items = new int [n + packages];
+            long [] w = new long [n + packages];
+            int s = 0; //next symbol
+            int p = 0; //next package
+
+            for (int i = 0; i < items.length; i++) //merge the symbols with the packages, symbols first on a tie
+            {
+                long pw = (p < packages) ? weight[2 * p] + weight[2 * p + 1] : Long.MAX_VALUE;
+
+                if (s < n && freqs[order[s]] <= pw)
+                {
+                    items[i] = order[s];
+                    w[i] = freqs[order[s++]];
+                }
+                else
+                {
+                    items[i] = -1;
+                    w[i] = pw;
+                    p++;
+                }
+            }
+
+            kind[level] = items;
+            weight = w;
+            below = items.length;
+        }
+
+        int chosen = 2 * n - 2; //the number of items chosen from the top list
+
+        for (int level = 0; level < maxLength && chosen > 0; level++)
+        {
+            int packages = 0;
+
+            for (int i = 0; i < chosen; i++)
+            {
+                if (kind[level][i] < 0)
+                    packages++;
+                else
+                    lengths[kind[level][i]]++;
+            }
+
+            chosen = 2 * packages; //each package chooses its pair from the level below
+        }
+
+        return lengths;
+    }
+
+    /**
+     * sortedLengths
+     * Computes Huffman code lengths without building a tree, for alphabets of any
+     * size. The symbols are sorted by frequency once, then the in place algorithm
+     * of Moffat and Katajainen finds the lengths in linear time, in a single array
+     * of weights that is overwritten three times:
+     *
+     * 1. the weights, least first, become the weights of the branches, each
+     *    branch being the sum of the two lightest leaves or branches left, with
+     *    branches already joined holding the number of their parent instead
+     * 2. the numbers of the parents become the depth of each branch
+     * 3. the depths of the branches become the depth of each leaf
+     *
+     * No objects are created per symbol. The lengths are as short in total as
+     * those of lengths, though equal frequencies may be given different ones.
+     * Symbols with a frequency of zero get no code and a lone symbol is given a
+     * length of one.
+     * @param freqs The frequency of each symbol
+     * @return The length of the code of each symbol
+     */
+    public static byte [] sortedLengths(long [] freqs)
+    {
+        byte [] lengths = new byte [freqs.length];
+        int [] order = sortByFrequency(freqs);
+        int n = order.length;
+
+        if (n == 1) //a lone symbol still needs one bit
+            lengths[order[0]] = 1;
+
+        if (n <= 1)
+            return lengths;
+
+        long [] a = new long [n];
+        for (int i = 0; i < n; i++)
+            a[i] = freqs[order[i]];
+
+        //1. join the two lightest of the leaves (from leaf) and branches (from root) into branch next
+        a[0] = a[0] + a[1];
+        int root = 0; //the lightest branch not yet joined
+        int leaf = 2; //the lightest leaf not yet joined
+        for (int next = 1; next < n - 1; next++)
+        {
+            if (leaf >= n || a[root] < a[leaf]) //take a branch, leaving it the number of its parent
+            {
+                a[next] = a[root];
+                a[root++] = next;
+            }
+            else
+            {
+                a[next] = a[leaf++];
+            }
+
+            if (leaf >= n || (root < next && a[root] < a[leaf]))
+            {
+                a[next] = a[next] + a[root];
+                a[root++] = next;
+            }
+            else
+            {
+                a[next] = a[next] + a[leaf++];
+            }
+        }
+
+        //2. the depth of each branch is one more than that of its parent, the root is last
+        a[n - 2] = 0;
+        for (int next = n - 3; next >= 0; next--)
+            a[next] = a[(int)a[next]] + 1;
+
+        //3. every branch at a depth takes two nodes from the level below; those not taken are leaves
+        int available = 1; //the nodes at this depth
+        int used = 0; //those of them that are branches
+        int depth = 0;
+        root = n - 2;
+        int next = n - 1; //the next leaf to be given a depth, most frequent first
+        while (available > 0)
+        {
+            while (root >= 0 && a[root] == depth)
+            {
+                used++;
+                root--;
+            }
+
+            while (available > used)
+            {
+                a[next--] = depth;
+                available--;
+            }
+
+            available = 2 * used;
+            depth++;
+            used = 0;
+        }
+
+        for (int i = 0; i < n; i++)
+            lengths[order[i]] = (byte)a[i];
+
+        return lengths;
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * sortByFrequency
+     * Returns the symbols that occur, least frequent first and in order of value
+     * among equals, by a merge sort of primitive ints.
+     * @param freqs The frequency of each symbol
+     * @return The symbols with a frequency above zero, sorted
+     */
+    private static int [] sortByFrequency(long [] freqs)
+    {
+        int n = 0;
+        for (int i = 0; i < freqs.length; i++)
+        {
+            if (freqs[i] > 0)
+                n++;
+        }
+
+        int [] order = new int [n];
+        n = 0;
+        for (int i = 0; i < freqs.length; i++)
+        {
+            if (freqs[i] > 0)
+                order[n++] = i;
+        }
+
+        int [] from = order;
+        int [] to = new int [n];
+
+        for (int width = 1; width < n; width = 2 * width) //merge runs of width, which are sorted, in pairs
+        {
+            for (int lo = 0; lo < n; lo = lo + 2 * width)
+            {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + 2 * width, n);
+                int l = lo;
+                int r = mid;
+
+                for (int k = lo; k < hi; k++) //the left first on a tie, so the order of value is kept
+                {
+                    if (r >= hi || (l < mid && freqs[from[l]] <= freqs[from[r]]))
+                        to[k] = from[l++];
+                    else
+                        to[k] = from[r++];
+                }
+            }
+
+            int [] swap = from;
+            from = to;
+            to = swap;
+        }
+
+        return from;
+    }
+}
@@ -0,0 +1,395 @@
+import java.io.*;
+import java.nio.*;
+
+/**
+ * CodeBook
+ *
+ * A code trained once, from a sample of the data, and then used for every
+ * message. A compressed file carries a header and its code is built from a
+ * count of its own bytes, which for a message of a few hundred bytes costs
+ * more than the message itself. A message coded with a code book is just
+ * its bitstream, with no header and no counting:
+ *
+ * file:     [header][bitstream]
+ * message:  [bitstream]          (the code book is shared, and saved once)
+ *
+ * Every byte value is given a code, so a message may hold bytes the sample
+ * did not. The length of each message must be kept by the caller, as it is
+ * by whatever frames the messages.
+ *
+ * Messages of different kinds are best coded with a code book trained on
+ * their own kind. Several can be trained at once from a mixed sample, and
+ * choose finds the one that codes a message in the fewest bits, so only its
+ * number need be kept with the message.
+ *
+ * A code book never changes once made, so any number of threads may share it.
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class CodeBook
+{
+    //---------------------------------------------Constants------------------
+
+    /*
+     * The most rounds the training of several code books is given to settle.
+     */
+    public static final int DEFAULT_ROUNDS = 8;
+
+    //---------------------------------------------Variables----------------
+    private int [] codes; //The code of each byte value, right aligned
+    private byte [] lengths; //The length in bits of the code of each byte value, none zero
+    private HuffmanDecoder decoder; //The decoder whose tables every message is decoded with
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * Constructor
+     * Creates a code book for the given code lengths.
+     * @param codeLengths The length of the code of each of the 256 byte values
+     * @throws IllegalArgumentException if a byte value has no code
+     */
+    public CodeBook(byte [] codeLengths)
+    {
+        if (codeLengths.length != Histogram.SYMBOLS)
+            throw new IllegalArgumentException("A code book has " + Histogram.SYMBOLS + " code lengths");
+
+        for (int i = 0; i < codeLengths.length; i++)
+        {
+            if (codeLengths[i] == 0)
+                throw new IllegalArgumentException("Byte " + i + " has no code");
+        }
+
+        lengths = codeLengths.clone();
+        codes = CanonicalCode.assign(lengths);
+        decoder = new HuffmanDecoder(codes, lengths);
+    }
+
+    //-----------------------------------------Factory methods----------------
+    /**
+     * train
+     * Trains a code book on a sample's frequency distribution. Each count is
+     * raised by one, so a byte value the sample lacks gets a long code rather
+     * than none.
+     * @param sample The counts of the sample
+     * @param opts The settings the code is built with, such as the longest code
+     * @return The code book
+     */
+    public static CodeBook train(Histogram sample, HuffmanOptions opts)
+    {
+        long [] counts = sample.getCounts();
+
+        for (int b = 0; b < counts.length; b++)
+            counts[b] = counts[b] + 1;
+
+        return new CodeBook(new HuffmanTree(new Histogram(counts), opts).getCodeLengths());
+    }
+
+    /**
+     * train
+     * Trains a code book on a sample of messages.
+     * @param messages The sample
+     * @param opts The settings the code is built with, such as the longest code
+     * @return The code book
+     */
+    public static CodeBook train(byte [][] messages, HuffmanOptions opts)
+    {
+        long [] counts = new long [Histogram.SYMBOLS];
+
+        for (int m = 0; m < messages.length; m++)
+            addCounts(counts, messages[m]);
+
+        return train(new Histogram(counts), opts);
+    }
+
+    /**
+     * train
+     * Trains k code books on a sample of messages of several kinds, so that each
+     * message is coded well by one of them. The sample is split into k groups,
+     * a code book is trained on each, and every message moves to the group of
+     * the code book that codes it shortest. That repeats until no message moves,
+     * or for the given number of rounds. The groups start as k evenly spaced
+     * runs of the sample, so the result is always the same for the same sample.
+     * @param messages The sample
+     * @param k The number of code books, at least 1
+     * @param rounds The most rounds of moving messages, at least 1
+     * @param opts The settings the codes are built with, such as the longest code
+     * @return The code books, as many as k or as there are messages, whichever is fewer
+     * @throws IllegalArgumentException if k or rounds is below 1
+     */
+    public static CodeBook [] train(byte [][] messages, int k, int rounds, HuffmanOptions opts)
+    {
+        if (k < 1 || rounds < 1)
+            throw new IllegalArgumentException("At least one code book and one round are required");
+
+        k = Math.max(1, Math.min(k, messages.length));
+
+        int [] group = new int [messages.length];
+
+        for (int m = 0; m < messages.length; m++) //evenly spaced runs to start with
+            group[m] = (int)((long)m * k / messages.length);
+
+        CodeBook [] books = trainGroups(messages, group, k, opts);
+
+        for (int r = 1; r < rounds; r++)
+        {
+            boolean moved = false;
+
+            for (int m = 0; m < messages.length; m++)
+            {
+                int best = choose(books, messages[m], 0, messages[m].length);
+
+                if (best != group[m])
+                {
+                    group[m] = best;
+                    moved = true;
+                }
+            }
+
+            if (!moved)
+                break;
+
+            books = trainGroups(messages, group, k, opts);
+        }
+
+        return books;
+    }
+
+    /**
+     * read
+     * Reads a code book saved by write.
+     * @param in The stream to read from
+     * @return The code book
+     * @throws IOException if the stream cannot be read or does not hold a code book
+     */
+    public static CodeBook read(InputStream in) throws IOException
+    {
+        HuffmanHeader header = HuffmanHeader.read(in);
+
+        try
+        {
+            return new CodeBook(header.getCodeLengths());
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IOException("Corrupt Huffman data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * choose
+     * Returns which of several code books codes a message in the fewest bits.
+     * On a tie the first is chosen.
+     * @param books The code books
+     * @param message The array holding the message
+     * @param off The first location of the message
+     * @param len The length of the message
+     * @return The number of the code book in books
+     */
+    public static int choose(CodeBook [] books, byte [] message, int off, int len)
+    {
+        int best = 0;
+        long bestCost = Long.MAX_VALUE;
+
+        for (int i = 0; i < books.length; i++)
+        {
+            long cost = books[i].cost(message, off, len);
+
+            if (cost < bestCost)
+            {
+                best = i;
+                bestCost = cost;
+            }
+        }
+
+        return best;
+    }
+
+    //-----------------------------------------Public methods-----------------
+    /**
+     * write
+     * Saves the code book: a compressed file header with a length of zero, which
+     * holds the code lengths in a few tens of bytes. The stream is not closed.
+     * @param out The stream to write to
+     * @throws IOException if the stream cannot be written to
+     */
+    public void write(OutputStream out) throws IOException
+    {
+        new HuffmanHeader(0, lengths).write(out);
+    }
+
+    /**
+     * cost
+     * Returns the number of bits a message codes to, not counting the padding
+     * of its last byte.
+     * @param message The array holding the message
+     * @param off The first location of the message
+     * @param len The length of the message
+     * @return The number of bits
+     */
+    public long cost(byte [] message, int off, int len)
+    {
+        byte [] lengths = this.lengths;
+        long bits = 0;
+
+        for (int i = off; i < off + len; i++)
+            bits = bits + lengths[message[i] & 0xFF];
+
+        return bits;
+    }
+
+    /**
+     * encodedSize
+     * Returns the number of bytes a message codes to.
+     * @param message The array holding the message
+     * @param off The first location of the message
+     * @param len The length of the message
+     * @return The number of bytes
+     */
+    public int encodedSize(byte [] message, int off, int len)
+    {
+        return (int)((cost(message, off, len) + 7) / 8);
+    }
+
+    /**
+     * encode
+     * Codes a message into part of an array.
+     * @param message The array holding the message
+     * @param off The first location of the message
+     * @param len The length of the message
+     * @param dst The array the coded message is written to
+     * @param dstOff The first location to write
+     * @return The number of bytes written
+     * @throws IllegalArgumentException if dst has too little room after dstOff
+     */
+    public int encode(byte [] message, int off, int len, byte [] dst, int dstOff)
+    {
+        HuffmanEncoder encoder = new HuffmanEncoder(codes, lengths);
+        ByteBuffer out = ByteBuffer.wrap(dst, dstOff, dst.length - dstOff);
+
+        if (encoder.encode(ByteBuffer.wrap(message, off, len), out) < len || !encoder.finish(out))
+            throw new IllegalArgumentException("The coded message does not fit in the array");
+
+        return out.position() - dstOff;
+    }
+
+    /**
+     * encode
+     * Codes a whole message.
+     * @param message The message
+     * @return The coded message
+     */
+    public byte [] encode(byte [] message)
+    {
+        byte [] coded = new byte [encodedSize(message, 0, message.length)];
+        encode(message, 0, message.length, coded, 0);
+
+        return coded;
+    }
+
+    /**
+     * decode
+     * Restores a message into part of an array.
+     * @param coded The array holding the coded message
+     * @param off The first location of the coded message
+     * @param len The length of the coded message
+     * @param dst The array the message is restored into
+     * @param dstOff The first location to write
+     * @param length The length of the message
+     * @throws IOException if the coded message is too short for the length, or corrupt
+     */
+    public void decode(byte [] coded, int off, int len, byte [] dst, int dstOff, int length) throws IOException
+    {
+        HuffmanDecoder d = new HuffmanDecoder(decoder); //shares the tables, so threads can decode at once
+
+        d.begin(coded, off, len);
+        d.decode(dst, dstOff, length);
+        d.endBlock();
+    }
+
+    /**
+     * decode
+     * Restores a whole message.
+     * @param coded The coded message
+     * @param length The length of the message
+     * @return The message
+     * @throws IOException if the coded message is too short for the length, or corrupt
+     */
+    public byte [] decode(byte [] coded, int length) throws IOException
+    {
+        byte [] message = new byte [length];
+        decode(coded, 0, coded.length, message, 0, length);
+
+        return message;
+    }
+
+    /**
+     * getCodeLengths
+     * Returns a copy of the length of the code of each byte value.
+     */
+    public byte [] getCodeLengths()
+    {
+        return lengths.clone();
+    }
+
+    /**
+     * getCodes
+     * Returns a copy of the code of each byte value, right aligned.
+     */
+    public int [] getCodes()
+    {
+        return codes.clone();
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * trainGroups
+     * Trains a code book on each group of messages. An empty group is given
+     * the code book of the whole sample.
+     * @param messages The sample
+     * @param group The group of each message
+     * @param k The number of groups
+     * @param opts The settings the codes are built with
+     * @return The code book of each group
+     */
+    private static CodeBook [] trainGroups(byte [][] messages, int [] group, int k, HuffmanOptions opts)
+    {
+        long [][] counts = new long [k][Histogram.SYMBOLS];
+
+        for (int m = 0; m < messages.length; m++)
+            addCounts(counts[group[m]], messages[m]);
+
+        CodeBook [] books = new CodeBook [k];
+        CodeBook whole = null;
+
+        for (int g = 0; g < k; g++)
+        {
+            Histogram h = new Histogram(counts[g]);
+
+            if (h.getTotal() == 0)
+            {
+                if (whole == null)
+                    whole = train(messages, opts);
+
+                books[g] = whole;
+            }
+            else
+            {
+                books[g] = train(h, opts);
+            }
+        }
+
+        return books;
+    }
+
+    /**
+     * addCounts
+     * Adds the frequency of each byte of a message to the counts.
+     * @param counts The counts, indexed by byte value
+     * @param message The message
+     */
+    private static void addCounts(long [] counts, byte [] message)
+    {
+        for (int i = 0; i < message.length; i++)
+            counts[message[i] & 0xFF]++;
+    }
+}
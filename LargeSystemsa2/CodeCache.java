@@ -0,0 +1,289 @@
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * CodeCache
+ *
+ * Keeps the codes built for recent inputs, so an input whose bytes are spread
+ * much like one seen before reuses its code instead of building another. The
+ * inputs are matched by a fingerprint of their frequency distribution: for
+ * each byte value, the length its code would ideally have, -log2 of the share
+ * of the input it makes up, rounded to STEPS_PER_BIT steps a bit:
+ *
+ * counts:      [a: 500] [b: 250] [c: 250] [d: 0]
+ * fingerprint: [a: 3]   [b: 5]   [c: 5]   [d: 0]    (1 + 2 * -log2 share)
+ *
+ * Doubling every count leaves the fingerprint as it was. Only bytes that occur
+ * have a fingerprint above zero, so a code found by fingerprint has a code for
+ * every byte of the input; it is the code of the first input seen with that
+ * fingerprint, and so a little longer than the input's own code would be.
+ *
+ * Decoders are matched by the code lengths in the header instead, which fix
+ * the code exactly, so the lookup tables are built once for each code.
+ *
+ * Each map holds at most the given number of codes; the one used least
+ * recently is dropped to make room. Every method is thread safe. A code is
+ * built outside the lock, so threads looking up other inputs never wait on
+ * it; two threads missing on the same input may both build it.
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class CodeCache
+{
+    //---------------------------------------------Constants------------------
+
+    /*
+     * The steps each bit of ideal code length is rounded to in a fingerprint.
+     * More steps tell more distributions apart, and so hit less often.
+     */
+    public static final int STEPS_PER_BIT = 2;
+
+    //---------------------------------------------Variables----------------
+    private HuffmanOptions options; //The settings the codes are built with, without a cache
+    private Map<Key, CodeTable> encoders; //The codes by fingerprint, least recently used first
+    private Map<Key, CodeTable> decoders; //The codes by code lengths, least recently used first
+    private AtomicLong hits; //The number of lookups that found a code
+    private AtomicLong misses; //The number of lookups that built one
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * Constructor
+     * Creates an empty cache of the given capacity, whose codes are built with
+     * the given settings, such as the longest code.
+     * @param capacity The most codes held in each of the two maps, at least 1
+     * @param opts The settings the codes are built with
+     * @throws IllegalArgumentException if the capacity is below 1
+     */
+    public CodeCache(int capacity, HuffmanOptions opts)
+    {
+        if (capacity < 1)
+            throw new IllegalArgumentException("A cache must hold at least one code");
+
+        options = new HuffmanOptions(); //a copy of what shapes the code, so a miss cannot come back here
+        options.setMaxCodeLength(opts.getMaxCodeLength());
+        options.setSortedBuild(opts.isSortedBuild());
+        options.setRadixQueue(opts.isRadixQueue());
+
+        encoders = newMap(capacity);
+        decoders = newMap(capacity);
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+    }
+
+    //-----------------------------------------Public methods-----------------
+    /**
+     * get
+     * Returns the code for a frequency distribution: the cached code of one
+     * with the same fingerprint, or else a new one, which is cached.
+     * @param h The frequency distribution
+     * @return The code
+     */
+    public CodeTable get(Histogram h)
+    {
+        Key key = new Key(fingerprint(h));
+        CodeTable table = lookup(encoders, key);
+
+        if (table == null)
+            table = store(encoders, key, new CodeTable(new HuffmanTree(h, options).getCodeLengths()));
+
+        return table;
+    }
+
+    /**
+     * get
+     * Returns the code a compressed file's header describes, whose decoder
+     * tables are shared by every file with the same code lengths.
+     * @param header The header
+     * @return The code
+     */
+    public CodeTable get(HuffmanHeader header)
+    {
+        byte [] lengths = header.getCodeLengths();
+        Key key = new Key(lengths);
+        CodeTable table = lookup(decoders, key);
+
+        if (table == null)
+            table = store(decoders, key, new CodeTable(lengths));
+
+        return table;
+    }
+
+    /**
+     * getHits
+     * Returns the number of lookups that found a code.
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * getMisses
+     * Returns the number of lookups that had to build a code.
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * size
+     * Returns the number of codes held, in both maps.
+     */
+    public int size()
+    {
+        synchronized (this)
+        {
+            return encoders.size() + decoders.size();
+        }
+    }
+
+    /**
+     * clear
+     * Drops every code and sets the counters to zero.
+     */
+    public void clear()
+    {
+        synchronized (this)
+        {
+            encoders.clear();
+            decoders.clear();
+        }
+
+        hits.set(0);
+        misses.set(0);
+    }
+
+    /**
+     * fingerprint
+     * Returns the fingerprint of a frequency distribution: for each byte value
+     * 0 if it does not occur, otherwise 1 plus its ideal code length in steps,
+     * at most 255.
+     * @param h The frequency distribution
+     * @return The fingerprint, one byte for each byte value
+     */
+    public static byte [] fingerprint(Histogram h)
+    {
+        byte [] print = new byte [Histogram.SYMBOLS];
+        double total = h.getTotal();
+
+        for (int b = 0; b < Histogram.SYMBOLS; b++)
+        {
+            long count = h.getCount(b);
+
+            if (count > 0)
+            {
+                long steps = Math.round(STEPS_PER_BIT * Math.log(total / count) / Math.log(2));
+                print[b] = (byte)Math.min(255, 1 + steps);
+            }
+        }
+
+        return print;
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * lookup
+     * Returns the code held for a key, marking it used, or null; and counts
+     * the hit or miss.
+     * @param map The map to look in
+     * @param key The key
+     */
+    private CodeTable lookup(Map<Key, CodeTable> map, Key key)
+    {
+        CodeTable table;
+
+        synchronized (this)
+        {
+            table = map.get(key);
+        }
+
+        if (table == null)
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+
+        return table;
+    }
+
+    /**
+     * store
+     * Caches a newly built code, unless another thread has cached one for the
+     * same key meanwhile, in which case that one is kept and returned.
+     * @param map The map to store in
+     * @param key The key
+     * @param table The code
+     * @return The code held for the key
+     */
+    private CodeTable store(Map<Key, CodeTable> map, Key key, CodeTable table)
+    {
+        synchronized (this)
+        {
+            CodeTable held = map.get(key);
+
+            if (held != null)
+                return held;
+
+            map.put(key, table);
+        }
+
+        return table;
+    }
+
+    /**
+     * newMap
+     * Returns a map in least recently used order that drops its eldest entry
+     * once it holds more than the capacity.
+     * @param capacity The most entries
+     */
+    private static Map<Key, CodeTable> newMap(final int capacity)
+    {
+        return new LinkedHashMap<Key, CodeTable>(16, 0.75f, true)
+        {
+            protected boolean removeEldestEntry(Map.Entry<Key, CodeTable> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Key
+     * A fingerprint or set of code lengths, compared by content, with its
+     * hash worked out once.
+     */
+    private static class Key
+    {
+        private final byte [] bytes; //The fingerprint or lengths
+        private final int hash; //The hash of the bytes
+
+        /**
+         * Constructor
+         * @param b The bytes, which must not change afterwards
+         */
+        private Key(byte [] b)
+        {
+            bytes = b;
+            hash = Arrays.hashCode(b);
+        }
+
+        /**
+         * equals
+         * Keys are equal if their bytes are.
+         */
+        public boolean equals(Object o)
+        {
+            return o instanceof Key && hash == ((Key)o).hash && Arrays.equals(bytes, ((Key)o).bytes);
+        }
+
+        /**
+         * hashCode
+         * Consistent with equals.
+         */
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+}
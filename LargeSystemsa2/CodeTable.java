@@ -0,0 +1,103 @@
+import java.io.*;
+
+/**
+ * CodeTable
+ *
+ * A built code: the code and its length for each byte value, and the lookup
+ * tables a HuffmanDecoder needs to decode it. Building the decoder's tables
+ * costs far more than the lengths they come from, so they are built once, on
+ * first use, and every decoder handed out shares them.
+ *
+ * A code table never changes once made, so any number of threads may share
+ * it; see CodeCache.
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class CodeTable
+{
+    //---------------------------------------------Variables----------------
+    private int [] codes; //The code of each byte value, right aligned
+    private byte [] lengths; //The length in bits of the code of each byte value
+    private HuffmanDecoder decoder; //The decoder whose tables are shared, null until first needed
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * Constructor
+     * Creates the table for the given code lengths; the codes are canonical.
+     * @param codeLengths The length of the code of each of the 256 byte values
+     */
+    public CodeTable(byte [] codeLengths)
+    {
+        lengths = codeLengths.clone();
+        codes = CanonicalCode.assign(lengths);
+    }
+
+    //-----------------------------------------Public methods-----------------
+    /**
+     * getCodes
+     * Returns a copy of the code of each byte value, right aligned.
+     */
+    public int [] getCodes()
+    {
+        return codes.clone();
+    }
+
+    /**
+     * getCodeLengths
+     * Returns a copy of the length of the code of each byte value.
+     */
+    public byte [] getCodeLengths()
+    {
+        return lengths.clone();
+    }
+
+    /**
+     * cost
+     * Returns the number of bits the given counts code to.
+     * @param h The counts
+     * @return The number of bits, not counting padding
+     */
+    public long cost(Histogram h)
+    {
+        long bits = 0;
+
+        for (int b = 0; b < lengths.length; b++)
+            bits = bits + h.getCount(b) * lengths[b];
+
+        return bits;
+    }
+
+    /**
+     * newEncoder
+     * Returns an encoder for the code that writes to the given stream.
+     * @param out The stream to write the packed bits to
+     */
+    public HuffmanEncoder newEncoder(OutputStream out)
+    {
+        return new HuffmanEncoder(codes, lengths, out);
+    }
+
+    /**
+     * newDecoder
+     * Returns a decoder for the code, with input state of its own and the
+     * lookup tables of every other.
+     */
+    public HuffmanDecoder newDecoder()
+    {
+        return new HuffmanDecoder(decoder());
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * decoder
+     * Returns the decoder whose tables are shared, building it on first use.
+     */
+    private synchronized HuffmanDecoder decoder()
+    {
+        if (decoder == null)
+            decoder = new HuffmanDecoder(codes, lengths);
+
+        return decoder;
+    }
+}
@@ -0,0 +1,198 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * ConcurrentPriorityQueue
+ *
+ * A thread safe priority queue that many threads may enqueue to and take
+ * from at once, such as a job queue shared by the threads of a compressor.
+ * It is built on the lock free skip list of ConcurrentSkipListMap: the
+ * entries are kept in order in a linked list with express lanes above it,
+ *
+ * level 2:  1 -------------------> 7
+ * level 1:  1 ------> 4 ---------> 7 ------> 9
+ * level 0:  1 -> 3 -> 4 -> 5 -> 6 -> 7 -> 8 -> 9
+ *
+ * and each is added or removed by compare and swap, so no thread ever waits
+ * on a lock held by another. Taking the front is removing the first entry.
+ *
+ * Each entry carries a sequence number, so equal priorities come out first in
+ * first out, and two entries are never equal. Every method is safe on its own,
+ * but a front followed by a dequeue is not one step: another thread may take
+ * the front in between. Threads taking work should call poll, which returns
+ * the element it removed. Likewise replaceTop is a poll and an enqueue. The
+ * length is only exact while no other thread is changing the queue.
+ *
+ * @author David Porter
+ * @version 1
+ * @param <T> The type of the elements being stored
+ * @param <K> The key value of the elements. Must implement Comparable.
+ */
+public class ConcurrentPriorityQueue <T, K extends Comparable<K>> implements PriorityQueue <T, K>
+{
+
+    //---------------------------------------------Variables----------------
+    private ConcurrentSkipListMap<Entry<T, K>, Boolean> entries; //The entries in order, front first
+    private AtomicLong sequence; //The sequence number of the next entry
+    private AtomicInteger size; //The number of entries
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * ConcurrentPriorityQueue Constructor
+     * Creates an empty queue.
+     */
+    public ConcurrentPriorityQueue()
+    {
+        entries = new ConcurrentSkipListMap<Entry<T, K>, Boolean>();
+        sequence = new AtomicLong();
+        size = new AtomicInteger();
+    }
+
+    //-----------------------------------------Interface methods--------------
+    /**
+     * enqueue
+     * Adds an element to the skip list.
+     * @param priority The Comparable object being used to compare priority.
+     * @param element The data being stored along with the key value.
+     */
+    public void enqueue(K priority, T element)
+    {
+        entries.put(new Entry<T, K>(priority, sequence.getAndIncrement(), element), Boolean.TRUE);
+        size.incrementAndGet();
+    }
+
+    /**
+     * dequeue
+     * Removes the element with the highest priority.
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public void dequeue() throws EmptyQueueException
+    {
+        poll();
+    }
+
+    /**
+     * isEmpty
+     * Returns true if the queue is empty.
+     * @return Returns true if the queue is empty.
+     */
+    public boolean isEmpty()
+    {
+        return entries.isEmpty();
+    }
+
+    /**
+     * front
+     * Returns the element with the highest priority, without removing it.
+     * @return The element with the highest priority
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public T front() throws EmptyQueueException
+    {
+        Map.Entry<Entry<T, K>, Boolean> first = entries.firstEntry();
+
+        if (first == null)
+            throw new EmptyQueueException();
+
+        return first.getKey().element;
+    }
+
+    /**
+     * poll
+     * Removes the element with the highest priority and returns it, in one step.
+     * @return The element that had the highest priority
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public T poll() throws EmptyQueueException
+    {
+        Map.Entry<Entry<T, K>, Boolean> first = entries.pollFirstEntry();
+
+        if (first == null)
+            throw new EmptyQueueException();
+
+        size.decrementAndGet();
+
+        return first.getKey().element;
+    }
+
+    /**
+     * replaceTop
+     * Removes the element with the highest priority and adds a new one.
+     * @param priority The Comparable object being used to compare priority.
+     * @param element The data being stored along with the key value.
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public void replaceTop(K priority, T element) throws EmptyQueueException
+    {
+        poll();
+        enqueue(priority, element);
+    }
+
+    /**
+     * enqueueAll
+     * Adds every element. Other threads may see some of them before the rest.
+     * @param priorities The priority of each element
+     * @param elements The data, in the same order
+     * @throws IllegalArgumentException if the arrays differ in length
+     */
+    public void enqueueAll(K [] priorities, T [] elements)
+    {
+        if (priorities.length != elements.length)
+            throw new IllegalArgumentException("There must be one priority for each element");
+
+        for (int i = 0; i < elements.length; i++)
+            enqueue(priorities[i], elements[i]);
+    }
+
+    /**
+     * length
+     * Returns the number of elements in the priority queue.
+     * @return the length of the queue
+     */
+    public int length()
+    {
+        return Math.max(0, size.get()); //briefly low while an enqueue is under way
+    }
+
+    /**
+     * Entry
+     * An element in the skip list, ordered by priority and then by the order
+     * it was enqueued in.
+     * @param <T> The type of data being stored in the entry.
+     * @param <K> The Comparable type of the priority.
+     */
+    private static class Entry <T, K extends Comparable<K>> implements Comparable<Entry<T, K>>
+    {
+        private final K priority; //The priority of the element
+        private final long sequence; //The order it was enqueued in
+        private final T element; //The element
+
+        /**
+         * Constructor
+         * @param p The priority
+         * @param s The sequence number
+         * @param e The element
+         */
+        private Entry(K p, long s, T e)
+        {
+            priority = p;
+            sequence = s;
+            element = e;
+        }
+
+        /**
+         * compareTo
+         * Orders by priority, then by sequence number.
+         */
+        public int compareTo(Entry<T, K> other)
+        {
+            int c = priority.compareTo(other.priority);
+
+            if (c != 0)
+                return c;
+
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -13,6 +13,7 @@ public class Controller {
    /**
     * main
     * An example of a use for the HuffmanTree Class
+    * Usage: Controller input output [restored]
     */
     public static void main (String [] args)
     {
@@ -38,6 +39,18 @@ public class Controller {
             
             
             System.out.println(huffmanTree.printByteFreq());
+            
+            if(args.length > 2) //optionally restore the compressed file to check the round trip
+            {
+                try
+                {
+                    HuffmanTree.decode(new File(args[1]), new File(args[2]));
+                }
+                catch (IOException e)
+                {
+                    System.out.println("Could not restore the file: " + e.getMessage());
+                }
+            }
         }
     }
 }
\ No newline at end of file
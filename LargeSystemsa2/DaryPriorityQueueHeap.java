@@ -0,0 +1,299 @@
+import java.util.*;
+
+/**
+ * DaryPriorityQueueHeap
+ *
+ * An array based heap in which every parent has d children rather than two.
+ * The heap is 0 indexed, so the children of location i are d*i+1 to d*i+d:
+ *
+ * 4-ary:   [1] [3 5 2 8] [9 6 7 4  4 5 6 9  ...]
+ *           0    1 - 4        5 - 20
+ *
+ * A wider heap is shallower, so an element bubbles up past fewer parents,
+ * and each step of a bubble down looks at d children that lie next to one
+ * another, usually in one or two cache lines. For large heaps that is fewer
+ * cache misses than a binary heap, whose levels are scattered; for a small
+ * heap d = 2 or 4 is as good as any.
+ *
+ * The keys and elements are kept in two parallel arrays, so there is no
+ * node per element, and an element being placed is held aside while the
+ * others move into the hole rather than being swapped at each step.
+ *
+ * @author David Porter
+ * @version 1
+ * @param <T> The type of the elements being stored
+ * @param <K> The key value of the elements. Must implement Comparable.
+ */
+public class DaryPriorityQueueHeap <T, K extends Comparable<K>> implements PriorityQueue <T, K>
+{
+
+    //---------------------------------------------Constants------------------
+
+    /*
+     * The number of children of each parent, unless another is given.
+     */
+    public static final int DEFAULT_ARITY = 4;
+
+    /*
+     * The number of elements there is room for at first.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    //---------------------------------------------Variables----------------
+    private int arity; //The number of children of each parent
+    private Object [] keys; //The priority at each location of the heap
+    private Object [] elements; //The element at each location
+    private int size; //The number of elements in the heap
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * DaryPriorityQueueHeap Constructor
+     * Creates an empty 4-ary heap.
+     */
+    public DaryPriorityQueueHeap()
+    {
+        this(DEFAULT_ARITY);
+    }
+
+    /**
+     * DaryPriorityQueueHeap Constructor: arity
+     * Creates an empty heap whose parents have the given number of children.
+     * @param d The number of children, at least 2
+     */
+    public DaryPriorityQueueHeap(int d)
+    {
+        if (d < 2)
+            throw new IllegalArgumentException("A heap needs at least 2 children a parent");
+
+        arity = d;
+        keys = new Object [DEFAULT_CAPACITY];
+        elements = new Object [DEFAULT_CAPACITY];
+        size = 0;
+    }
+
+    //-----------------------------------------Interface methods--------------
+    /**
+     * enqueue
+     * Adds an element at the end of the heap and bubbles it up.
+     * @param priority The Comparable object being used to compare priority.
+     * @param element The data being stored along with the key value.
+     */
+    public void enqueue(K priority, T element)
+    {
+        grow(size + 1);
+        size = size + 1;
+
+        bubbleUp(size - 1, priority, element);
+    }
+
+    /**
+     * dequeue
+     * Removes the element with the highest priority; the last element takes
+     * its place and is bubbled down.
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public void dequeue() throws EmptyQueueException
+    {
+        if (isEmpty())
+            throw new EmptyQueueException();
+
+        size = size - 1;
+
+        K lastKey = key(size);
+        Object last = elements[size];
+        keys[size] = null; //let go of them
+        elements[size] = null;
+
+        if (size > 0)
+            bubbleDown(0, lastKey, last);
+    }
+
+    /**
+     * isEmpty
+     * Returns true if the queue is empty.
+     * @return Returns true if the queue is empty.
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * front
+     * Returns the element with the highest priority.
+     * @return The element with the highest priority
+     * @throws EmptyQueueException if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T front() throws EmptyQueueException
+    {
+        if (isEmpty())
+            throw new EmptyQueueException();
+
+        return (T)elements[0];
+    }
+
+    /**
+     * poll
+     * Removes the element with the highest priority and returns it.
+     * @return The element that had the highest priority
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public T poll() throws EmptyQueueException
+    {
+        T element = front();
+        dequeue();
+
+        return element;
+    }
+
+    /**
+     * replaceTop
+     * Replaces the element with the highest priority by a new one, which is
+     * bubbled down from the root.
+     * @param priority The Comparable object being used to compare priority.
+     * @param element The data being stored along with the key value.
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public void replaceTop(K priority, T element) throws EmptyQueueException
+    {
+        if (isEmpty())
+            throw new EmptyQueueException();
+
+        bubbleDown(0, priority, element);
+    }
+
+    /**
+     * enqueueAll
+     * Adds every element to the end of the heap, then bubbles down every
+     * parent, the last first, in time in proportion to the length of the heap.
+     * @param priorities The priority of each element
+     * @param elements The data, in the same order
+     * @throws IllegalArgumentException if the arrays differ in length
+     */
+    public void enqueueAll(K [] priorities, T [] elements)
+    {
+        if (priorities.length != elements.length)
+            throw new IllegalArgumentException("There must be one priority for each element");
+
+        grow(size + elements.length);
+
+        for (int i = 0; i < elements.length; i++)
+        {
+            keys[size] = priorities[i];
+            this.elements[size] = elements[i];
+            size = size + 1;
+        }
+
+        for (int loc = (size - 2) / arity; loc >= 0; loc--) //every parent, the last first
+            bubbleDown(loc, key(loc), this.elements[loc]);
+    }
+
+    /**
+     * length
+     * Returns the number of elements in the priority queue.
+     * @return the length of the queue
+     */
+    public int length()
+    {
+        return size;
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * key
+     * Returns the priority at a location.
+     * @param loc The location
+     */
+    @SuppressWarnings("unchecked")
+    private K key(int loc)
+    {
+        return (K)keys[loc];
+    }
+
+    /**
+     * grow
+     * Makes room for the given number of elements, at least doubling the arrays
+     * when they are full.
+     * @param needed The number of elements there must be room for
+     */
+    private void grow(int needed)
+    {
+        if (needed <= keys.length)
+            return;
+
+        int capacity = Math.max(needed, 2 * keys.length);
+        keys = Arrays.copyOf(keys, capacity);
+        elements = Arrays.copyOf(elements, capacity);
+    }
+
+    /**
+     * bubbleUp
+     * Places an element at a location and moves it up past every parent of
+     * lower priority.
+     * @param loc The location, the end of the heap
+     * @param priority The priority of the element
+     * @param element The element
+     */
+    private void bubbleUp(int loc, K priority, Object element)
+    {
+        while (loc > 0)
+        {
+            int parent = (loc - 1) / arity;
+
+            if (key(parent).compareTo(priority) <= 0) //the parent is of higher or equal priority
+                break;
+
+            keys[loc] = keys[parent];
+            elements[loc] = elements[parent];
+            loc = parent;
+        }
+
+        keys[loc] = priority;
+        elements[loc] = element;
+    }
+
+    /**
+     * bubbleDown
+     * Places an element at a location and moves it down past every child of
+     * higher priority, taking the highest of the children at each step.
+     * @param loc The location, the root unless the heap is being restored
+     * @param priority The priority of the element
+     * @param element The element
+     */
+    private void bubbleDown(int loc, K priority, Object element)
+    {
+        while (true)
+        {
+            int first = arity * loc + 1; //the first child
+
+            if (first >= size) //a leaf
+                break;
+
+            int last = Math.min(first + arity, size);
+            int best = first;
+            K bestKey = key(first);
+
+            for (int c = first + 1; c < last; c++) //the highest priority child, the first on a tie
+            {
+                K k = key(c);
+
+                if (k.compareTo(bestKey) < 0)
+                {
+                    best = c;
+                    bestKey = k;
+                }
+            }
+
+            if (bestKey.compareTo(priority) >= 0) //no child is of higher priority
+                break;
+
+            keys[loc] = bestKey;
+            elements[loc] = elements[best];
+            loc = best;
+        }
+
+        keys[loc] = priority;
+        elements[loc] = element;
+    }
+}
@@ -0,0 +1,648 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.concurrent.*;
+
+/**
+ * Histogram
+ *
+ * An immutable count of how often each of the 256 byte values occurs in some
+ * input. It is the frequency distribution the Huffman tree is built from.
+ *
+ * Input is read in large blocks into a reusable buffer rather than a byte at
+ * a time. Within a block, consecutive bytes are counted into four interleaved
+ * sub-histograms:
+ *
+ * [sub 0 : 256 counts] [sub 1 : 256 counts] [sub 2 : 256 counts] [sub 3 : 256 counts]
+ *   bytes 0, 4, 8...     bytes 1, 5, 9...     bytes 2, 6, 10...    bytes 3, 7, 11...
+ *
+ * A run of the same byte value then increments four different counters in
+ * turn, instead of each increment waiting on the store of the one before.
+ * The four are summed into the long totals at the end of every block.
+ *
+ * A file may also be counted in parallel: it is split into ranges, each range
+ * is counted by a task on a ForkJoinPool into the padded counts of the
+ * worker thread running it, and the counts of the workers are added together
+ * once every task has joined. The counts are exactly those of the sequential path.
+ *
+ * A very large file may instead be sampled: a number of blocks spread
+ * across it, evenly or at random, are counted and the counts scaled up to
+ * the length of the file. A byte value no block holds is given the count of
+ * a single sighting, so it still gets a code, if a long one:
+ *
+ * file:    [##......##......##......##......]    (4 blocks of the file counted)
+ * counts:  sample count * file length / bytes sampled, at least that of one sighting
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class Histogram
+{
+    //---------------------------------------------Constants------------------
+
+    /*
+     * The number of byte values counted.
+     */
+    public static final int SYMBOLS = 256;
+
+    /*
+     * The size of the blocks input is read in.
+     */
+    public static final int BLOCK_SIZE = 1 << 16;
+
+    //---------------------------------------------Variables----------------
+    private final long [] counts; //The number of times each byte value occurs
+    private final long total; //The total of all counts
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * Constructor
+     * Creates a histogram of the given counts, which are copied.
+     * @param counts The number of times each of the 256 byte values occurs
+     */
+    public Histogram(long [] counts)
+    {
+        if (counts.length != SYMBOLS)
+            throw new IllegalArgumentException("A histogram has " + SYMBOLS + " counts");
+
+        this.counts = counts.clone();
+
+        long sum = 0;
+        for (int i = 0; i < SYMBOLS; i++)
+            sum = sum + counts[i];
+
+        total = sum;
+    }
+
+    //-----------------------------------------Factory methods----------------
+    /**
+     * of
+     * Counts every byte remaining in the stream. The stream is not closed.
+     * @param in The stream to count
+     * @return The histogram of the stream
+     * @throws IOException if the stream cannot be read
+     */
+    public static Histogram of(InputStream in) throws IOException
+    {
+        return of(in, new byte [BLOCK_SIZE]);
+    }
+
+    /**
+     * of
+     * Counts every byte remaining in the stream, reading it into the given buffer.
+     * The stream is not closed.
+     * @param in The stream to count
+     * @param buffer The buffer to read into, reused for every block
+     * @return The histogram of the stream
+     * @throws IOException if the stream cannot be read
+     */
+    public static Histogram of(InputStream in, byte [] buffer) throws IOException
+    {
+        long [] totals = new long [SYMBOLS];
+        int [] sub = new int [4 * SYMBOLS];
+
+        int read = in.read(buffer, 0, buffer.length);
+
+        while (read != -1)
+        {
+            count(buffer, 0, read, sub, totals);
+            read = in.read(buffer, 0, buffer.length);
+        }
+
+        return new Histogram(totals);
+    }
+
+    /**
+     * of
+     * Counts the bytes of part of an array.
+     * @param data The array to count
+     * @param off The first location to count
+     * @param len The number of bytes to count
+     * @return The histogram of the bytes
+     */
+    public static Histogram of(byte [] data, int off, int len)
+    {
+        long [] totals = new long [SYMBOLS];
+        int [] sub = new int [4 * SYMBOLS];
+
+        count(data, off, len, sub, totals);
+
+        return new Histogram(totals);
+    }
+
+    /**
+     * of
+     * Counts the remaining bytes of a buffer, which may be direct or mapped.
+     * The buffer's position is left unchanged.
+     * @param data The buffer to count
+     * @return The histogram of the buffer
+     */
+    public static Histogram of(ByteBuffer data)
+    {
+        long [] totals = new long [SYMBOLS];
+        int [] sub = new int [4 * SYMBOLS];
+
+        count(data, sub, totals);
+
+        return new Histogram(totals);
+    }
+
+    /**
+     * of
+     * Counts every byte remaining in a mapped file, a window at a time.
+     * The stream is not closed.
+     * @param in The mapped file to count
+     * @return The histogram of the file
+     * @throws IOException if a window cannot be mapped
+     */
+    public static Histogram of(MappedInputStream in) throws IOException
+    {
+        long [] totals = new long [SYMBOLS];
+        int [] sub = new int [4 * SYMBOLS];
+
+        for (ByteBuffer window = in.nextWindow(); window != null; window = in.nextWindow())
+            count(window, sub, totals);
+
+        return new Histogram(totals);
+    }
+
+    /**
+     * of
+     * Counts every byte of a file in parallel. The file is split into ranges
+     * of chunkSize bytes, each counted by a separate task.
+     * @param file The file to count
+     * @param threads The number of worker threads
+     * @param chunkSize The size of the range each task counts
+     * @return The histogram of the file
+     * @throws IOException if the file cannot be read
+     */
+    public static Histogram of(File file, int threads, int chunkSize) throws IOException
+    {
+        FileInputStream in = new FileInputStream(file);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+
+        try
+        {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            long chunks = (size + chunkSize - 1) / chunkSize;
+
+            Counters counters = new Counters(Math.min(chunkSize, BLOCK_SIZE * 16));
+
+            pool.invoke(new CountTask(channel, chunkSize, 0, chunks, size, counters));
+
+            return new Histogram(counters.merge());
+        }
+        catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+        finally
+        {
+            pool.shutdown();
+            in.close();
+        }
+    }
+
+    /**
+     * sample
+     * Estimates the counts of a file from a sample of its blocks, read with
+     * positional reads. The blocks are evenly spaced from the start of the file
+     * to its end, or else at random offsets, chosen by a generator seeded with
+     * the length of the file so a file is always sampled alike. A file no longer
+     * than the blocks together is counted in full instead.
+     * @param file The file to sample
+     * @param blocks The number of blocks, at least 1
+     * @param blockSize The length of each block, at least 1
+     * @param random true for random offsets, false for evenly spaced ones
+     * @return The estimated histogram, whose total is at least the length of the file
+     * @throws IOException if the file cannot be read
+     */
+    public static Histogram sample(File file, int blocks, int blockSize, boolean random) throws IOException
+    {
+        if (blocks < 1 || blockSize < 1)
+            throw new IllegalArgumentException("At least one block of at least one byte must be sampled");
+
+        FileInputStream in = new FileInputStream(file);
+
+        try
+        {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+
+            if ((long)blocks * blockSize >= size) //the sample would be the whole file
+                return of(in);
+
+            long [] totals = new long [SYMBOLS];
+            int [] sub = new int [4 * SYMBOLS];
+            ByteBuffer buffer = ByteBuffer.allocate(blockSize);
+            long [] offsets = sampleOffsets(size, blocks, blockSize, random);
+
+            for (int i = 0; i < offsets.length; i++)
+            {
+                buffer.clear();
+
+                while (buffer.hasRemaining())
+                {
+                    if (channel.read(buffer, offsets[i] + buffer.position()) < 0)
+                        throw new EOFException("The file shrank while being sampled");
+                }
+
+                count(buffer.array(), 0, blockSize, sub, totals);
+            }
+
+            double scale = (double)size / ((long)blocks * blockSize); //file bytes per byte sampled
+            long floor = Math.max(1, Math.round(scale)); //a single sighting
+
+            for (int b = 0; b < SYMBOLS; b++)
+                totals[b] = Math.max(floor, Math.round(totals[b] * scale));
+
+            return new Histogram(totals);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    //-----------------------------------------Public methods-----------------
+    /**
+     * getCount
+     * Returns the number of times the given byte value occurs.
+     * @param b The byte value, 0 - 255
+     * @return The count
+     */
+    public long getCount(int b)
+    {
+        return counts[b];
+    }
+
+    /**
+     * getCounts
+     * Returns a copy of all of the counts, indexed by byte value.
+     * @return The counts
+     */
+    public long [] getCounts()
+    {
+        return counts.clone();
+    }
+
+    /**
+     * getTotal
+     * Returns the total number of bytes counted.
+     * @return The total
+     */
+    public long getTotal()
+    {
+        return total;
+    }
+
+    /**
+     * getSymbols
+     * Returns the number of distinct byte values that occur.
+     * @return The number of byte values with a count above zero
+     */
+    public int getSymbols()
+    {
+        int n = 0;
+
+        for (int i = 0; i < SYMBOLS; i++)
+        {
+            if (counts[i] > 0)
+                n++;
+        }
+
+        return n;
+    }
+
+    /**
+     * equals
+     * Histograms are equal if every count is equal.
+     */
+    public boolean equals(Object o)
+    {
+        return o instanceof Histogram && java.util.Arrays.equals(counts, ((Histogram)o).counts);
+    }
+
+    /**
+     * hashCode
+     * Consistent with equals.
+     */
+    public int hashCode()
+    {
+        return java.util.Arrays.hashCode(counts);
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * count
+     * Counts the remaining bytes of a buffer, leaving its position unchanged.
+     * A direct or mapped buffer is copied out a block at a time with bulk gets,
+     * which measured faster than counting it with a get per byte.
+     * @param data The buffer to count
+     * @param sub The four sub-histograms, all zero on entry and exit
+     * @param totals The running totals
+     */
+    private static void count(ByteBuffer data, int [] sub, long [] totals)
+    {
+        if (data.hasArray()) //count the backing array directly
+        {
+            count(data.array(), data.arrayOffset() + data.position(), data.remaining(), sub, totals);
+            return;
+        }
+
+        ByteBuffer view = data.duplicate(); //copy out a block at a time
+        byte [] buffer = new byte [Math.min(BLOCK_SIZE, view.remaining())];
+
+        while (view.hasRemaining())
+        {
+            int len = Math.min(buffer.length, view.remaining());
+            view.get(buffer, 0, len);
+            count(buffer, 0, len, sub, totals);
+        }
+    }
+
+    /**
+     * count
+     * Counts one block into the four interleaved sub-histograms, then adds them
+     * to the totals and clears them for the next block.
+     * @param data The array holding the block
+     * @param off The first location of the block
+     * @param len The length of the block. Being an array, it is too short for an int count to overflow
+     * @param sub The four sub-histograms, one after the other. All zero on entry and exit.
+     * @param totals The running totals
+     */
+    private static void count(byte [] data, int off, int len, int [] sub, long [] totals)
+    {
+        count(data, off, len, sub);
+        fold(sub, totals, 0);
+    }
+
+    /**
+     * count
+     * Counts one block into the four interleaved sub-histograms.
+     * @param data The array holding the block
+     * @param off The first location of the block
+     * @param len The length of the block
+     * @param sub The four sub-histograms, one after the other
+     */
+    private static void count(byte [] data, int off, int len, int [] sub)
+    {
+        int i = off;
+        int end = off + len;
+        int end4 = off + (len & ~3); //the end of the whole groups of four
+
+        for (; i < end4; i = i + 4)
+        {
+            sub[data[i] & 0xFF]++;
+            sub[SYMBOLS + (data[i + 1] & 0xFF)]++;
+            sub[2 * SYMBOLS + (data[i + 2] & 0xFF)]++;
+            sub[3 * SYMBOLS + (data[i + 3] & 0xFF)]++;
+        }
+
+        for (; i < end; i++) //the leftovers
+            sub[data[i] & 0xFF]++;
+    }
+
+    /**
+     * count
+     * Counts one block into the four interleaved sub-histograms, then adds them
+     * to the totals at the given place in the array, and clears them for the
+     * next block.
+     * @param data The array holding the block
+     * @param off The first location of the block
+     * @param len The length of the block
+     * @param sub The four sub-histograms, one after the other. All zero on entry and exit.
+     * @param totals The array holding the running totals
+     * @param base The location in totals of the count of byte value 0
+     */
+    private static void count(byte [] data, int off, int len, int [] sub, long [] totals, int base)
+    {
+        count(data, off, len, sub);
+        fold(sub, totals, base);
+    }
+
+    /**
+     * sampleOffsets
+     * Returns the offsets of the blocks to sample, in increasing order. Evenly
+     * spaced blocks run from the start of the file to its end; random ones may
+     * overlap.
+     * @param size The length of the file, more than the blocks together
+     * @param blocks The number of blocks
+     * @param blockSize The length of each block
+     * @param random true for random offsets
+     */
+    private static long [] sampleOffsets(long size, int blocks, int blockSize, boolean random)
+    {
+        long [] offsets = new long [blocks];
+        long last = size - blockSize; //the last offset a whole block fits at
+
+        if (random)
+        {
+            java.util.Random generator = new java.util.Random(size);
+
+            for (int i = 0; i < blocks; i++)
+                offsets[i] = (long)(generator.nextDouble() * (last + 1));
+
+            java.util.Arrays.sort(offsets);
+        }
+        else
+        {
+            for (int i = 0; i < blocks; i++)
+                offsets[i] = (blocks == 1) ? 0 : (long)((double)last * i / (blocks - 1));
+        }
+
+        return offsets;
+    }
+
+    /**
+     * fold
+     * Adds the four sub-histograms to the totals and clears them.
+     * @param sub The four sub-histograms
+     * @param totals The array holding the running totals
+     * @param base The location in totals of the count of byte value 0
+     */
+    private static void fold(int [] sub, long [] totals, int base)
+    {
+        for (int b = 0; b < SYMBOLS; b++)
+        {
+            totals[base + b] = totals[base + b] + sub[b] + sub[SYMBOLS + b] + sub[2 * SYMBOLS + b] + sub[3 * SYMBOLS + b];
+
+            sub[b] = 0;
+            sub[SYMBOLS + b] = 0;
+            sub[2 * SYMBOLS + b] = 0;
+            sub[3 * SYMBOLS + b] = 0;
+        }
+    }
+
+    /*
+     * The number of unused longs either side of a worker's counts, a cache line
+     * or more, so the counts of workers running side by side never share a line.
+     */
+    private static final int PADDING = 16;
+
+    /**
+     * Counters
+     * The counting state of each worker thread of a parallel count: its padded
+     * counts, long[PADDING + 256 + PADDING] with the count of byte value b at
+     * PADDING + b, its sub-histograms and its read buffer. Each is made the
+     * first time its thread runs a task, and used for every chunk the thread
+     * counts after, so nothing is allocated per chunk.
+     */
+    private static class Counters extends ThreadLocal<Counters.Worker>
+    {
+        private final int bufferSize; //The size of each worker's read buffer
+        private final java.util.List<Worker> workers; //Every worker made so far
+
+        /**
+         * Constructor
+         * @param bufferSize The size of each worker's read buffer
+         */
+        public Counters(int bufferSize)
+        {
+            this.bufferSize = bufferSize;
+            workers = new java.util.ArrayList<Worker>();
+        }
+
+        /**
+         * initialValue
+         * Makes the state of the calling thread, on that thread.
+         */
+        protected Worker initialValue()
+        {
+            Worker w = new Worker(bufferSize);
+
+            synchronized (workers)
+            {
+                workers.add(w);
+            }
+
+            return w;
+        }
+
+        /**
+         * merge
+         * Adds the counts of every worker together. Only valid once every task
+         * has been joined.
+         * @return The totals, indexed by byte value
+         */
+        public long [] merge()
+        {
+            long [] totals = new long [SYMBOLS];
+
+            synchronized (workers)
+            {
+                for (Worker w : workers)
+                {
+                    for (int b = 0; b < SYMBOLS; b++)
+                        totals[b] = totals[b] + w.counts[PADDING + b];
+                }
+            }
+
+            return totals;
+        }
+
+        /**
+         * Worker
+         * The counting state of one thread.
+         */
+        private static class Worker
+        {
+            private final long [] counts = new long [PADDING + SYMBOLS + PADDING]; //The count of b is at PADDING + b
+            private final int [] sub = new int [4 * SYMBOLS]; //The sub-histograms, all zero between chunks
+            private final ByteBuffer buffer; //The buffer chunks are read into
+
+            /**
+             * Constructor
+             * @param bufferSize The size of the read buffer
+             */
+            private Worker(int bufferSize)
+            {
+                buffer = ByteBuffer.allocate(bufferSize);
+            }
+        }
+    }
+
+    /**
+     * CountTask
+     * Counts a run of chunks of a file. A run of more than one chunk is split
+     * in half and counted by two tasks; a single chunk is read with positional
+     * reads, so tasks share the channel without sharing a position. Each chunk
+     * is counted into the counts of the thread that runs it.
+     */
+    private static class CountTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel; //The file being counted
+        private final int chunkSize; //The size of a chunk
+        private final long first; //The first chunk of the run
+        private final long last; //The chunk after the end of the run
+        private final long size; //The size of the file
+        private final Counters counters; //The counting state of each worker thread
+
+        /**
+         * Constructor
+         * @param channel The file being counted
+         * @param chunkSize The size of a chunk
+         * @param first The first chunk to count
+         * @param last The chunk after the last to count
+         * @param size The size of the file
+         * @param counters The counting state of each worker thread
+         */
+        public CountTask(FileChannel channel, int chunkSize, long first, long last, long size, Counters counters)
+        {
+            this.channel = channel;
+            this.chunkSize = chunkSize;
+            this.first = first;
+            this.last = last;
+            this.size = size;
+            this.counters = counters;
+        }
+
+        /**
+         * compute
+         * Counts the run, splitting it if it is longer than one chunk.
+         */
+        protected void compute()
+        {
+            if (last - first > 1) //split the run in two
+            {
+                long mid = (first + last) >>> 1;
+                CountTask left = new CountTask(channel, chunkSize, first, mid, size, counters);
+                CountTask right = new CountTask(channel, chunkSize, mid, last, size, counters);
+
+                invokeAll(left, right);
+                return;
+            }
+
+            if (last == first) //an empty file
+                return;
+
+            Counters.Worker w = counters.get();
+            ByteBuffer buffer = w.buffer;
+            long position = first * chunkSize;
+            long end = Math.min(position + chunkSize, size);
+
+            try
+            {
+                while (position < end)
+                {
+                    buffer.clear();
+                    buffer.limit((int)Math.min(buffer.capacity(), end - position));
+
+                    int read = channel.read(buffer, position);
+                    if (read < 0)
+                        throw new EOFException("The file shrank while being counted");
+
+                    count(buffer.array(), 0, read, w.sub, w.counts, PADDING);
+                    position = position + read;
+                }
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
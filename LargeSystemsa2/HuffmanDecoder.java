@@ -0,0 +1,835 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * HuffmanDecoder
+ *
+ * A table driven decoder for the bitstreams written by HuffmanEncoder. Rather
+ * than walking the tree one bit at a time, the decoder peeks at the next
+ * PRIMARY_BITS bits of input and uses them as an index into a lookup table.
+ * Each entry either names the byte and the length of its code, or, for codes
+ * longer than the table is wide, links to a further table indexed by the bits
+ * that follow.
+ *
+ * Intuition, for the codes a=0, b=10, c=110, d=111 and a 3 bit table:
+ *
+ * [000 a/1] [001 a/1] [010 a/1] [011 a/1] [100 b/2] [101 b/2] [110 c/3] [111 d/3]
+ *
+ * Every table is held in the one int array. An entry is either:
+ *
+ *  LEAF | byte << 8 | code length     - the code is complete
+ *  offset << 8 | sub-table bits       - the code continues in the table at offset
+ *  0                                  - no code begins with these bits
+ *
+ * The encoder pads the final byte with zeroes, so the decoder must be told how
+ * many bytes to restore. It stops as soon as that many have been produced and
+ * the padding is never read as data.
+ *
+ * A stream of separately coded blocks, each padded to a whole byte, is decoded
+ * by calling begin once and then decodeBlock for each block in turn. A block
+ * already in memory may instead be decoded by calling begin with the array
+ * holding it, and decoded straight into a (possibly mapped) ByteBuffer.
+ *
+ * Bytes written as they are by HuffmanEncoder.writeBytes, such as a stored
+ * block, are read back with readBytes, copied rather than decoded.
+ *
+ * After begin with no input, bytes are instead decoded from one ByteBuffer
+ * into another that the caller owns, a piece at a time as the input arrives,
+ * such as from a socket. Input is taken only as the codes need it, so the
+ * bytes after the bitstream are left in the buffer.
+ *
+ * The lookup tables are never changed once built, so decoders for several
+ * threads can share them: each thread takes a copy made with the copy
+ * constructor, which has its own input state.
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class HuffmanDecoder
+{
+    //---------------------------------------------Constants------------------
+
+    /*
+     * The width of the first lookup table in bits. Codes up to this length are
+     * decoded with a single lookup.
+     */
+    public static final int PRIMARY_BITS = 11;
+
+    /*
+     * Marks a table entry that holds a completed code.
+     */
+    private static final int LEAF = 1 << 30;
+
+    /*
+     * The size of the input and output buffers in bytes.
+     */
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    //---------------------------------------------Variables----------------
+    private int [] table; //All of the lookup tables, the primary table first
+    private int tableSize; //The number of entries of the table array in use
+    private int peekBits; //The number of bits that must be buffered before a lookup
+
+    private InputStream in; //The compressed input
+    private byte [] outBuffer; //Decoded bytes waiting to be written
+    private byte [] inBuffer; //Bytes read from the input but not yet taken into the bit buffer
+    private int inPos; //The next byte of inBuffer to take
+    private int inLimit; //The end of the valid bytes of inBuffer
+    private int padding; //Number of zero bytes supplied past the end of the input
+
+    private long bitBuffer; //The bit buffer. The lowest bitCount bits are unread, most significant first
+    private int bitCount; //The number of unread bits in the bit buffer
+
+    private byte [] block; //Holds bytes copied out of a direct input buffer, created on first use
+    private int consumed; //The bytes of input taken by the last call with buffers
+    private int produced; //The bytes of output put by the last call with buffers
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * Constructor
+     * Builds the lookup tables for the given code.
+     * @param codes The code for each of the 256 byte values, right aligned
+     * @param lengths The length of each code in bits. Zero for bytes that do not occur.
+     */
+    public HuffmanDecoder(int [] codes, byte [] lengths)
+    {
+        setCode(codes, lengths);
+    }
+
+    /**
+     * Constructor: copy
+     * Creates a decoder that shares the lookup tables of another, but has its
+     * own input state, so the two can decode on different threads.
+     * @param other The decoder whose tables are shared
+     */
+    public HuffmanDecoder(HuffmanDecoder other)
+    {
+        table = other.table;
+        tableSize = other.tableSize;
+        peekBits = other.peekBits;
+    }
+
+    //-----------------------------------------Public methods-----------------
+    /**
+     * decode
+     * Decodes the given number of bytes from the compressed stream and writes
+     * them to the output. Any zero padding after the last code is ignored.
+     * The output is flushed but neither stream is closed.
+     * @param input The compressed bitstream
+     * @param output The stream the restored bytes are written to
+     * @param length The number of bytes that were originally encoded
+     * @throws IOException if the input ends early, holds a bit pattern that is not a code,
+     * or if either stream fails
+     */
+    public void decode(InputStream input, OutputStream output, long length) throws IOException
+    {
+        begin(input);
+        decodeBlock(output, length);
+    }
+
+    /**
+     * begin
+     * Starts decoding the given stream, discarding any state from before.
+     * @param input The compressed bitstream
+     */
+    public void begin(InputStream input)
+    {
+        in = input;
+        inBuffer = new byte [BUFFER_SIZE];
+        inPos = 0;
+        inLimit = 0;
+        padding = 0;
+        bitBuffer = 0;
+        bitCount = 0;
+    }
+
+    /**
+     * begin
+     * Starts decoding the given part of an array, discarding any state from before.
+     * The array is read in place, not copied, and nothing past the part is read.
+     * @param data The array holding the compressed bitstream
+     * @param off The first location of the bitstream
+     * @param len The length of the bitstream in bytes
+     */
+    public void begin(byte [] data, int off, int len)
+    {
+        in = null;
+        inBuffer = data;
+        inPos = off;
+        inLimit = off + len;
+        padding = 0;
+        bitBuffer = 0;
+        bitCount = 0;
+    }
+
+    /**
+     * begin
+     * Starts decoding bytes passed to decode(ByteBuffer, ByteBuffer), discarding
+     * any state from before.
+     */
+    public void begin()
+    {
+        in = null;
+        inBuffer = new byte [0];
+        inPos = 0;
+        inLimit = 0;
+        padding = 0;
+        bitBuffer = 0;
+        bitCount = 0;
+    }
+
+    /**
+     * setCode
+     * Replaces the code being decoded, keeping the position in the input, so the
+     * code can change part way through a stream. Copies made with the copy
+     * constructor keep the code they were made with.
+     * @param codes The code for each of the 256 byte values, right aligned
+     * @param lengths The length of each code in bits. Zero for bytes that do not occur.
+     */
+    public void setCode(int [] codes, byte [] lengths)
+    {
+        int [] symbols = new int [lengths.length];
+        int count = 0;
+        int maxLength = 0;
+
+        for (int i = 0; i < lengths.length; i++) //collect the bytes that have a code
+        {
+            if (lengths[i] > HuffmanEncoder.MAX_CODE_LENGTH)
+                throw new IllegalArgumentException("Huffman code for byte " + i + " exceeds " + HuffmanEncoder.MAX_CODE_LENGTH + " bits");
+
+            if (lengths[i] > 0)
+            {
+                symbols[count++] = i;
+                maxLength = Math.max(maxLength, lengths[i]);
+            }
+        }
+
+        peekBits = Math.max(maxLength, PRIMARY_BITS);
+
+        table = new int [2 << PRIMARY_BITS];
+        tableSize = 0;
+
+        buildTable(codes, lengths, symbols, count, 0, PRIMARY_BITS);
+    }
+
+    /**
+     * setCode
+     * Replaces the code being decoded with that of another decoder, whose
+     * lookup tables are shared rather than built again, keeping the position
+     * in the input. Switching back and forth between codes built once so
+     * costs nothing.
+     * @param other The decoder whose code and tables are taken
+     */
+    public void setCode(HuffmanDecoder other)
+    {
+        table = other.table;
+        tableSize = other.tableSize;
+        peekBits = other.peekBits;
+    }
+
+    /**
+     * decode
+     * Decodes the given number of bytes from the input passed to begin into part
+     * of an array. Nothing is skipped afterwards, so the next code or bits follow
+     * straight on.
+     * @param dst The array the restored bytes are written to
+     * @param off The first location to write
+     * @param len The number of bytes to decode
+     * @throws IOException if the input ends early or holds a bit pattern that is not a code
+     */
+    public void decode(byte [] dst, int off, int len) throws IOException
+    {
+        decodeBytes(dst, off, len, 0);
+    }
+
+    /**
+     * decode
+     * Decodes bytes from one buffer into another, until the output is full or
+     * the input ends part way through a code; the rest of that code is taken
+     * from the input of the next call. Both positions are advanced past the
+     * bytes taken and put. The output's remaining must never be more than the
+     * bytes still to be restored, as it decides how far ahead input is taken.
+     * A heap buffer is worked on in place, a direct one through a fixed block,
+     * so nothing is allocated per call. Call begin first and endBlock after.
+     * @param src The compressed bitstream, or the next piece of it
+     * @param dst The buffer the restored bytes are put in
+     * @return The number of bytes put in dst; getConsumed gives the number taken from src
+     * @throws IOException if the input holds a bit pattern that is not a code
+     */
+    public int decode(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        int read = 0;
+        int written = 0;
+
+        do
+        {
+            byte [] in;
+            int inOff;
+            int inLen;
+            int start = src.position();
+
+            if (src.hasArray())
+            {
+                in = src.array();
+                inOff = src.arrayOffset() + start;
+                inLen = src.remaining();
+            }
+            else //copy out no more than the codes of the output could fill
+            {
+                in = block();
+                inOff = 0;
+                inLen = (int)Math.min(Math.min(src.remaining(), in.length), 4L * dst.remaining() + 8);
+                src.get(in, 0, inLen);
+            }
+
+            if (dst.hasArray())
+            {
+                unpack(in, inOff, inLen, dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+                dst.position(dst.position() + produced);
+            }
+            else //decode into the output array, then put it across in bulk
+            {
+                unpack(in, inOff, inLen, outBuffer(), 0, Math.min(dst.remaining(), outBuffer.length));
+                dst.put(outBuffer, 0, produced);
+            }
+
+            src.position(start + consumed);
+            read = read + consumed;
+            written = written + produced;
+        }
+        while ((consumed > 0 || produced > 0) && src.hasRemaining() && dst.hasRemaining());
+
+        consumed = read;
+        produced = written;
+
+        return written;
+    }
+
+    /**
+     * decode
+     * Decodes the given number of bytes read from one channel and writes them
+     * to another, through two buffers the caller owns. A channel cannot be
+     * read back, so the bytes read past the bitstream are left in the input
+     * buffer, ready to be read from. The channels must be blocking; neither
+     * is closed.
+     * @param input The channel the compressed bitstream is read from
+     * @param output The channel the restored bytes are written to
+     * @param length The number of bytes that were encoded
+     * @param inBuffer The buffer input is read into, of at least 8 bytes
+     * @param outBuffer The buffer output is decoded into, of at least 1 byte
+     * @throws IOException if the input ends early, holds a bit pattern that is not a code,
+     * or if either channel fails
+     * @throws IllegalArgumentException if either buffer is too small
+     */
+    public void decode(ReadableByteChannel input, WritableByteChannel output, long length, ByteBuffer inBuffer, ByteBuffer outBuffer) throws IOException
+    {
+        if (inBuffer.capacity() < 8)
+            throw new IllegalArgumentException("The input buffer must hold at least 8 bytes");
+
+        if (outBuffer.capacity() < 1)
+            throw new IllegalArgumentException("The output buffer must hold at least 1 byte");
+
+        boolean end = false;
+
+        begin();
+        inBuffer.clear();
+
+        for (long done = 0; done < length; )
+        {
+            if (!end && input.read(inBuffer) == -1)
+                end = true;
+
+            inBuffer.flip();
+            outBuffer.clear();
+            outBuffer.limit((int)Math.min(outBuffer.capacity(), length - done));
+
+            int n = decode(inBuffer, outBuffer);
+            inBuffer.compact();
+
+            if (n == 0 && end)
+                throw new IOException("Corrupt Huffman data: the compressed input ended early");
+
+            outBuffer.flip();
+
+            while (outBuffer.hasRemaining())
+                output.write(outBuffer);
+
+            done = done + n;
+        }
+
+        endBlock();
+        inBuffer.flip();
+    }
+
+    /**
+     * getConsumed
+     * Returns the number of bytes of input taken by the last decode with buffers.
+     */
+    public int getConsumed()
+    {
+        return consumed;
+    }
+
+    /**
+     * getProduced
+     * Returns the number of bytes of output put by the last decode with buffers.
+     */
+    public int getProduced()
+    {
+        return produced;
+    }
+
+    /**
+     * readBits
+     * Reads the given number of raw bits from the input passed to begin, most
+     * significant first, as written by HuffmanEncoder.writeBits.
+     * @param n The number of bits, 0 - 32
+     * @return The bits, right aligned
+     * @throws IOException if the input has ended
+     */
+    public int readBits(int n) throws IOException
+    {
+        if (bitCount < n)
+            refill();
+
+        bitCount = bitCount - n;
+
+        return (int)((bitBuffer >>> bitCount) & ((1L << n) - 1));
+    }
+
+    /**
+     * readBytes
+     * Skips to the next whole byte of the input passed to begin, as endBlock
+     * does, then reads bytes just as they are, as written by
+     * HuffmanEncoder.writeBytes. Bytes already read ahead are copied out of
+     * the buffers, and the rest are read straight from the stream into the
+     * array.
+     * @param dst The array the bytes are written to
+     * @param off The first location to write
+     * @param len The number of bytes to read
+     * @throws IOException if the input ends early
+     */
+    public void readBytes(byte [] dst, int off, int len) throws IOException
+    {
+        endBlock();
+
+        int buffered = Math.min(len, Math.max(0, bitCount / 8 - padding)); //whole bytes in the bit buffer, less the supplied zeroes
+
+        for (int i = 0; i < buffered; i++)
+        {
+            bitCount = bitCount - 8;
+            dst[off++] = (byte)(bitBuffer >>> bitCount);
+        }
+
+        len = len - buffered;
+
+        if (len > 0 && padding > 0) //only supplied zeroes are left
+            throw new IOException("Corrupt Huffman data: the compressed input ended early");
+
+        int n = Math.min(len, inLimit - inPos);
+        System.arraycopy(inBuffer, inPos, dst, off, n);
+        inPos = inPos + n;
+        off = off + n;
+        len = len - n;
+
+        while (len > 0)
+        {
+            int r = (in == null) ? -1 : in.read(dst, off, len);
+
+            if (r == -1)
+                throw new IOException("Corrupt Huffman data: the compressed input ended early");
+
+            off = off + r;
+            len = len - r;
+        }
+    }
+
+    /**
+     * endBlock
+     * Checks the input did not run out before the last code or bits read, then
+     * skips the padding to the next whole byte.
+     * @throws IOException if more than the final byte's padding has been read
+     */
+    public void endBlock() throws IOException
+    {
+        checkPadding();
+        bitCount = bitCount - (bitCount % 8);
+    }
+
+    /**
+     * unread
+     * Returns the bytes that were read from the input ahead of need: those after
+     * the block just ended. The decoder reads its input in large pieces, so when
+     * a stream holds more than one bitstream, such as a header after it, these
+     * must be given back to the stream before it is read on. Only valid straight
+     * after endBlock or decodeBlock.
+     * @return The bytes read but not decoded, in the order they came
+     */
+    public byte [] unread()
+    {
+        int buffered = Math.max(0, bitCount / 8 - padding); //whole bytes in the bit buffer, less the supplied zeroes
+        int rest = inLimit - inPos; //read from the input but not yet taken into the bit buffer
+        byte [] left = new byte [buffered + rest];
+
+        for (int i = 0; i < buffered; i++)
+            left[i] = (byte)(bitBuffer >>> (bitCount - 8 * (i + 1)));
+
+        System.arraycopy(inBuffer, inPos, left, buffered, rest);
+
+        return left;
+    }
+
+    /**
+     * decodeBlock
+     * Decodes the given number of bytes from the stream passed to begin and writes
+     * them to the output. The zero padding of the last byte of the block is then
+     * skipped, so the next call starts at the next block. The output is flushed.
+     * @param output The stream the restored bytes are written to
+     * @param length The number of bytes that were encoded in the block
+     * @throws IOException if the input ends early, holds a bit pattern that is not a code,
+     * or if either stream fails
+     */
+    public void decodeBlock(OutputStream output, long length) throws IOException
+    {
+        byte [] outBuffer = outBuffer();
+
+        for (long done = 0; done < length; )
+        {
+            int n = (int)Math.min(outBuffer.length, length - done);
+
+            decodeBytes(outBuffer, 0, n, done);
+            output.write(outBuffer, 0, n);
+            done = done + n;
+        }
+
+        endBlock();
+        output.flush();
+    }
+
+    /**
+     * decodeBlock
+     * Decodes the given number of bytes from the input passed to begin into the
+     * buffer at its position, which is advanced past them. The zero padding of
+     * the last byte of the block is then skipped.
+     * @param output The buffer the restored bytes are put in
+     * @param length The number of bytes that were encoded in the block
+     * @throws IOException if the input ends early or holds a bit pattern that is not a code
+     * @throws BufferOverflowException if the buffer has too little room remaining
+     */
+    public void decodeBlock(ByteBuffer output, int length) throws IOException
+    {
+        if (output.remaining() < length)
+            throw new BufferOverflowException();
+
+        if (output.hasArray()) //decode straight into the backing array
+        {
+            decodeBytes(output.array(), output.arrayOffset() + output.position(), length, 0);
+            output.position(output.position() + length);
+        }
+        else //decode a buffer at a time and copy it across
+        {
+            byte [] outBuffer = outBuffer();
+
+            for (int done = 0; done < length; )
+            {
+                int n = Math.min(outBuffer.length, length - done);
+
+                decodeBytes(outBuffer, 0, n, done);
+                output.put(outBuffer, 0, n);
+                done = done + n;
+            }
+        }
+
+        endBlock();
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * decodeBytes
+     * Decodes the given number of bytes into part of an array.
+     * @param dst The array the restored bytes are written to
+     * @param off The first location to write
+     * @param len The number of bytes to decode
+     * @param done The number of bytes of the block already decoded, for error messages
+     * @throws IOException if the input ends early or holds a bit pattern that is not a code
+     */
+    private void decodeBytes(byte [] dst, int off, int len, long done) throws IOException
+    {
+        int [] table = this.table;
+        int primaryMask = (1 << PRIMARY_BITS) - 1;
+        int end = off + len;
+
+        for (int i = off; i < end; i++)
+        {
+            if (bitCount < peekBits) //make sure the longest code can be peeked
+                refill();
+
+            long acc = bitBuffer;
+            int count = bitCount;
+
+            int depth = PRIMARY_BITS;
+            int entry = table[(int)(acc >>> (count - depth)) & primaryMask]; //bits beyond the buffer are zero, see refill
+
+            while ((entry & LEAF) == 0) //follow the links down to the completed code
+            {
+                if (entry == 0)
+                    throw new IOException("Corrupt Huffman data: no code matches the input at byte " + (done + i - off));
+
+                int subBits = entry & 0xFF;
+                depth = depth + subBits;
+                entry = table[(entry >>> 8) + ((int)(acc >>> (count - depth)) & ((1 << subBits) - 1))];
+            }
+
+            bitCount = count - (entry & 0xFF); //consume the code
+            dst[i] = (byte)(entry >>> 8);
+        }
+    }
+
+    /**
+     * unpack
+     * Decodes bytes from one array into another, until the output is full or
+     * the input ends part way through a code. While the output still wants at
+     * least 64 bytes, each of at least a bit, the bit buffer is topped up
+     * freely, since every bit of it will be used; nearer the end a byte is
+     * taken only when the bits there are do not complete a code, so none past
+     * the end of the bitstream is ever taken. A code is looked up in the bits
+     * there are, padded with zeroes, and taken only if it ends within them.
+     * Sets consumed and produced.
+     * @param in The array holding the compressed bytes
+     * @param inOff The first location to take
+     * @param inLen The number of bytes there are to take
+     * @param out The array the restored bytes are written to
+     * @param outOff The first location to write
+     * @param outLen The number of bytes to restore, at most
+     * @throws IOException if the input holds a bit pattern that is not a code
+     */
+    private void unpack(byte [] in, int inOff, int inLen, byte [] out, int outOff, int outLen) throws IOException
+    {
+        int [] table = this.table;
+        int primaryMask = (1 << PRIMARY_BITS) - 1;
+        int peek = peekBits;
+        long acc = bitBuffer;
+        int count = bitCount;
+
+        int i = inOff;
+        int inEnd = inOff + inLen;
+        int pos = outOff;
+        int outEnd = outOff + outLen;
+
+        while (pos < outEnd)
+        {
+            if (count < peek && outEnd - pos >= 64) //every bit taken in is sure to be used
+            {
+                while (count <= 56 && i < inEnd)
+                {
+                    acc = (acc << 8) | (in[i++] & 0xFF);
+                    count = count + 8;
+                }
+            }
+
+            long bits = (count >= peek) ? acc : acc << (peek - count); //too few bits are padded with zeroes
+            int width = Math.max(count, peek);
+
+            int depth = PRIMARY_BITS;
+            int entry = table[(int)(bits >>> (width - depth)) & primaryMask];
+
+            while (entry != 0 && (entry & LEAF) == 0) //follow the links down to the completed code
+            {
+                int subBits = entry & 0xFF;
+                depth = depth + subBits;
+                entry = table[(entry >>> 8) + ((int)(bits >>> (width - depth)) & ((1 << subBits) - 1))];
+            }
+
+            if (entry != 0 && (entry & 0xFF) <= count) //a code, and it lies within the real bits
+            {
+                count = count - (entry & 0xFF);
+                out[pos++] = (byte)(entry >>> 8);
+            }
+            else if (count >= peek)
+            {
+                throw new IOException("Corrupt Huffman data: no code matches the input");
+            }
+            else if (i < inEnd) //take another byte and look again
+            {
+                acc = (acc << 8) | (in[i++] & 0xFF);
+                count = count + 8;
+            }
+            else //wait for more input
+            {
+                break;
+            }
+        }
+
+        bitBuffer = acc;
+        bitCount = count;
+        consumed = i - inOff;
+        produced = pos - outOff;
+    }
+
+    /**
+     * block
+     * Returns the array bytes of a direct input buffer are copied into, creating
+     * it on first use.
+     */
+    private byte [] block()
+    {
+        if (block == null)
+            block = new byte [BUFFER_SIZE];
+
+        return block;
+    }
+
+    /**
+     * outBuffer
+     * Returns the buffer restored bytes are gathered in, creating it on first use.
+     */
+    private byte [] outBuffer()
+    {
+        if (outBuffer == null)
+            outBuffer = new byte [BUFFER_SIZE];
+
+        return outBuffer;
+    }
+
+    /**
+     * refill
+     * Tops up the bit buffer a byte at a time until it holds at least 56 bits.
+     * Once the input is exhausted zero bytes are supplied instead; this is what
+     * makes peeking past the padding of the final byte safe.
+     */
+    private void refill() throws IOException
+    {
+        checkPadding();
+
+        while (bitCount <= 56)
+        {
+            if (inPos == inLimit) //buffer empty, read some more
+            {
+                inLimit = (in == null) ? -1 : in.read(inBuffer, 0, inBuffer.length); //an array passed to begin is all there is
+                inPos = 0;
+
+                if (inLimit <= 0) //end of input, pad with a zero
+                {
+                    inLimit = 0;
+                    padding = padding + 1;
+                    bitBuffer = bitBuffer << 8;
+                    bitCount = bitCount + 8;
+                    continue;
+                }
+            }
+
+            bitBuffer = (bitBuffer << 8) | (inBuffer[inPos++] & 0xFF);
+            bitCount = bitCount + 8;
+        }
+    }
+
+    /**
+     * checkPadding
+     * The supplied zero bytes sit behind every real bit, so the bits consumed from
+     * them are those not left in the buffer. A valid stream only ever consumes the
+     * padding of its final byte, fewer than 8 bits; any more and it was truncated.
+     * @throws IOException if more than the final byte's padding has been consumed
+     */
+    private void checkPadding() throws IOException
+    {
+        if ((long)padding * 8 - bitCount > 7)
+            throw new IOException("Corrupt Huffman data: the compressed input ended early");
+    }
+
+    /**
+     * buildTable
+     * Creates a lookup table indexed by the bits of the codes that follow the
+     * first depth bits, which all of the given symbols share. Codes that end
+     * within the table fill every entry they prefix; longer codes are grouped
+     * by the bits they share and given a table of their own.
+     * @param codes The code of each byte value
+     * @param lengths The length of each code
+     * @param symbols The byte values to place in this table
+     * @param count The number of byte values in symbols
+     * @param depth The number of bits already consumed by the tables above
+     * @param bits The width of this table in bits
+     * @return The location of the new table in the table array
+     */
+    private int buildTable(int [] codes, byte [] lengths, int [] symbols, int count, int depth, int bits)
+    {
+        int offset = allocate(1 << bits);
+        int end = depth + bits; //the bit position this table reaches
+        int mask = (1 << bits) - 1;
+
+        int [] longer = new int [count]; //the symbols that carry on past this table...
+        int longCount = 0;
+
+        for (int i = 0; i < count; i++)
+        {
+            int s = symbols[i];
+            int len = lengths[s];
+
+            if (len <= end) //the code completes here, fill every entry it prefixes
+            {
+                int index = (int)(codes[s] & ((1L << (len - depth)) - 1)) << (end - len);
+                int entry = LEAF | (s << 8) | len;
+
+                for (int j = 0; j < (1 << (end - len)); j++)
+                    table[offset + index + j] = entry;
+            }
+            else
+            {
+                longer[longCount++] = s;
+            }
+        }
+
+        //...are grouped by the index they share and given sub tables
+        for (int i = 0; i < longCount; i++)
+        {
+            int index = (codes[longer[i]] >>> (lengths[longer[i]] - end)) & mask;
+
+            if (table[offset + index] != 0)
+                continue; //group already built
+
+            int [] group = new int [longCount];
+            int groupCount = 0;
+            int groupMax = 0;
+
+            for (int j = i; j < longCount; j++)
+            {
+                int s = longer[j];
+
+                if (((codes[s] >>> (lengths[s] - end)) & mask) == index)
+                {
+                    group[groupCount++] = s;
+                    groupMax = Math.max(groupMax, lengths[s]);
+                }
+            }
+
+            int subBits = Math.min(groupMax - end, PRIMARY_BITS);
+            int sub = buildTable(codes, lengths, group, groupCount, end, subBits);
+
+            table[offset + index] = (sub << 8) | subBits;
+        }
+
+        return offset;
+    }
+
+    /**
+     * allocate
+     * Reserves the given number of entries at the end of the table array,
+     * growing it if required.
+     * @param size The number of entries required
+     * @return The location of the first entry reserved
+     */
+    private int allocate(int size)
+    {
+        if (tableSize + size > table.length)
+        {
+            int [] grown = new int [Math.max(table.length * 2, tableSize + size)];
+            System.arraycopy(table, 0, grown, 0, tableSize);
+            table = grown;
+        }
+
+        int offset = tableSize;
+        tableSize = tableSize + size;
+
+        return offset;
+    }
+}
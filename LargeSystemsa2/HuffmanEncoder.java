@@ -0,0 +1,564 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * HuffmanEncoder
+ *
+ * A streaming bit-packer for Huffman codes. Every byte of input is looked up
+ * in a pair of primitive tables (the code and its length in bits), the code is
+ * shifted into a long accumulator, and whole bytes are drained from the
+ * accumulator into a fixed size buffer that is flushed to the output stream
+ * whenever it fills.
+ *
+ * Intuition:
+ *
+ * accumulator: [ ...garbage... | pending bits ]  (always fewer than 8 pending)
+ * buffer:      [b0][b1][b2]...[bufferPos]...[BUFFER_SIZE]
+ *
+ * Memory use is therefore constant irrespective of the size of the input.
+ * Bits are written most significant bit first, and the final partial byte is
+ * padded with zeroes, in the same manner the original String based encoding
+ * produced.
+ *
+ * An encoder made without a stream instead packs straight into ByteBuffers
+ * the caller owns, taking as much of the input as the output has room for,
+ * in the manner of a Deflater. Its bits may be written a piece at a time to
+ * a socket or a file channel with no copy in between.
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class HuffmanEncoder
+{
+    //---------------------------------------------Constants------------------
+
+    /*
+     * The size of the output buffer in bytes.
+     */
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    /*
+     * The longest code supported, the width of an int. Fewer than 8 bits are
+     * ever pending, so a code always fits the 64 bit accumulator.
+     */
+    public static final int MAX_CODE_LENGTH = 32;
+
+    //---------------------------------------------Variables----------------
+    private OutputStream out; //The stream the packed bytes are flushed to
+    private int [] codes; //The code of each byte value, right aligned
+    private byte [] lengths; //The length in bits of the code of each byte value
+
+    private byte [] buffer; //The fixed size output buffer
+    private int bufferPos; //The next free location in the buffer
+
+    private long bitBuffer; //The accumulator. Only the lowest bitCount bits are meaningful
+    private int bitCount; //The number of bits pending in the accumulator
+    private long bitsWritten; //The total number of code bits encoded so far
+
+    private byte [] block; //Holds bytes copied out of a direct input buffer, created on first use
+    private int consumed; //The bytes of input taken by the last call with buffers
+    private int produced; //The bytes of output put by the last call with buffers
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * Constructor
+     * Creates an encoder for the given code table.
+     * @param codes The code for each of the 256 byte values, right aligned
+     * @param lengths The length of each code in bits. Zero for bytes that do not occur.
+     * @param out The stream to write the packed bits to
+     */
+    public HuffmanEncoder(int [] codes, byte [] lengths, OutputStream out)
+    {
+        this(codes, lengths, out, BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor: buffer size
+     * Creates an encoder with an output buffer of the given size, for when
+     * only a little output is expected.
+     * @param codes The code for each of the 256 byte values, right aligned
+     * @param lengths The length of each code in bits. Zero for bytes that do not occur.
+     * @param out The stream to write the packed bits to
+     * @param bufferSize The size of the output buffer in bytes, at least 1
+     */
+    public HuffmanEncoder(int [] codes, byte [] lengths, OutputStream out, int bufferSize)
+    {
+        setCode(codes, lengths);
+        this.out = out;
+
+        buffer = new byte [Math.max(bufferSize, 1)];
+        bufferPos = 0;
+        bitBuffer = 0;
+        bitCount = 0;
+        bitsWritten = 0;
+    }
+
+    /**
+     * Constructor: buffers
+     * Creates an encoder with no stream, which packs into the caller's buffers.
+     * Only encode(ByteBuffer, ByteBuffer), finish(ByteBuffer) and the channel
+     * encode may be used; nothing is allocated until a direct buffer is passed.
+     * @param codes The code for each of the 256 byte values, right aligned
+     * @param lengths The length of each code in bits. Zero for bytes that do not occur.
+     */
+    public HuffmanEncoder(int [] codes, byte [] lengths)
+    {
+        setCode(codes, lengths);
+        out = null;
+
+        buffer = null;
+        bufferPos = 0;
+        bitBuffer = 0;
+        bitCount = 0;
+        bitsWritten = 0;
+    }
+
+    //-----------------------------------------Public methods-----------------
+    /**
+     * setCode
+     * Replaces the code, so the codes of the bytes encoded next follow straight on
+     * from those before in the new code.
+     * @param codes The code for each of the 256 byte values, right aligned
+     * @param lengths The length of each code in bits. Zero for bytes that do not occur.
+     */
+    public void setCode(int [] codes, byte [] lengths)
+    {
+        for (int i = 0; i < lengths.length; i++) //ensure every code fits the accumulator
+        {
+            if (lengths[i] > MAX_CODE_LENGTH)
+                throw new IllegalArgumentException("Huffman code for byte " + i + " exceeds " + MAX_CODE_LENGTH + " bits");
+        }
+
+        this.codes = codes;
+        this.lengths = lengths;
+    }
+
+    /**
+     * writeBits
+     * Appends raw bits to the output, most significant first, such as a count
+     * or a byte that has no code yet.
+     * @param value The bits, right aligned
+     * @param n The number of bits, 0 - 32
+     * @throws IOException if the output stream cannot be written to
+     */
+    public void writeBits(int value, int n) throws IOException
+    {
+        bitBuffer = (bitBuffer << n) | (value & ((1L << n) - 1));
+        bitCount = bitCount + n;
+        bitsWritten = bitsWritten + n;
+
+        while (bitCount >= 8)
+        {
+            bitCount = bitCount - 8;
+            buffer[bufferPos++] = (byte)(bitBuffer >>> bitCount);
+
+            if (bufferPos == buffer.length)
+            {
+                out.write(buffer, 0, bufferPos);
+                bufferPos = 0;
+            }
+        }
+    }
+
+    /**
+     * writeBytes
+     * Pads the bits written so far out to a whole byte, then writes bytes just
+     * as they are, uncoded, such as a block that coding would not shorten. A
+     * long run is written straight to the stream rather than copied through
+     * the buffer.
+     * @param data The array holding the bytes
+     * @param off The first location in the array to write
+     * @param len The number of bytes to write
+     * @throws IOException if the output stream cannot be written to
+     */
+    public void writeBytes(byte [] data, int off, int len) throws IOException
+    {
+        if (bitCount > 0) //pad the leftover bits out to a whole byte
+        {
+            buffer[bufferPos++] = (byte)(bitBuffer << (8 - bitCount));
+            bitCount = 0;
+        }
+
+        if (len > buffer.length - bufferPos)
+        {
+            out.write(buffer, 0, bufferPos);
+            bufferPos = 0;
+        }
+
+        if (len > buffer.length - bufferPos)
+        {
+            out.write(data, off, len);
+        }
+        else
+        {
+            System.arraycopy(data, off, buffer, bufferPos, len);
+            bufferPos = bufferPos + len;
+        }
+
+        bitsWritten = bitsWritten + 8L * len;
+    }
+
+    /**
+     * encode
+     * Encodes a block of bytes, appending their codes to the output.
+     * @param data The array holding the bytes to be encoded
+     * @param off The first location in the array to encode
+     * @param len The number of bytes to encode
+     * @throws IOException if the output stream cannot be written to
+     */
+    public void encode(byte [] data, int off, int len) throws IOException
+    {
+        //Copy the state into locals so the loop works on registers only
+        int [] codes = this.codes;
+        byte [] lengths = this.lengths;
+        byte [] buffer = this.buffer;
+        long acc = bitBuffer;
+        int count = bitCount;
+        int pos = bufferPos;
+        long total = 0;
+
+        int end = off + len;
+
+        for (int i = off; i < end; i++)
+        {
+            int b = data[i] & 0xFF; //the unsigned byte value
+            int n = lengths[b];
+
+            acc = (acc << n) | (codes[b] & 0xFFFFFFFFL); //shift the code in at the bottom
+            count = count + n;
+            total = total + n;
+
+            while (count >= 8) //drain every whole byte
+            {
+                count = count - 8;
+                buffer[pos++] = (byte)(acc >>> count);
+
+                if (pos == buffer.length) //flush the buffer when full
+                {
+                    out.write(buffer, 0, pos);
+                    pos = 0;
+                }
+            }
+        }
+
+        //...and store the state back
+        bitBuffer = acc;
+        bitCount = count;
+        bufferPos = pos;
+        bitsWritten = bitsWritten + total;
+    }
+
+    /**
+     * encode
+     * Encodes the remaining bytes of a buffer, appending their codes to the output.
+     * A direct or mapped buffer is copied out a block at a time with bulk gets,
+     * so the packing loop still works on an array. The buffer's position is
+     * advanced to its limit.
+     * @param data The buffer holding the bytes to be encoded
+     * @throws IOException if the output stream cannot be written to
+     */
+    public void encode(ByteBuffer data) throws IOException
+    {
+        if (data.hasArray()) //encode the backing array directly
+        {
+            encode(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+            return;
+        }
+
+        byte [] block = new byte [Math.min(BUFFER_SIZE, data.remaining())]; //the block of input being worked on
+
+        while (data.hasRemaining())
+        {
+            int n = Math.min(block.length, data.remaining());
+            data.get(block, 0, n);
+            encode(block, 0, n);
+        }
+    }
+
+    /**
+     * finish
+     * Pads the final partial byte with zeroes and flushes the buffer to the
+     * output stream. The stream itself is not closed.
+     * @throws IOException if the output stream cannot be written to
+     */
+    public void finish() throws IOException
+    {
+        if (bitCount > 0) //pad the leftover bits out to a whole byte
+        {
+            buffer[bufferPos++] = (byte)(bitBuffer << (8 - bitCount));
+            bitCount = 0;
+        }
+
+        out.write(buffer, 0, bufferPos);
+        bufferPos = 0;
+        out.flush();
+    }
+
+    /**
+     * encode
+     * Encodes bytes from one buffer into another, as many as the output has room
+     * for. Both positions are advanced past the bytes taken and put; bits that
+     * do not yet make a whole byte, or that found no room, are held until the
+     * next call. A heap buffer is worked on in place, a direct one through a
+     * fixed block, so nothing is allocated per call.
+     * @param src The bytes to be encoded
+     * @param dst The buffer the packed bytes are put in
+     * @return The number of bytes of src encoded; getProduced gives the number put in dst
+     * @throws IllegalStateException if the encoder writes to a stream
+     */
+    public int encode(ByteBuffer src, ByteBuffer dst)
+    {
+        checkBuffers();
+
+        int read = 0;
+        int written = 0;
+
+        do
+        {
+            byte [] in;
+            int inOff;
+            int inLen;
+            int start = src.position();
+
+            if (src.hasArray())
+            {
+                in = src.array();
+                inOff = src.arrayOffset() + start;
+                inLen = src.remaining();
+            }
+            else //copy out no more than the output could take codes for
+            {
+                in = block();
+                inOff = 0;
+                inLen = (int)Math.min(Math.min(src.remaining(), in.length), 8L * dst.remaining() + 8);
+                src.get(in, 0, inLen);
+            }
+
+            if (dst.hasArray())
+            {
+                pack(in, inOff, inLen, dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+                dst.position(dst.position() + produced);
+            }
+            else //pack into the buffer array, then put it across in bulk
+            {
+                pack(in, inOff, inLen, buffer(), 0, Math.min(dst.remaining(), buffer.length));
+                dst.put(buffer, 0, produced);
+            }
+
+            src.position(start + consumed);
+            read = read + consumed;
+            written = written + produced;
+        }
+        while ((consumed > 0 || produced > 0) && (src.hasRemaining() || bitCount >= 8) && dst.hasRemaining());
+
+        consumed = read;
+        produced = written;
+
+        return read;
+    }
+
+    /**
+     * finish
+     * Pads the final partial byte with zeroes and puts every byte still held in
+     * the buffer. If it has too little room, call again with more.
+     * @param dst The buffer the last packed bytes are put in
+     * @return true once every byte has been put
+     * @throws IllegalStateException if the encoder writes to a stream
+     */
+    public boolean finish(ByteBuffer dst)
+    {
+        checkBuffers();
+
+        if (bitCount % 8 != 0) //pad the leftover bits out to a whole byte
+        {
+            int pad = 8 - bitCount % 8;
+            bitBuffer = bitBuffer << pad;
+            bitCount = bitCount + pad;
+        }
+
+        int written = 0;
+
+        while (bitCount >= 8 && dst.hasRemaining())
+        {
+            bitCount = bitCount - 8;
+            dst.put((byte)(bitBuffer >>> bitCount));
+            written = written + 1;
+        }
+
+        consumed = 0;
+        produced = written;
+
+        return bitCount == 0;
+    }
+
+    /**
+     * encode
+     * Encodes everything that can be read from one channel and writes it to
+     * another, padded to a whole byte, through two buffers the caller owns.
+     * The channels must be blocking; neither is closed.
+     * @param input The channel the bytes to be encoded are read from
+     * @param output The channel the packed bytes are written to
+     * @param inBuffer The buffer input is read into, of at least 1 byte
+     * @param outBuffer The buffer output is packed into, of at least 1 byte
+     * @return The number of bytes written
+     * @throws IOException if either channel fails
+     * @throws IllegalArgumentException if either buffer has no room, so nothing could be moved through it
+     */
+    public long encode(ReadableByteChannel input, WritableByteChannel output, ByteBuffer inBuffer, ByteBuffer outBuffer) throws IOException
+    {
+        if (inBuffer.capacity() < 1 || outBuffer.capacity() < 1)
+            throw new IllegalArgumentException("The input and output buffers must each hold at least 1 byte");
+
+        boolean end = false;
+        boolean done = false;
+        long written = 0;
+
+        inBuffer.clear();
+        outBuffer.clear();
+
+        while (!done)
+        {
+            if (!end && input.read(inBuffer) == -1)
+                end = true;
+
+            inBuffer.flip();
+            encode(inBuffer, outBuffer);
+            inBuffer.compact();
+
+            if (end && inBuffer.position() == 0) //all taken, so the last byte can be padded
+                done = finish(outBuffer);
+
+            outBuffer.flip();
+
+            while (outBuffer.hasRemaining())
+                written = written + output.write(outBuffer);
+
+            outBuffer.clear();
+        }
+
+        return written;
+    }
+
+    /**
+     * getConsumed
+     * Returns the number of bytes of input taken by the last call with buffers.
+     */
+    public int getConsumed()
+    {
+        return consumed;
+    }
+
+    /**
+     * getProduced
+     * Returns the number of bytes of output put by the last call with buffers.
+     */
+    public int getProduced()
+    {
+        return produced;
+    }
+
+    /**
+     * getBitsWritten
+     * Returns the number of code bits encoded so far, not counting padding.
+     * @return The number of bits encoded
+     */
+    public long getBitsWritten()
+    {
+        return bitsWritten;
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * checkBuffers
+     * @throws IllegalStateException if the encoder was made with a stream, whose
+     * buffer the methods with buffers would overwrite
+     */
+    private void checkBuffers()
+    {
+        if (out != null)
+            throw new IllegalStateException("This encoder writes to a stream");
+    }
+
+    /**
+     * pack
+     * Encodes bytes from one array into another, stopping when the input is used
+     * up or the output is full and the accumulator cannot take the next code.
+     * Sets consumed and produced.
+     * @param in The array holding the bytes to be encoded
+     * @param inOff The first location to encode
+     * @param inLen The number of bytes there are to encode
+     * @param out The array the packed bytes are written to
+     * @param outOff The first location to write
+     * @param outLen The number of bytes there is room for
+     */
+    private void pack(byte [] in, int inOff, int inLen, byte [] out, int outOff, int outLen)
+    {
+        int [] codes = this.codes;
+        byte [] lengths = this.lengths;
+        long acc = bitBuffer;
+        int count = bitCount;
+        long total = 0;
+
+        int i = inOff;
+        int inEnd = inOff + inLen;
+        int pos = outOff;
+        int outEnd = outOff + outLen;
+
+        while (true)
+        {
+            while (count >= 8 && pos < outEnd) //drain every whole byte there is room for
+            {
+                count = count - 8;
+                out[pos++] = (byte)(acc >>> count);
+            }
+
+            if (i == inEnd)
+                break;
+
+            int b = in[i] & 0xFF;
+            int n = lengths[b];
+
+            if (count + n > 64) //the output is full and the accumulator cannot hold another code
+                break;
+
+            acc = (acc << n) | (codes[b] & 0xFFFFFFFFL);
+            count = count + n;
+            total = total + n;
+            i++;
+        }
+
+        bitBuffer = acc;
+        bitCount = count;
+        bitsWritten = bitsWritten + total;
+        consumed = i - inOff;
+        produced = pos - outOff;
+    }
+
+    /**
+     * block
+     * Returns the array bytes of a direct input buffer are copied into, creating
+     * it on first use.
+     */
+    private byte [] block()
+    {
+        if (block == null)
+            block = new byte [BUFFER_SIZE];
+
+        return block;
+    }
+
+    /**
+     * buffer
+     * Returns the array bytes are packed into for a direct output buffer,
+     * creating it on first use.
+     */
+    private byte [] buffer()
+    {
+        if (buffer == null)
+            buffer = new byte [BUFFER_SIZE];
+
+        return buffer;
+    }
+}
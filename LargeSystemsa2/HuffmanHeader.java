@@ -0,0 +1,642 @@
+import java.io.*;
+
+/**
+ * HuffmanHeader
+ *
+ * The header that makes a compressed file self describing. It is written in
+ * front of the bitstream and holds everything a separate process needs to
+ * restore the file.
+ *
+ * Layout:
+ *
+ * [magic 'HUFF' : 4 bytes] [version : 1 byte] [flags : 1 byte]
+ * [original length : 8 bytes] [block size : 4 bytes, only if BLOCKED]
+ * [code lengths : bit packed, padded to a byte]
+ *
+ * Version 1 files are a single bitstream. Version 2 adds the BLOCKED flag:
+ * the input was cut into blocks of block size bytes (the last may be
+ * shorter), each coded separately and padded to a whole byte, and the file
+ * ends with an index of the compressed size of every block as a 4 byte int.
+ * Version 3 adds the SPLIT flag: the input was cut where its make up
+ * changes, into blocks of varying length that each choose their own code,
+ * and the code lengths of the header are only the code blocks may share;
+ * see SplitEncoder. Version 3 also adds the STORED flag, only with BLOCKED:
+ * every block is the input as it is, not coded, so the index gives the
+ * length of each and the code lengths are all zero. Files are written with
+ * the lowest version that can describe them.
+ *
+ * The 256 code lengths are stored in the manner of deflate. Runs are folded
+ * into repeat symbols, and the resulting sequence is itself Huffman coded
+ * with a small code whose lengths are written 4 bits apiece:
+ *
+ *  0 - 32           a literal code length
+ *  REPEAT_PREVIOUS  the previous length 3 - 6 times (2 extra bits)
+ *  REPEAT_ZERO      a length of zero 3 - 10 times (3 extra bits)
+ *  REPEAT_ZERO_LONG a length of zero 11 - 138 times (7 extra bits)
+ *
+ * The lengths of the small code are written in LENGTH_ORDER, most likely
+ * first, and trailing zeroes are left off. A typical header is tens of bytes.
+ * The codes themselves are canonical; see CanonicalCode.
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class HuffmanHeader
+{
+    //---------------------------------------------Constants------------------
+
+    /*
+     * The first four bytes of every compressed file, 'HUFF'.
+     */
+    public static final int MAGIC = 0x48554646;
+
+    /*
+     * The newest version of the format this class reads and writes.
+     */
+    public static final int VERSION = 3;
+
+    /*
+     * Flag: the bitstream is made up of separately coded blocks followed by an
+     * index of their sizes. Version 2 and above.
+     */
+    public static final int BLOCKED = 1;
+
+    /*
+     * Flag: the bitstream is made up of blocks of varying length, each starting
+     * with the code it is coded with. Version 3 and above.
+     */
+    public static final int SPLIT = 2;
+
+    /*
+     * Flag: every block of a BLOCKED file is stored as it is rather than coded.
+     * Version 3 and above.
+     */
+    public static final int STORED = 4;
+
+    /*
+     * The number of byte values, and so of code lengths, in a header.
+     */
+    public static final int SYMBOLS = 256;
+
+    //The symbols used to code the code lengths
+    private static final int REPEAT_PREVIOUS = HuffmanEncoder.MAX_CODE_LENGTH + 1;
+    private static final int REPEAT_ZERO = REPEAT_PREVIOUS + 1;
+    private static final int REPEAT_ZERO_LONG = REPEAT_ZERO + 1;
+    private static final int LENGTH_SYMBOLS = REPEAT_ZERO_LONG + 1;
+
+    /*
+     * The order the lengths of the length code are written in. The repeats and
+     * the common lengths come first so the rarely used tail can be left off.
+     */
+    private static final int [] LENGTH_ORDER = lengthOrder();
+
+    /*
+     * The length code is built from at most SYMBOLS entries, so it can never
+     * be deeper than this. It is written in 4 bits.
+     */
+    private static final int MAX_LENGTH_CODE = 15;
+
+    //---------------------------------------------Variables----------------
+    private int version; //The version of the format
+    private int flags; //The BLOCKED, SPLIT and STORED flags, the other bits are reserved
+    private long length; //The length of the original file in bytes
+    private int blockSize; //The length of the original of each block, if BLOCKED
+    private byte [] codeLengths; //The length of the code of each byte value
+
+    //Bit packing state, only used while reading or writing the code lengths
+    private long bitBuffer;
+    private int bitCount;
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * Constructor
+     * Creates a header for a file of the given length, coded with the given lengths.
+     * @param length The length of the original file in bytes
+     * @param codeLengths The length of the code of each of the 256 byte values
+     */
+    public HuffmanHeader(long length, byte [] codeLengths)
+    {
+        this.version = 1;
+        this.flags = 0;
+        this.length = length;
+        this.codeLengths = codeLengths;
+    }
+
+    /**
+     * Constructor: blocks
+     * Creates a header for a file of the given length, cut into blocks of the given
+     * size and coded with the given lengths.
+     * @param length The length of the original file in bytes
+     * @param codeLengths The length of the code of each of the 256 byte values
+     * @param blockSize The length of the original of each block. The last may be shorter.
+     */
+    public HuffmanHeader(long length, byte [] codeLengths, int blockSize)
+    {
+        this(length, codeLengths);
+
+        if (blockSize < 1)
+            throw new IllegalArgumentException("The block size must be positive");
+
+        this.version = 2;
+        this.flags = BLOCKED;
+        this.blockSize = blockSize;
+    }
+
+    //-----------------------------------------Factory methods----------------
+    /**
+     * split
+     * Creates the header of a SPLIT file of the given length, whose blocks may
+     * share the code of the given lengths.
+     * @param length The length of the original file in bytes
+     * @param codeLengths The length of the shared code of each of the 256 byte values
+     * @return The header
+     */
+    public static HuffmanHeader split(long length, byte [] codeLengths)
+    {
+        HuffmanHeader header = new HuffmanHeader(length, codeLengths);
+        header.version = 3;
+        header.flags = SPLIT;
+
+        return header;
+    }
+
+    /**
+     * stored
+     * Creates the header of a BLOCKED file of the given length whose blocks are
+     * all stored as they are, for an input no code can shrink.
+     * @param length The length of the original file in bytes
+     * @param blockSize The length of each block. The last may be shorter.
+     * @return The header
+     */
+    public static HuffmanHeader stored(long length, int blockSize)
+    {
+        HuffmanHeader header = new HuffmanHeader(length, new byte [SYMBOLS], blockSize); //no code, as no block is coded
+        header.version = 3;
+        header.flags = BLOCKED | STORED;
+
+        return header;
+    }
+
+    //-----------------------------------------Public methods-----------------
+    /**
+     * getLength
+     * Returns the length of the original file in bytes.
+     * @return the original length
+     */
+    public long getLength()
+    {
+        return length;
+    }
+
+    /**
+     * getCodeLengths
+     * Returns the length of the code of each byte value.
+     * @return the code lengths, indexed by byte value
+     */
+    public byte [] getCodeLengths()
+    {
+        return codeLengths;
+    }
+
+    /**
+     * getCodes
+     * Returns the canonical code of each byte value, rebuilt from the code lengths.
+     * @return the codes, indexed by byte value
+     */
+    public int [] getCodes()
+    {
+        return CanonicalCode.assign(codeLengths);
+    }
+
+    /**
+     * isBlocked
+     * Returns true if the bitstream is made up of separately coded blocks.
+     */
+    public boolean isBlocked()
+    {
+        return (flags & BLOCKED) != 0;
+    }
+
+    /**
+     * isSplit
+     * Returns true if the bitstream is made up of blocks that choose their own code.
+     */
+    public boolean isSplit()
+    {
+        return (flags & SPLIT) != 0;
+    }
+
+    /**
+     * isStored
+     * Returns true if the blocks are stored as they are rather than coded.
+     */
+    public boolean isStored()
+    {
+        return (flags & STORED) != 0;
+    }
+
+    /**
+     * getBlockSize
+     * Returns the length of the original of each block, or 0 if not blocked.
+     */
+    public int getBlockSize()
+    {
+        return blockSize;
+    }
+
+    /**
+     * getBlockCount
+     * Returns the number of blocks, or 0 if not blocked.
+     */
+    public long getBlockCount()
+    {
+        if (! isBlocked())
+            return 0;
+
+        return (length + blockSize - 1) / blockSize;
+    }
+
+    /**
+     * getVersion
+     * Returns the version of the format the header was written in.
+     * @return the version
+     */
+    public int getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * write
+     * Writes the header to the given stream.
+     * @param out The stream to write to
+     * @throws IOException if the stream cannot be written to
+     */
+    public void write(OutputStream out) throws IOException
+    {
+        DataOutputStream data = new DataOutputStream(out);
+
+        data.writeInt(MAGIC);
+        data.writeByte(version);
+        data.writeByte(flags);
+        data.writeLong(length);
+
+        if (isBlocked())
+            data.writeInt(blockSize);
+
+        writeCodeLengths(data);
+    }
+
+    /**
+     * writeLengths
+     * Writes a set of code lengths alone, bit packed as in a header and padded to
+     * a whole byte, such as for the new code of a block of a SPLIT file.
+     * @param codeLengths The length of the code of each of the 256 byte values
+     * @param out The stream to write to
+     * @throws IOException if the stream cannot be written to
+     */
+    public static void writeLengths(byte [] codeLengths, OutputStream out) throws IOException
+    {
+        new HuffmanHeader(0, codeLengths).writeCodeLengths(new DataOutputStream(out));
+    }
+
+    /**
+     * readLengths
+     * Reads a set of code lengths written by writeLengths, a byte at a time and
+     * never past their end.
+     * @param in The stream to read from
+     * @return The code lengths, indexed by byte value
+     * @throws IOException if the stream cannot be read or the lengths are corrupt
+     */
+    public static byte [] readLengths(InputStream in) throws IOException
+    {
+        HuffmanHeader header = new HuffmanHeader(0, new byte [SYMBOLS]);
+        header.readCodeLengths(new DataInputStream(in));
+
+        return header.codeLengths;
+    }
+
+    /**
+     * read
+     * Reads a header from the given stream, leaving the stream positioned at the
+     * first byte of the bitstream. The stream is read a byte at a time and never
+     * past the end of the header.
+     * @param in The stream to read from
+     * @return The header read
+     * @throws IOException if the stream is not a compressed file, is of an unknown
+     * version, or the header is corrupt
+     */
+    public static HuffmanHeader read(InputStream in) throws IOException
+    {
+        DataInputStream data = new DataInputStream(in);
+
+        if (data.readInt() != MAGIC)
+            throw new IOException("Not a Huffman compressed file");
+
+        int version = data.readUnsignedByte();
+        if (version < 1 || version > VERSION)
+            throw new IOException("Unsupported Huffman file version " + version);
+
+        int flags = data.readUnsignedByte();
+        long length = data.readLong();
+
+        if (length < 0)
+            throw new IOException("Corrupt Huffman header: negative length");
+
+        if (version == 1 && flags != 0)
+            throw new IOException("Corrupt Huffman header: flags in a version 1 file");
+
+        if ((flags & SPLIT) != 0 && (version < 3 || (flags & BLOCKED) != 0))
+            throw new IOException("Corrupt Huffman header: a split file in version " + version + " or with blocks");
+
+        if ((flags & STORED) != 0 && (version < 3 || (flags & BLOCKED) == 0))
+            throw new IOException("Corrupt Huffman header: stored blocks in version " + version + " or without blocks");
+
+        HuffmanHeader header = new HuffmanHeader(length, new byte [SYMBOLS]);
+        header.version = version;
+        header.flags = flags;
+
+        if (header.isBlocked())
+        {
+            header.blockSize = data.readInt();
+
+            if (header.blockSize < 1)
+                throw new IOException("Corrupt Huffman header: block size " + header.blockSize);
+        }
+
+        header.readCodeLengths(data);
+
+        return header;
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * writeCodeLengths
+     * Writes the bit packed code lengths, padded to a whole byte.
+     * @param data The stream to write to
+     */
+    private void writeCodeLengths(DataOutputStream data) throws IOException
+    {
+        //Fold the lengths into runs. Each entry is {symbol, extra bits value, number of extra bits}
+        int [][] sequence = new int [SYMBOLS][];
+        int size = 0;
+        long [] freqs = new long [LENGTH_SYMBOLS];
+
+        int i = 0;
+        while (i < SYMBOLS)
+        {
+            int len = codeLengths[i];
+            int run = 1;
+            while (i + run < SYMBOLS && codeLengths[i + run] == len)
+                run++;
+            i = i + run;
+
+            if (len != 0) //a literal first, which can then be repeated
+            {
+                sequence[size++] = new int [] {len, 0, 0};
+                run--;
+            }
+
+            while (run >= 3)
+            {
+                int [] entry;
+
+                if (len != 0)
+                    entry = new int [] {REPEAT_PREVIOUS, Math.min(run, 6) - 3, 2};
+                else if (run >= 11)
+                    entry = new int [] {REPEAT_ZERO_LONG, Math.min(run, 138) - 11, 7};
+                else
+                    entry = new int [] {REPEAT_ZERO, run - 3, 3};
+
+                sequence[size++] = entry;
+                run = run - (entry[1] + (entry[0] == REPEAT_ZERO_LONG ? 11 : 3));
+            }
+
+            for (; run > 0; run--) //too short to be worth a repeat
+                sequence[size++] = new int [] {len, 0, 0};
+        }
+
+        for (int j = 0; j < size; j++)
+            freqs[sequence[j][0]]++;
+
+        byte [] lengthLengths = CanonicalCode.lengths(freqs);
+        int [] lengthCodes = CanonicalCode.assign(lengthLengths);
+
+        int count = LENGTH_SYMBOLS; //trim the unused tail of the length code
+        while (count > 1 && lengthLengths[LENGTH_ORDER[count - 1]] == 0)
+            count--;
+
+        bitBuffer = 0;
+        bitCount = 0;
+
+        writeBits(data, count - 1, 6);
+        for (int j = 0; j < count; j++)
+            writeBits(data, lengthLengths[LENGTH_ORDER[j]], 4);
+
+        for (int j = 0; j < size; j++)
+        {
+            int s = sequence[j][0];
+            writeBits(data, lengthCodes[s], lengthLengths[s]);
+            writeBits(data, sequence[j][1], sequence[j][2]);
+        }
+
+        if (bitCount > 0) //pad to a whole byte
+            writeBits(data, 0, 8 - bitCount);
+
+        data.flush();
+    }
+
+    /**
+     * readCodeLengths
+     * Reads the bit packed code lengths written by write.
+     * @param data The stream positioned at the code lengths
+     */
+    private void readCodeLengths(DataInputStream data) throws IOException
+    {
+        bitBuffer = 0;
+        bitCount = 0;
+
+        int count = (int)readBits(data, 6) + 1;
+        if (count > LENGTH_SYMBOLS)
+            throw new IOException("Corrupt Huffman header: too many length codes");
+
+        byte [] lengthLengths = new byte [LENGTH_SYMBOLS];
+        for (int j = 0; j < count; j++)
+            lengthLengths[LENGTH_ORDER[j]] = (byte)readBits(data, 4);
+
+        //Sort the length symbols by code, which for a canonical code is by length then value
+        int [] lengthCount = new int [MAX_LENGTH_CODE + 1];
+        int [] sorted = new int [LENGTH_SYMBOLS];
+        int used = 0;
+        for (int len = 1; len <= MAX_LENGTH_CODE; len++)
+        {
+            for (int s = 0; s < LENGTH_SYMBOLS; s++)
+            {
+                if (lengthLengths[s] == len)
+                {
+                    sorted[used++] = s;
+                    lengthCount[len]++;
+                }
+            }
+        }
+
+        try
+        {
+            CanonicalCode.assign(lengthLengths); //reject oversubscribed length codes
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IOException("Corrupt Huffman header: " + e.getMessage());
+        }
+
+        int i = 0;
+        while (i < SYMBOLS)
+        {
+            int s = readSymbol(data, lengthCount, sorted);
+            int repeat;
+            int value;
+
+            if (s < REPEAT_PREVIOUS) //a literal length
+            {
+                repeat = 1;
+                value = s;
+            }
+            else if (s == REPEAT_PREVIOUS)
+            {
+                if (i == 0)
+                    throw new IOException("Corrupt Huffman header: repeat with no previous length");
+
+                repeat = 3 + (int)readBits(data, 2);
+                value = codeLengths[i - 1];
+            }
+            else if (s == REPEAT_ZERO)
+            {
+                repeat = 3 + (int)readBits(data, 3);
+                value = 0;
+            }
+            else
+            {
+                repeat = 11 + (int)readBits(data, 7);
+                value = 0;
+            }
+
+            if (i + repeat > SYMBOLS)
+                throw new IOException("Corrupt Huffman header: too many code lengths");
+
+            for (int j = 0; j < repeat; j++)
+                codeLengths[i++] = (byte)value;
+        }
+
+        try
+        {
+            CanonicalCode.assign(codeLengths);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IOException("Corrupt Huffman header: " + e.getMessage());
+        }
+    }
+
+    /**
+     * readSymbol
+     * Decodes one symbol of a canonical code a bit at a time. Each length's codes
+     * follow on from the last code of the length before, so the code read so far
+     * only needs comparing against the range of codes of its own length.
+     * @param data The stream to read from
+     * @param lengthCount The number of codes of each length
+     * @param sorted The symbols in code order
+     * @return the symbol decoded
+     */
+    private int readSymbol(DataInputStream data, int [] lengthCount, int [] sorted) throws IOException
+    {
+        int code = 0; //the bits read so far
+        int first = 0; //the first code of the current length
+        int index = 0; //the position in sorted of the first code of the current length
+
+        for (int len = 1; len <= MAX_LENGTH_CODE; len++)
+        {
+            code = code | (int)readBits(data, 1);
+            int count = lengthCount[len];
+
+            if (code - first < count)
+                return sorted[index + code - first];
+
+            index = index + count;
+            first = (first + count) << 1;
+            code = code << 1;
+        }
+
+        throw new IOException("Corrupt Huffman header: invalid length code");
+    }
+
+    /**
+     * writeBits
+     * Writes the lowest count bits of value, most significant first.
+     */
+    private void writeBits(DataOutputStream data, long value, int count) throws IOException
+    {
+        for (int i = count - 1; i >= 0; i--)
+        {
+            bitBuffer = (bitBuffer << 1) | ((value >>> i) & 1);
+            bitCount++;
+
+            if (bitCount == 8)
+            {
+                data.writeByte((int)bitBuffer);
+                bitBuffer = 0;
+                bitCount = 0;
+            }
+        }
+    }
+
+    /**
+     * readBits
+     * Reads count bits, most significant first, a byte at a time from the stream.
+     */
+    private long readBits(DataInputStream data, int count) throws IOException
+    {
+        long value = 0;
+
+        for (int i = 0; i < count; i++)
+        {
+            if (bitCount == 0)
+            {
+                bitBuffer = data.readUnsignedByte();
+                bitCount = 8;
+            }
+
+            bitCount--;
+            value = (value << 1) | ((bitBuffer >>> bitCount) & 1);
+        }
+
+        return value;
+    }
+
+    /**
+     * lengthOrder
+     * Builds LENGTH_ORDER: the repeat symbols, then the lengths spreading out
+     * from 8, which is where the lengths of a byte oriented code cluster.
+     */
+    private static int [] lengthOrder()
+    {
+        int [] order = new int [LENGTH_SYMBOLS];
+        int n = 0;
+
+        order[n++] = REPEAT_PREVIOUS;
+        order[n++] = REPEAT_ZERO;
+        order[n++] = REPEAT_ZERO_LONG;
+        order[n++] = 0;
+        order[n++] = 8;
+
+        for (int d = 1; d <= 7; d++) //7, 9, 6, 10 ... 1, 15
+        {
+            order[n++] = 8 - d;
+            order[n++] = 8 + d;
+        }
+
+        for (int len = 16; len <= HuffmanEncoder.MAX_CODE_LENGTH; len++)
+            order[n++] = len;
+
+        return order;
+    }
+}
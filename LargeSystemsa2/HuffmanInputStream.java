@@ -0,0 +1,287 @@
+import java.io.*;
+
+/**
+ * HuffmanInputStream
+ *
+ * Restores the bytes compressed by HuffmanOutputStream, or by HuffmanTree, as
+ * they are read, so a compressed file need never be restored to disk first.
+ * The input is a run of compressed files, each a header and its bitstream:
+ * one for the output of HuffmanTree or of two pass mode, one per block for
+ * block mode. Version 2 files of independently coded blocks are read block
+ * by block, and their trailing index is skipped; stored blocks are copied.
+ * Version 3 split files are read through a SplitDecoder.
+ *
+ * The decoder reads ahead of the bitstream in large pieces, so at the end of
+ * each file the bytes it read too far are pushed back for the next header.
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class HuffmanInputStream extends FilterInputStream
+{
+    //---------------------------------------------Constants------------------
+
+    /*
+     * The most bytes of a block index skipped at once.
+     */
+    private static final int SKIP_SIZE = 1 << 12;
+
+    //---------------------------------------------Variables----------------
+    private PushbackInputStream pushback; //The compressed input, to which read ahead bytes are returned
+    private HuffmanHeader header; //The header of the file being read, null between files
+    private HuffmanDecoder decoder; //The decoder of the file being read
+    private SplitDecoder split; //The decoder of the split file being read, null for other files
+    private CodeCache cache; //The cache of decoder tables, null to build them for every file
+    private long fileLeft; //The bytes of the file still to be restored
+    private long blockLeft; //The bytes of the current block still to be restored
+    private byte [] single; //Holds the byte read by read()
+    private byte [] skipped; //Takes the pieces of a block index being skipped, null until first needed
+    private boolean closed; //Whether close has been called
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * Constructor
+     * Restores the bytes of the given compressed stream.
+     * @param in The compressed stream
+     */
+    public HuffmanInputStream(InputStream in)
+    {
+        this(in, null);
+    }
+
+    /**
+     * Constructor: cache
+     * Restores the bytes of the given compressed stream, taking the decoder
+     * tables of each file from the cache, as the blocks written by one
+     * HuffmanOutputStream often share a code.
+     * @param in The compressed stream
+     * @param c The cache of decoder tables, or null for none
+     */
+    public HuffmanInputStream(InputStream in, CodeCache c)
+    {
+        super(new PushbackInputStream(in, HuffmanDecoder.BUFFER_SIZE + 8));
+
+        pushback = (PushbackInputStream)this.in;
+        cache = c;
+        header = null;
+        single = new byte [1];
+        closed = false;
+    }
+
+    //-----------------------------------------Public methods-----------------
+    /**
+     * read
+     * Reads a single restored byte.
+     * @return The byte, 0 - 255, or -1 at the end of the input
+     * @throws IOException if the input is corrupt or cannot be read
+     */
+    public int read() throws IOException
+    {
+        if (read(single, 0, 1) == -1)
+            return -1;
+
+        return single[0] & 0xFF;
+    }
+
+    /**
+     * read
+     * Restores up to len bytes into part of an array, decoding straight into it.
+     * Fewer are read only at the end of a block or of the input.
+     * @return The number of bytes read, or -1 at the end of the input
+     * @throws IOException if the input is corrupt or cannot be read
+     */
+    public int read(byte [] b, int off, int len) throws IOException
+    {
+        if (closed)
+            throw new IOException("The stream is closed");
+
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+
+        if (len == 0)
+            return 0;
+
+        while (header == null || blockLeft == 0)
+        {
+            if (header != null)
+                nextBlock();
+            else if (!nextFile())
+                return -1;
+        }
+
+        int n = (int)Math.min(len, blockLeft);
+
+        if (split != null)
+            n = split.read(b, off, n); //a split file is one block here, whose own blocks may cut a read short
+        else if (header.isStored())
+            decoder.readBytes(b, off, n);
+        else
+            decoder.decode(b, off, n);
+
+        blockLeft = blockLeft - n;
+        fileLeft = fileLeft - n;
+
+        return n;
+    }
+
+    /**
+     * skip
+     * Skips restored bytes by decoding and discarding them.
+     * @return The number of bytes skipped, fewer only at the end of the input
+     * @throws IOException if the input is corrupt or cannot be read
+     */
+    public long skip(long n) throws IOException
+    {
+        byte [] discard = new byte [(int)Math.max(0, Math.min(n, HuffmanDecoder.BUFFER_SIZE))];
+        long skipped = 0;
+
+        while (skipped < n)
+        {
+            int r = read(discard, 0, (int)Math.min(discard.length, n - skipped));
+
+            if (r == -1)
+                break;
+
+            skipped = skipped + r;
+        }
+
+        return skipped;
+    }
+
+    /**
+     * available
+     * Returns 0: how many bytes can be restored without blocking is not known.
+     */
+    public int available() throws IOException
+    {
+        return 0;
+    }
+
+    /**
+     * markSupported
+     * Returns false; mark and reset are not supported.
+     */
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    /**
+     * close
+     * Closes the compressed stream.
+     * @throws IOException if it cannot be closed
+     */
+    public void close() throws IOException
+    {
+        closed = true;
+        decoder = null;
+        split = null;
+        in.close();
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * nextFile
+     * Reads the header of the next compressed file and starts decoding it.
+     * @return false if the input has ended
+     * @throws IOException if the header is corrupt or cannot be read
+     */
+    private boolean nextFile() throws IOException
+    {
+        int first = pushback.read();
+
+        if (first == -1)
+            return false;
+
+        pushback.unread(first);
+        header = HuffmanHeader.read(pushback);
+        fileLeft = header.getLength();
+        blockLeft = header.isBlocked() ? Math.min(fileLeft, header.getBlockSize()) : fileLeft;
+
+        if (fileLeft > 0 && header.isSplit())
+        {
+            split = new SplitDecoder(header);
+            split.begin(pushback);
+        }
+        else if (fileLeft > 0)
+        {
+            if (cache != null && !header.isStored()) //stored blocks have no code worth caching
+                decoder = cache.get(header).newDecoder();
+            else
+                decoder = new HuffmanDecoder(header.getCodes(), header.getCodeLengths());
+
+            decoder.begin(pushback);
+        }
+        else
+        {
+            endFile();
+        }
+
+        return true;
+    }
+
+    /**
+     * nextBlock
+     * Ends the block just restored and moves on to the next, or ends the file
+     * if it was the last.
+     * @throws IOException if the block was truncated
+     */
+    private void nextBlock() throws IOException
+    {
+        if (split != null) //the split decoder has already checked the end
+        {
+            pushback.unread(split.unread());
+            split = null;
+            endFile();
+            return;
+        }
+
+        decoder.endBlock();
+
+        if (fileLeft > 0)
+        {
+            blockLeft = Math.min(fileLeft, header.getBlockSize());
+        }
+        else
+        {
+            pushback.unread(decoder.unread());
+            decoder = null;
+            endFile();
+        }
+    }
+
+    /**
+     * endFile
+     * Skips the index at the end of a blocked file, a piece at a time, leaving
+     * the input at the next header.
+     * @throws IOException if the index is missing or the header gives a block
+     * count no index could hold
+     */
+    private void endFile() throws IOException
+    {
+        if (header.isBlocked())
+        {
+            long blocks = header.getBlockCount();
+
+            if (blocks < 0 || blocks > Integer.MAX_VALUE - 1)
+                throw new IOException("Corrupt Huffman data: " + blocks + " blocks is too many for a block index");
+
+            if (skipped == null)
+                skipped = new byte [SKIP_SIZE];
+
+            DataInputStream data = new DataInputStream(pushback);
+
+            try
+            {
+                for (long left = 4 * blocks; left > 0; left = left - SKIP_SIZE)
+                    data.readFully(skipped, 0, (int)Math.min(left, SKIP_SIZE));
+            }
+            catch (EOFException e)
+            {
+                throw new IOException("Corrupt Huffman data: the block index is missing");
+            }
+        }
+
+        header = null;
+    }
+}
@@ -0,0 +1,365 @@
+/**
+ * HuffmanOptions
+ * The settings a HuffmanTree is built with. The defaults reproduce the
+ * original single threaded behaviour, so a HuffmanTree built without options
+ * behaves exactly as before.
+ *
+ * With a block size or a split size, an input no code can shrink is stored
+ * as it is, in the format asked for: a blocked file of stored blocks, or a
+ * split file of stored blocks. A single stream is always coded, so version
+ * 1 readers can read it.
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class HuffmanOptions
+{
+    //---------------------------------------------Constants------------------
+
+    /*
+     * The default size of the ranges a file is split into for parallel counting.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+
+    /*
+     * A good size for the segments a split input is examined in.
+     */
+    public static final int DEFAULT_SPLIT_SIZE = 1 << 15;
+
+    /*
+     * The shortest limit on the length of a code: 8 bits is enough for all 256
+     * byte values, so every input can be coded within it.
+     */
+    public static final int MIN_CODE_LENGTH = 8;
+
+    //---------------------------------------------Variables----------------
+    private int threads; //The number of threads to count and encode with. 1 is sequential.
+    private int chunkSize; //The size of the range of the file each counting task takes
+    private int blockSize; //The size of the independently coded blocks, 0 for a single stream
+    private boolean mapped; //Whether the files are mapped into memory rather than streamed
+    private int maxCodeLength; //The longest code allowed, in bits
+    private boolean sortedBuild; //Whether the code lengths are found from the sorted counts rather than a tree
+    private boolean radixQueue; //Whether the tree is built with a RadixPriorityQueue rather than a heap
+    private CodeCache codeCache; //The cache codes are taken from, null to build every code
+    private int sampleBlocks; //The number of blocks of the input sampled for the counts, 0 to count every byte
+    private int sampleBlockSize; //The length of each block sampled
+    private boolean randomSample; //Whether the blocks sampled are at random offsets rather than evenly spaced
+    private int splitSize; //The length of the segments the input is examined in for a split, 0 not to split
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * Constructor
+     * Creates the default options: a single thread.
+     */
+    public HuffmanOptions()
+    {
+        threads = 1;
+        chunkSize = DEFAULT_CHUNK_SIZE;
+        blockSize = 0;
+        mapped = false;
+        maxCodeLength = HuffmanEncoder.MAX_CODE_LENGTH;
+        sortedBuild = false;
+        radixQueue = false;
+        codeCache = null;
+        sampleBlocks = 0;
+        sampleBlockSize = Histogram.BLOCK_SIZE;
+        randomSample = false;
+        splitSize = 0;
+    }
+
+    //-----------------------------------------Public methods-----------------
+    /**
+     * getThreads
+     * Returns the number of threads the frequency distribution is counted, and
+     * blocks encoded, with.
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * setThreads
+     * Sets the number of threads the frequency distribution is counted, and 
+     * blocks encoded, with. More than one splits the input file into chunks 
+     * counted in parallel.
+     * @param t The number of threads, at least 1
+     */
+    public void setThreads(int t)
+    {
+        if (t < 1)
+            throw new IllegalArgumentException("At least one thread is required");
+
+        threads = t;
+    }
+
+    /**
+     * getChunkSize
+     * Returns the size in bytes of the range each parallel counting task takes.
+     */
+    public int getChunkSize()
+    {
+        return chunkSize;
+    }
+
+    /**
+     * setChunkSize
+     * Sets the size in bytes of the range each parallel counting task takes.
+     * @param c The chunk size, at least 1
+     */
+    public void setChunkSize(int c)
+    {
+        if (c < 1)
+            throw new IllegalArgumentException("The chunk size must be positive");
+
+        chunkSize = c;
+    }
+
+    /**
+     * getBlockSize
+     * Returns the number of bytes of input coded in each block, or 0 if the
+     * input is coded as a single stream.
+     */
+    public int getBlockSize()
+    {
+        return blockSize;
+    }
+
+    /**
+     * setBlockSize
+     * Sets the number of bytes of input coded in each block. Blocks are coded
+     * independently, one per thread, and can be decoded in parallel too.
+     * 1 - 4 MB is a good size.
+     * @param b The block size, or 0 to code the input as a single stream
+     */
+    public void setBlockSize(int b)
+    {
+        if (b < 0 || b > BlockEncoder.MAX_BLOCK_SIZE)
+            throw new IllegalArgumentException("The block size must be between 0 and " + BlockEncoder.MAX_BLOCK_SIZE);
+
+        blockSize = b;
+    }
+
+    /**
+     * isMapped
+     * Returns whether the files are mapped into memory rather than streamed.
+     */
+    public boolean isMapped()
+    {
+        return mapped;
+    }
+
+    /**
+     * setMapped
+     * Sets whether the files are mapped into memory rather than streamed. The
+     * input is then counted and encoded in place, and the output created at its
+     * exact size and filled through a mapping too. With more than one thread
+     * the input is counted by parallel reads instead, and blocks are always
+     * encoded from reads of their own.
+     * @param m true to map the files
+     */
+    public void setMapped(boolean m)
+    {
+        mapped = m;
+    }
+
+    /**
+     * getMaxCodeLength
+     * Returns the longest code allowed, in bits.
+     */
+    public int getMaxCodeLength()
+    {
+        return maxCodeLength;
+    }
+
+    /**
+     * setMaxCodeLength
+     * Sets the longest code allowed. Shorter limits give a decoder smaller tables
+     * and a bound on the bits read per byte, for a little compression: the code
+     * is the best of those within the limit. A shorter limit than
+     * MIN_CODE_LENGTH could not code an input holding every byte value, so it
+     * is not allowed; 11 - 15 suit a single table lookup.
+     * @param m The limit in bits, 8 - 32
+     */
+    public void setMaxCodeLength(int m)
+    {
+        if (m < MIN_CODE_LENGTH || m > HuffmanEncoder.MAX_CODE_LENGTH)
+            throw new IllegalArgumentException("The longest code must be between " + MIN_CODE_LENGTH + " and " + HuffmanEncoder.MAX_CODE_LENGTH + " bits");
+
+        maxCodeLength = m;
+    }
+
+    /**
+     * isSortedBuild
+     * Returns whether the code lengths are found from the sorted counts rather
+     * than by building a tree.
+     */
+    public boolean isSortedBuild()
+    {
+        return sortedBuild;
+    }
+
+    /**
+     * setSortedBuild
+     * Sets whether the code lengths are found from the sorted counts, in linear
+     * time and with no node per symbol, rather than by joining nodes through a
+     * priority queue. The code is as short either way, but bytes of equal
+     * frequency may be given different lengths, so the output can differ.
+     * @param s true to skip building the tree
+     */
+    public void setSortedBuild(boolean s)
+    {
+        sortedBuild = s;
+    }
+
+    /**
+     * isRadixQueue
+     * Returns whether the tree is built with a RadixPriorityQueue rather than
+     * a heap.
+     */
+    public boolean isRadixQueue()
+    {
+        return radixQueue;
+    }
+
+    /**
+     * setRadixQueue
+     * Sets whether the tree is built with a RadixPriorityQueue, which makes no
+     * comparisons, rather than a LongPriorityQueueHeap. The weights taken from
+     * the queue never decrease while the tree is built, which is all a radix
+     * queue needs. The code is as short either way, but bytes of equal
+     * frequency may be given different lengths, so the output can differ.
+     * Has no effect when the tree is not built, with setSortedBuild.
+     * @param r true to use the radix queue
+     */
+    public void setRadixQueue(boolean r)
+    {
+        radixQueue = r;
+    }
+
+    /**
+     * getCodeCache
+     * Returns the cache codes are taken from, or null if every code is built.
+     */
+    public CodeCache getCodeCache()
+    {
+        return codeCache;
+    }
+
+    /**
+     * setCodeCache
+     * Sets a cache to take codes from. An input is then coded with the code of
+     * an earlier input whose bytes were spread alike, if there is one, rather
+     * than a code built for it, and a decoder reuses the tables of an earlier
+     * file with the same code. The cache's own settings decide how its codes
+     * are built, not these.
+     * @param c The cache, shared by any number of threads, or null for none
+     */
+    public void setCodeCache(CodeCache c)
+    {
+        codeCache = c;
+    }
+
+    /**
+     * getSampleBlocks
+     * Returns the number of blocks of the input sampled for the counts, or 0 if
+     * every byte is counted.
+     */
+    public int getSampleBlocks()
+    {
+        return sampleBlocks;
+    }
+
+    /**
+     * setSampleBlocks
+     * Sets the number of blocks of the input sampled to estimate the counts,
+     * rather than reading the whole input twice, once to count it and once to
+     * encode it. The code is then built for the estimate, so it is a little
+     * longer than the best; HuffmanTree.getSampleLoss reports by how much.
+     * The length of the output is not known beforehand, so it is written
+     * through a stream even with setMapped.
+     * @param s The number of blocks, or 0 to count every byte
+     */
+    public void setSampleBlocks(int s)
+    {
+        if (s < 0)
+            throw new IllegalArgumentException("The number of blocks sampled cannot be negative");
+
+        sampleBlocks = s;
+    }
+
+    /**
+     * getSampleBlockSize
+     * Returns the length of each block sampled.
+     */
+    public int getSampleBlockSize()
+    {
+        return sampleBlockSize;
+    }
+
+    /**
+     * setSampleBlockSize
+     * Sets the length of each block sampled. Longer blocks are read faster
+     * for each byte, but cover fewer parts of the input for the same total.
+     * @param s The length in bytes, at least 1
+     */
+    public void setSampleBlockSize(int s)
+    {
+        if (s < 1)
+            throw new IllegalArgumentException("A block sampled must hold at least one byte");
+
+        sampleBlockSize = s;
+    }
+
+    /**
+     * isRandomSample
+     * Returns whether the blocks sampled are at random offsets rather than
+     * evenly spaced.
+     */
+    public boolean isRandomSample()
+    {
+        return randomSample;
+    }
+
+    /**
+     * setRandomSample
+     * Sets whether the blocks sampled are at random offsets, which no pattern
+     * in the layout of the input can line up with, rather than evenly spaced.
+     * The offsets are the same every time for the same length of input.
+     * @param r true for random offsets
+     */
+    public void setRandomSample(boolean r)
+    {
+        randomSample = r;
+    }
+
+    /**
+     * getSplitSize
+     * Returns the length of the segments the input is examined in to split it
+     * where its make up changes, or 0 if it is not split.
+     */
+    public int getSplitSize()
+    {
+        return splitSize;
+    }
+
+    /**
+     * setSplitSize
+     * Sets the length of the segments the input is examined in to split it
+     * into blocks where its make up changes, each coded with the cheapest of
+     * the code of the block before, the code of the whole file or a code of
+     * its own, or stored as it is if no code makes it shorter; see
+     * SplitEncoder. Shorter segments find the changes more closely but take
+     * longer to examine; DEFAULT_SPLIT_SIZE is a good size.
+     * The output is written through a stream even with setMapped. Ignored if
+     * the block size is above 0.
+     * @param s The length in bytes, or 0 not to split the input
+     */
+    public void setSplitSize(int s)
+    {
+        if (s < 0 || s > SplitEncoder.MAX_BLOCK_SIZE)
+            throw new IllegalArgumentException("The split size must be between 0 and " + SplitEncoder.MAX_BLOCK_SIZE);
+
+        splitSize = s;
+    }
+}
@@ -0,0 +1,358 @@
+import java.io.*;
+
+/**
+ * HuffmanOutputStream
+ *
+ * Compresses whatever is written to it, so data made in the process can be
+ * compressed without first being written to a file. It works in one of two
+ * ways, chosen by the block size of the options:
+ *
+ * Blocks (a block size above 0): the bytes are gathered into a buffer of the
+ * block size. Each time it fills, or the stream is flushed, its bytes are
+ * counted, given a code of their own and written out as a complete version 1
+ * compressed file. The output is a run of such files, one per block:
+ *
+ * [header][bitstream][header][bitstream]...
+ *
+ * Two passes (a block size of 0): every byte is kept until the stream is
+ * closed and then coded as one, in exactly the format HuffmanTree writes.
+ * Up to SPILL_SIZE bytes are kept in memory, and any beyond are spilled to a
+ * temporary file, so memory stays bounded however much is written.
+ *
+ * HuffmanInputStream reads either back. Only the blocks are compressed as
+ * they are written; the two pass output is all written at close.
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class HuffmanOutputStream extends FilterOutputStream
+{
+    //---------------------------------------------Constants------------------
+
+    /*
+     * The block size used unless options are given.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    /*
+     * The most bytes kept in memory in two pass mode before they spill to disk.
+     */
+    public static final int SPILL_SIZE = 8 << 20;
+
+    /*
+     * The size the buffer starts at; it grows as needed up to its limit.
+     */
+    private static final int START_SIZE = 1 << 12;
+
+    //---------------------------------------------Variables----------------
+    private HuffmanOptions options; //The block size and the settings each code is built with
+    private byte [] buffer; //The bytes written and not yet coded or spilled
+    private int count; //The number of bytes in the buffer
+    private int limit; //The most bytes the buffer may hold: the block size, or SPILL_SIZE
+    private long [] counts; //In two pass mode, the frequency of each byte spilled so far
+    private File spill; //In two pass mode, the file bytes spill to, null until they do
+    private OutputStream spillOut; //The open spill file
+    private long spilled; //The number of bytes in the spill file
+    private boolean closed; //Whether close has been called
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * Constructor
+     * Compresses to the given stream in blocks of DEFAULT_BLOCK_SIZE.
+     * @param out The stream the compressed bytes are written to
+     */
+    public HuffmanOutputStream(OutputStream out)
+    {
+        this(out, blockOptions(DEFAULT_BLOCK_SIZE));
+    }
+
+    /**
+     * Constructor: options
+     * Compresses to the given stream in blocks of the options' block size, or in
+     * two passes if it is 0. The codes are built with the other options, such as
+     * the longest code.
+     * @param out The stream the compressed bytes are written to
+     * @param opts The settings
+     */
+    public HuffmanOutputStream(OutputStream out, HuffmanOptions opts)
+    {
+        super(out);
+
+        options = opts;
+        limit = isBlocked() ? opts.getBlockSize() : SPILL_SIZE;
+        buffer = new byte [Math.min(limit, START_SIZE)];
+        count = 0;
+        counts = new long [Histogram.SYMBOLS];
+        spill = null;
+        spilled = 0;
+        closed = false;
+    }
+
+    //-----------------------------------------Public methods-----------------
+    /**
+     * write
+     * Writes a single byte.
+     * @throws IOException if the stream is closed or a block cannot be written
+     */
+    public void write(int b) throws IOException
+    {
+        checkOpen();
+
+        if (count == buffer.length)
+            room();
+
+        buffer[count++] = (byte)b;
+    }
+
+    /**
+     * write
+     * Copies len bytes of the array into the buffer, coding or spilling it each
+     * time it fills.
+     * @throws IOException if the stream is closed or a block cannot be written
+     */
+    public void write(byte [] b, int off, int len) throws IOException
+    {
+        checkOpen();
+
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+
+        while (len > 0)
+        {
+            if (count == buffer.length)
+                room();
+
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count = count + n;
+            off = off + n;
+            len = len - n;
+        }
+    }
+
+    /**
+     * flush
+     * In block mode, writes the bytes buffered so far as a block, however short,
+     * so that everything written can be read back; then flushes the stream
+     * below. In two pass mode nothing can be written before close, so only the
+     * stream below is flushed.
+     * @throws IOException if the stream is closed or the block cannot be written
+     */
+    public void flush() throws IOException
+    {
+        checkOpen();
+
+        if (isBlocked() && count > 0)
+            writeBlock();
+
+        out.flush();
+    }
+
+    /**
+     * close
+     * Writes out whatever is left, the whole input in two pass mode, and closes
+     * the stream below. Closing twice does nothing.
+     * @throws IOException if the output cannot be written
+     */
+    public void close() throws IOException
+    {
+        if (closed)
+            return;
+
+        try
+        {
+            if (isBlocked())
+            {
+                if (count > 0)
+                    writeBlock();
+            }
+            else
+            {
+                writeAll();
+            }
+
+            out.flush();
+        }
+        finally
+        {
+            closed = true;
+            buffer = null;
+            deleteSpill();
+            out.close();
+        }
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * isBlocked
+     * Returns true in block mode, false in two pass mode.
+     */
+    private boolean isBlocked()
+    {
+        return options.getBlockSize() > 0;
+    }
+
+    /**
+     * checkOpen
+     * @throws IOException if the stream has been closed
+     */
+    private void checkOpen() throws IOException
+    {
+        if (closed)
+            throw new IOException("The stream is closed");
+    }
+
+    /**
+     * room
+     * Makes room in the full buffer: it doubles until it reaches its limit,
+     * then is written as a block or spilled to disk.
+     * @throws IOException if the stream is closed or the buffer cannot be written
+     */
+    private void room() throws IOException
+    {
+        checkOpen();
+
+        if (buffer.length < limit)
+        {
+            buffer = java.util.Arrays.copyOf(buffer, (int)Math.min(2L * buffer.length, limit));
+        }
+        else if (isBlocked())
+        {
+            writeBlock();
+        }
+        else
+        {
+            spill();
+        }
+    }
+
+    /**
+     * writeBlock
+     * Codes the buffer with a code of its own and writes it out, header first.
+     * @throws IOException if the output cannot be written
+     */
+    private void writeBlock() throws IOException
+    {
+        HuffmanTree tree = new HuffmanTree(Histogram.of(buffer, 0, count), options);
+        byte [] lengths = tree.getCodeLengths();
+
+        new HuffmanHeader(count, lengths).write(out);
+
+        HuffmanEncoder encoder = new HuffmanEncoder(tree.getCodes(), lengths, out, Math.min(count + 8, HuffmanEncoder.BUFFER_SIZE));
+        encoder.encode(buffer, 0, count);
+        encoder.finish();
+
+        count = 0;
+    }
+
+    /**
+     * spill
+     * Counts the buffer and appends it to the spill file, creating the file the
+     * first time.
+     * @throws IOException if the spill file cannot be written
+     */
+    private void spill() throws IOException
+    {
+        addCounts();
+
+        if (spill == null)
+        {
+            spill = File.createTempFile("huffman", ".spill");
+            spill.deleteOnExit();
+            spillOut = new FileOutputStream(spill);
+        }
+
+        spillOut.write(buffer, 0, count);
+        spilled = spilled + count;
+        count = 0;
+    }
+
+    /**
+     * addCounts
+     * Adds the frequencies of the bytes in the buffer to the running counts.
+     */
+    private void addCounts()
+    {
+        Histogram h = Histogram.of(buffer, 0, count);
+
+        for (int b = 0; b < Histogram.SYMBOLS; b++)
+            counts[b] = counts[b] + h.getCount(b);
+    }
+
+    /**
+     * writeAll
+     * The second pass: builds the code for every byte written and codes the
+     * spilled bytes, then those still in memory, as one stream.
+     * @throws IOException if the spill file cannot be read or the output written
+     */
+    private void writeAll() throws IOException
+    {
+        addCounts();
+
+        HuffmanTree tree = new HuffmanTree(new Histogram(counts), options);
+        byte [] lengths = tree.getCodeLengths();
+
+        new HuffmanHeader(spilled + count, lengths).write(out);
+
+        HuffmanEncoder encoder = new HuffmanEncoder(tree.getCodes(), lengths, out);
+
+        if (spill != null)
+        {
+            spillOut.close();
+            spillOut = null;
+
+            InputStream in = new FileInputStream(spill);
+
+            try
+            {
+                byte [] chunk = new byte [HuffmanEncoder.BUFFER_SIZE];
+
+                for (int n = in.read(chunk); n != -1; n = in.read(chunk))
+                    encoder.encode(chunk, 0, n);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+
+        encoder.encode(buffer, 0, count);
+        encoder.finish();
+        count = 0;
+    }
+
+    /**
+     * deleteSpill
+     * Closes and deletes the spill file, if there is one.
+     */
+    private void deleteSpill() throws IOException
+    {
+        if (spill == null)
+            return;
+
+        try
+        {
+            if (spillOut != null)
+                spillOut.close();
+        }
+        finally
+        {
+            spillOut = null;
+            spill.delete();
+            spill = null;
+        }
+    }
+
+    /**
+     * blockOptions
+     * Returns the default options with the given block size.
+     * @param blockSize The block size
+     */
+    private static HuffmanOptions blockOptions(int blockSize)
+    {
+        HuffmanOptions opts = new HuffmanOptions();
+        opts.setBlockSize(blockSize);
+
+        return opts;
+    }
+}
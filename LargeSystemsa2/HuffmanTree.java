@@ -19,11 +19,16 @@ import java.io.*;
 public class HuffmanTree
 {
     private HuffNode root; //the root of the Huffman Tree.
-    private PriorityQueue pq; //the priority Queue used in construction; 
+    private Histogram histogram; //the frequency of each byte in the input, or its estimate when sampled
+    private Histogram exact; //when sampled, the exact frequencies counted while encoding, else null
+    private HuffmanOptions options; //the settings the tree is built with
+    private LongPriorityQueue<HuffNode> pq; //the priority Queue used in construction; 
     private File inputFile; //The file being read in
     private File outputFile; //The file being written to
-    private Map huffmanMap; //the huffman map of the file that has going to be transcoded. 
-    private Vector mappingList; //The mappings in an alternate form for ease of use. 
+    private int [] codes; //The canonical huffman code of each byte value, right aligned. 
+    private byte [] codeLengths; //The length in bits of the huffman code of each byte value
+    private long unlimitedBits; //The length of the encoding with the unlimited code lengths of the tree
+    private MappedInputStream mapping; //When mapped, the mapping the input was counted through, kept to encode it from
     
     private final boolean USEBYTEVIEWER = false; //The option to use the graphic byte viewer to display the contents of the file if required
     
@@ -36,22 +41,90 @@ public class HuffmanTree
      * 
      */
     public HuffmanTree (File input, File output) throws IOException
+    {
+        this(input, output, new HuffmanOptions());
+    }
+    
+    /**
+     * Constructor: files and options
+     * Uses input and output files to construct the huffman tree, with the given settings. 
+     * @param input The input file to be compressed
+     * @param output The output file to be written to in Huffman encoding
+     * @param opts The settings, such as the number of threads to count the input with
+     * @throws IOException
+     */
+    public HuffmanTree (File input, File output, HuffmanOptions opts) throws IOException
     {
         inputFile = input;// Set input files
         outputFile = output;
+        options = opts;
         
         try
         {
-            InputStream in = new FileInputStream(inputFile);
+            if(options.getSampleBlocks() > 0) //estimate the counts from a sample, so the file is read once in full
+            {
+                histogram = Histogram.sample(inputFile, options.getSampleBlocks(), options.getSampleBlockSize(), options.isRandomSample());
+                buildTree(histogram);
+            }
+            else if(options.getThreads() > 1) //count the file in parallel chunks
+            {
+                histogram = Histogram.of(inputFile, options.getThreads(), options.getChunkSize());
+                buildTree(histogram);
+            }
+            else if(options.isMapped()) //count the mapped file in place, and keep the mapping to encode from
+            {
+                mapping = new MappedInputStream(inputFile);
+                histogram = Histogram.of(mapping);
+                
+                buildTree(histogram);
+            }
+            else
+            {
+                InputStream in = new FileInputStream(inputFile);
+                
+                init(in); //run the initialising constructor
+            }
+            
+            codeTable(); //Create the mapping of byte-codes to the huffman encoding
             
-            init(in); //run the initialising constructor
+            fileOutput(); //write the contents of the file out
         }
-        catch (IOException e)
+        catch (IOException | RuntimeException e)
         {
+            closeMapping(e);
             throw e;
         }
         
-        fileOutput(); //write the contents of the file out
+        closeMapping(null); //the input is mapped for the histogram and the encoding, then let go
+    }
+    
+    /**
+     * Constructor: histogram
+     * Builds the tree and code table for a frequency distribution without touching 
+     * any file, so they can be inspected, timed or used apart from the file I/O. 
+     * There is no file to write, so fileOutput must not be called. 
+     * @param h The frequency distribution to build the tree from
+     */
+    public HuffmanTree (Histogram h)
+    {
+        this(h, new HuffmanOptions());
+    }
+    
+    /**
+     * Constructor: histogram and options
+     * Builds the tree and code table for a frequency distribution with the given 
+     * settings, such as the longest code allowed, without touching any file. 
+     * There is no file to write, so fileOutput must not be called. 
+     * @param h The frequency distribution to build the tree from
+     * @param opts The settings
+     */
+    public HuffmanTree (Histogram h, HuffmanOptions opts)
+    {
+        options = opts;
+        histogram = h;
+        
+        buildTree(histogram);
+        codeTable();
     }
     
     /**
@@ -64,44 +137,24 @@ public class HuffmanTree
      */
     public HuffmanTree (String input, String output) throws IOException
     {
-        try //to create a inputstream from the string. 
-        {
-            inputFile = new File(input);
-            InputStream in = new FileInputStream(inputFile);
-            init(in); //run the initialising constructor
-            
-            outputFile = new File(output);
-        }
-        catch (IOException e)
-        {
-            throw e;
-        }
-        
-        huffmanMap = huffmanCodingMap(); //Create the mapping of byte-codes to the huffman encoding
-        
-        fileOutput(); //write the contents of the file out
+        this(new File(input), new File(output));
     }
     
     /**
      * printMappings
-     * Prints the current mappings to screen. 
-     * @param v The input vector which will be printed out. Intended to be the Huffman encoding and 
-     * associated byte value. 
+     * Prints the current mappings, the huffman code of each byte value that occurs. 
      */
-    private String printMappings(Vector v)
+    private String printMappings()
     {
-        String output = "";
-        
-        output = "Huffman Tree mappings: \nInteger\tbyte\thuffman code";
+        StringBuffer output = new StringBuffer("Huffman Tree mappings: \nInteger\tbyte\thuffman code");
         
-        for(int i = 0; i<v.size(); i++)
+        for(int i = 0; i < codeLengths.length; i++)
         {   
-            String [] val = (String [])v.get(i);
-            
-            output = output + ("\n" + val[0] + "\t" + (char)Integer.parseInt(val[0]) + "\t" + val[1]);
+            if(codeLengths[i] > 0)
+                output.append("\n" + i + "\t" + (char)i + "\t" + codeString(i));
         }   
         
-        return output;
+        return output.toString();
     }
     
     /**
@@ -110,42 +163,130 @@ public class HuffmanTree
      */
     public String toString()
     {
-        return printMappings(mappingList);
+        if(exact != null)
+            return printMappings() + "\n" + printLimitCost() + "\n" + printSampleLoss();
+        
+        return printMappings() + "\n" + printLimitCost();
+    }
+    
+    /**
+     * printSampleLoss
+     * Reports how much longer the encoding was for building the code from a sample. 
+     */
+    public String printSampleLoss()
+    {
+        return String.format("Sampled counts: %.4f%% larger than with exact counts", 100 * getSampleLoss());
+    }
+    
+    /**
+     * getSampleLoss
+     * Returns how much longer the encoding is for building the code from the counts 
+     * of a sample rather than of every byte, as a fraction of the encoding with the 
+     * best code for the exact counts, within the same limit on code lengths. The 
+     * exact counts are taken as the file is encoded, so it is only known once the 
+     * file is written. 0 if the counts were not sampled. 
+     */
+    public double getSampleLoss()
+    {
+        if(exact == null)
+            return 0;
+        
+        HuffmanOptions best = new HuffmanOptions(); 
+        best.setMaxCodeLength(options.getMaxCodeLength());
+        
+        byte [] bestLengths = new HuffmanTree(exact, best).getCodeLengths();
+        long sampledBits = 0;
+        long bestBits = 0;
+        
+        for(int b = 0; b < Histogram.SYMBOLS; b++)
+        {
+            sampledBits = sampledBits + exact.getCount(b) * codeLengths[b];
+            bestBits = bestBits + exact.getCount(b) * bestLengths[b];
+        }
+        
+        if(bestBits == 0)
+            return 0;
+        
+        return (double)(sampledBits - bestBits) / bestBits;
+    }
+    
+    /**
+     * printLimitCost
+     * Reports the longest code, and what limiting the code lengths costs in compression. 
+     */
+    public String printLimitCost()
+    {
+        int longest = 0;
+        
+        for(int b = 0; b < codeLengths.length; b++)
+            longest = Math.max(longest, codeLengths[b]);
+        
+        return String.format("Longest code: %d bits (limit %d), %.4f%% larger than with no limit", 
+                             longest, options.getMaxCodeLength(), 100 * getLimitCost());
+    }
+    
+    /**
+     * getLimitCost
+     * Returns how much longer the encoding is for limiting the code lengths, as a fraction 
+     * of the encoding with the unlimited lengths of the tree. 0 if the limit was not reached. 
+     * With a code cache the code may have been built for another input much like this 
+     * one, and what that costs is counted too. 
+     */
+    public double getLimitCost()
+    {
+        if(unlimitedBits == 0)
+            return 0;
+        
+        return (double)(encodedBits() - unlimitedBits) / unlimitedBits;
     }
     
     /**
      * init
      * The actual constructing method that is called by either of the constructors. 
      * Performs the operations to create the HuffmanTree. 
-     * @param stream The file input stream with which to encode
+     * @param stream The file input stream with which to encode. It is closed once read. 
      */
     private void init (InputStream stream) throws IOException
     {
-        //get a frequency distribution and place in into a queue. 
+        //get a frequency distribution
         try
         {
-            pq = createQueue(getFreqDistList(freqDist(stream))); //create a priority queue
+            histogram = freqDist(stream);
         }
-        catch(IOException e)
+        finally
         {
-            throw e;
+            stream.close();
         }
         
+        buildTree(histogram);
+    }
+    
+    /**
+     * buildTree
+     * Places the frequency distribution into a queue and repeatedly joins the two
+     * least frequent nodes until only the root of the tree remains. 
+     * @param h The frequency distribution of the input
+     */
+    private void buildTree (Histogram h)
+    {
+        if(options.isSortedBuild() || options.getCodeCache() != null) //no tree, codeTable takes the lengths from elsewhere
+            return;
+        
+        pq = createQueue(h); //create a priority queue
+        
         HuffNode last = null; //grab the last node generated to as to catch the root 
         
         try{ //while there is data in the queue, keep on creating nodes in the huffman tree
             while(!pq.isEmpty())
             {
-                HuffNode left = (HuffNode)pq.front();
-                pq.dequeue();
+                HuffNode left = pq.poll();
                 if(!pq.isEmpty()) //if there is another node left in the queue, branch:
                     {
-                        HuffNode right = (HuffNode)pq.front();
-                        pq.dequeue();      
+                        HuffNode right = pq.front();
                         
                         last = branch(left, right);
                         
-                        pq.enqueue(last.getFreq(),last); //put the new branch back in
+                        pq.replaceTop(last.getFreq(),last); //the new branch takes the right's place, in one pass down
                     }
                 else //The number is odd, therefore the last item will be the root. 
                 {
@@ -166,8 +307,10 @@ public class HuffmanTree
      * fileOutput - local
      * The fileOutput being performed on the local variables. Essentially just directs
      * the writeout methods to the specified local variables. 
+     * @throws IOException if a blocked, split or mapped output cannot be written; no 
+     * part of it is left behind
      */
-    public void fileOutput()
+    public void fileOutput() throws IOException
     {
         fileOutput(inputFile, outputFile);
     }
@@ -175,31 +318,65 @@ public class HuffmanTree
     /**
      * fileOutput
      * Takes the output file and transcodes the input file with the help of the huffman coding.
-     * @param input the file being read in to be transcoded to String
+     * A failure writing a single stream is only printed, as it always has been; in the 
+     * other modes it is passed on, and the part of the output written is deleted. 
+     * @param input the file being read in to be transcoded
      * @parm output the file being written to
      */
-    private void fileOutput(File input, File output)
+    private void fileOutput(File input, File output) throws IOException
     {
-        String huffmanCoding = null;//declare a string to use for conversion and eventually therefore output.
-        FileOutputStream fileOut = null;
-        
-        try
+        if(options.getBlockSize() > 0 || options.getSplitSize() > 0 || (options.isMapped() && !isSampled()))
         {
-            huffmanCoding = transcode(input, huffmanMap); //Get the output stream as a string of bytes
-            fileOut = new FileOutputStream(output);
+            boolean written = false;
             
-            if(huffmanCoding != null)
+            try
             {
-                byte [] fileBytes = stringToBytes(huffmanCoding);
+                if(options.getBlockSize() > 0) //independent blocks, encoded in parallel
+                    blockOutput(input, output);
+                else if(options.getSplitSize() > 0 && isIncompressible()) //no code can shrink the input, so copy it as it is
+                    storedOutput(input, output);
+                else if(options.getSplitSize() > 0) //blocks cut where the input changes, each with the cheapest code
+                    splitOutput(input, output);
+                else //map the input, and an output of exactly the compressed size
+                    mappedOutput(input, output);
                 
-                fileOut.write(fileBytes);
-                fileOut.close();
+                written = true;
+            }
+            finally
+            {
+                if(!written) //leave no part of a file behind
+                    output.delete();
             }
         }
-        catch(IOException e)
+        else
         {
-            e.printStackTrace();
-        }   
+            OutputStream fileOut = null;
+            
+            try
+            {
+                fileOut = new BufferedOutputStream(new FileOutputStream(output));
+                
+                new HuffmanHeader(originalLength(), codeLengths).write(fileOut); //describe the file first...
+                
+                transcode(input, fileOut); //...then stream the encoding of the input straight out to the file
+            }
+            catch(IOException e)
+            {
+                e.printStackTrace();
+            }   
+            finally
+            {
+                try
+                {
+                    if(fileOut != null)
+                        fileOut.close();
+                }
+                catch(IOException e)
+                {
+                    e.printStackTrace();
+                }
+            }
+        }
         
         if(USEBYTEVIEWER)
         {
@@ -208,126 +385,470 @@ public class HuffmanTree
     }
     
     /**
-     * stringToBytes
-     * Transforms the string to a byte array suitable for writing to a file. The algorithm itself is relatively simple,
-     * but relies upon Strings - particularly in the transcode method. It has not been sufficiently optimised to
-     * achieve much in the way of performance. 
+     * blockOutput
+     * Writes the input as independent blocks, encoded in parallel, or copied as they 
+     * are if no code can shrink the input. 
+     * @param input the file being read in to be transcoded
+     * @param output the file being written to
+     */
+    private void blockOutput(File input, File output) throws IOException
+    {
+        try(OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(output)))
+        {
+            boolean stored = isIncompressible(); //no code can shrink the input, so its blocks are copied as they are
+            
+            if(stored)
+                HuffmanHeader.stored(originalLength(), options.getBlockSize()).write(fileOut);
+            else
+                new HuffmanHeader(originalLength(), codeLengths, options.getBlockSize()).write(fileOut);
+            
+            BlockEncoder encoder = new BlockEncoder(codes, codeLengths, options.getBlockSize(), options.getThreads());
+            long [] counts = isSampled() ? new long [Histogram.SYMBOLS] : null; //measure the sample against every byte
+            
+            encoder.setCounts(counts);
+            encoder.setStored(stored);
+            encoder.encode(input, fileOut);
+            
+            if(counts != null)
+                exact = new Histogram(counts);
+        }
+    }
+    
+    /**
+     * storedOutput
+     * Writes the input as a split file of stored blocks, copied straight from the 
+     * input file to the output. 
+     * @param input the file being read in to be copied
+     * @param output the file being written to
+     */
+    private void storedOutput(File input, File output) throws IOException
+    {
+        try(FileOutputStream fileOut = new FileOutputStream(output))
+        {
+            ByteArrayOutputStream header = new ByteArrayOutputStream(); //written whole, straight to the file
+            HuffmanHeader.split(originalLength(), new byte [Histogram.SYMBOLS]).write(header); //no code, as no block is coded
+            header.writeTo(fileOut);
+            
+            SplitEncoder.store(input, fileOut.getChannel());
+        }
+    }
+    
+    /**
+     * splitOutput
+     * Writes the input as a split file: blocks cut where the input changes, each 
+     * with the cheapest code. 
+     * @param input the file being read in to be transcoded
+     * @param output the file being written to
+     */
+    private void splitOutput(File input, File output) throws IOException
+    {
+        try(OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(output)))
+        {
+            HuffmanHeader.split(originalLength(), codeLengths).write(fileOut); //the code of the whole file, for the blocks to share
+            
+            SplitEncoder encoder = new SplitEncoder(codeLengths, options);
+            long [] counts = isSampled() ? new long [Histogram.SYMBOLS] : null;
+            
+            encoder.setCounts(counts);
+            encoder.encode(input, fileOut);
+            
+            if(counts != null)
+                exact = new Histogram(counts);
+        }
+    }
+    
+    /**
+     * codeTable
+     * Builds the primitive code and length tables used by the encoder, indexed by 
+     * byte value. Only the depth of each leaf in the tree is taken; the codes are 
+     * then assigned canonically, so the lengths in the header are all a decoder needs. 
      * 
-     * @param in The string input to be transformed
+     * With options.isSortedBuild() there is no tree and the lengths come from 
+     * CanonicalCode.sortedLengths instead. With a code cache in the options 
+     * there is no tree either, and the code is taken from the cache. 
+     * 
+     * Codes are limited to options.getMaxCodeLength() bits, at most 32 so they fit an int. 
+     * If the tree is deeper, the optimal code within the limit is built by package-merge instead. 
      */
-    private byte [] stringToBytes(String in)
+    private void codeTable()
     {
-        Vector output = new Vector(); //initialise the output variable
-        
-        int whole = in.length() - (in.length() % 8); //use the Mod by 8 to cut of the items on the string which are not going to fit directly into a byte.
-        int leftOver = in.length()%8; //The remaining binary values which do not fit into a complete byte.
-        
-        int arrayLength;//create an integer representing the length of the array that is going to be exported
-        if(leftOver == 0)
-            arrayLength = in.length() / 8;
-        else arrayLength = (in.length() /8) + 1;//make room for the patial byte at the end. 
-        
-        byte [] byteArray = new byte [arrayLength]; //initialise the output array;
-        int counter = 0; //create a counter to keep track of where up to in the output array
-        
-        //Start by putting in the whole bits which will fit
-        for(int i = 0; i < whole; i = i + 8) //Iterate over each block of bytes, jumping up by 8 each time and loading them in the inner loop
+        if(options.getCodeCache() != null) //the code of this input, or of one much like it
         {
-            StringBuffer singleByte = new StringBuffer();
+            CodeTable table = options.getCodeCache().get(histogram);
             
-            for(int j = i; j % 8 != 0 || j == i; j++ ) //get the next 8 elements from the string
-            {
-                singleByte.append(in.charAt(j)); //append each character as they are received
-            }
+            codeLengths = table.getCodeLengths();
+            codes = table.getCodes();
+            
+            long [] counts = histogram.getCounts();
+            byte [] unlimited = CanonicalCode.sortedLengths(counts); //this input's own code with no limit, for getLimitCost, with no tree
+            unlimitedBits = 0;
             
-            byteArray[counter] = constructByte(singleByte.toString()); //and add it to the output vector;
-            counter = counter + 1;
+            for(int b = 0; b < counts.length; b++)
+                unlimitedBits = unlimitedBits + counts[b] * unlimited[b];
+            
+            return;
         }
         
-       
-        //Construct leftover byte if boundaries don't fit 8 bits exactly:
+        int [] depths = new int [256];
+        long [] freqs = new long [256];
         
-        if(leftOver != 0)
+        if(options.isSortedBuild())
         {
-            byte partialByte = 0; //initialise empty byte
+            for(int b = 0; b < freqs.length; b++)
+                freqs[b] = histogram.getCount(b);
             
-            String byteString = "";
+            byte [] lengths = CanonicalCode.sortedLengths(freqs);
             
-            for(int i = in.length() - leftOver; i < in.length(); i++)
+            for(int b = 0; b < depths.length; b++)
+                depths[b] = lengths[b];
+        }
+        else if(root != null)
+        {
+            if(root.getL() == null) //a lone root has the empty code, give it a single bit so it can be decoded
             {
-                byteString = byteString + in.charAt(i);
+                depths[root.getByte()] = 1;
+                freqs[root.getByte()] = root.getFreq();
             }
-            
-            partialByte = constructByte(byteString);
+            else
+            {
+                leafDepths(root, 0, depths, freqs);
+            }
+        }
+        
+        int deepest = 0;
+        unlimitedBits = 0;
+        
+        for(int b = 0; b < depths.length; b++)
+        {
+            deepest = Math.max(deepest, depths[b]);
+            unlimitedBits = unlimitedBits + freqs[b] * depths[b];
+        }
         
-            byteArray[byteArray.length -1] = partialByte;//add that last leftover byte
+        if(deepest > options.getMaxCodeLength()) //too deep, build the best code that fits
+        {
+            codeLengths = CanonicalCode.packageMerge(freqs, options.getMaxCodeLength());
+        }
+        else
+        {
+            codeLengths = new byte [256];
+            
+            for(int b = 0; b < depths.length; b++)
+                codeLengths[b] = (byte)depths[b];
+        }
         
+        codes = CanonicalCode.assign(codeLengths);
+    }
+    
+    /**
+     * leafDepths
+     * Walks the tree, recording the depth and frequency of every leaf. 
+     * @param h The node being visited
+     * @param depth The depth of the node, the length of the path to it from the root
+     * @param lengths Where the depth of each leaf is stored, by byte value
+     * @param freqs Where the frequency of each leaf is stored, by byte value
+     */
+    private void leafDepths(HuffNode h, int depth, int [] lengths, long [] freqs)
+    {
+        if(h.getL() != null && h.getR() != null) //if not a leaf node, continue transversal
+        {
+            leafDepths(h.getL(), depth + 1, lengths, freqs);
+            leafDepths(h.getR(), depth + 1, lengths, freqs);
         }
+        else //leaf node
+        {
+            lengths[h.getByte()] = depth;
+            freqs[h.getByte()] = h.getFreq();
+        }
+    }
+    
+    /**
+     * codeString
+     * Returns the huffman code of a byte value as a String of '0' and '1'. For display only. 
+     * @param b The byte value
+     */
+    private String codeString(int b)
+    {
+        StringBuffer code = new StringBuffer(Integer.toBinaryString(codes[b]));
+        
+        while(code.length() < codeLengths[b]) //pad out the leading zeroes
+            code.insert(0, '0');
         
+        return code.toString();
+    }
+    
+    /**
+     * originalLength
+     * Returns the number of bytes in the input, as counted by the frequency distribution, 
+     * or the length of the file if the distribution is an estimate. 
+     */
+    private long originalLength()
+    {
+        if(isSampled())
+            return inputFile.length();
+        
+        return histogram.getTotal();
+    }
+    
+    /**
+     * isIncompressible
+     * Returns whether the code of the whole input, with the code lengths that 
+     * describe it, is no shorter than the input itself, 8 bits a byte, by the 
+     * counts: as for data already compressed or encrypted. Parts of such an 
+     * input are seldom any different. 
+     */
+    private boolean isIncompressible() throws IOException
+    {
+        ByteArrayOutputStream lengths = new ByteArrayOutputStream();
+        HuffmanHeader.writeLengths(codeLengths, lengths);
         
-        return byteArray;
+        return histogram.getTotal() > 0 && encodedBits() + 8 * lengths.size() >= 8 * histogram.getTotal();
+    }
+    
+    /**
+     * isSampled
+     * Returns whether the frequency distribution was estimated from a sample of the file. 
+     */
+    private boolean isSampled()
+    {
+        return inputFile != null && options.getSampleBlocks() > 0;
+    }
+    
+    /**
+     * decode
+     * Restores a file written by a HuffmanTree. The header at the front of the 
+     * compressed file holds the code lengths and the original length, so no 
+     * tree is required. 
+     * @param input The compressed file
+     * @param output The file the restored bytes are written to
+     * @throws IOException if either file cannot be accessed or the input is not a valid encoding
+     */
+    public static void decode(File input, File output) throws IOException
+    {
+        decode(input, output, Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * decode
+     * Restores a file written by a HuffmanTree, decoding the blocks of a blocked
+     * file on the given number of threads. 
+     * @param input The compressed file
+     * @param output The file the restored bytes are written to
+     * @param threads The number of threads to decode blocks with. 1 decodes them in turn. 
+     * @throws IOException if either file cannot be accessed or the input is not a valid encoding
+     */
+    public static void decode(File input, File output, int threads) throws IOException
+    {
+        HuffmanOptions opts = new HuffmanOptions();
+        opts.setThreads(threads);
         
+        decode(input, output, opts);
     }
     
     /**
-     * constructByte
-     * Takes a string of 8 characters long and constructs a byte out of it. 
-     * @param in The string of 8 bits. Can be less. 
+     * decode
+     * Restores a file written by a HuffmanTree with the given settings: the number of 
+     * threads to decode the blocks of a blocked file with, and whether to map the files 
+     * into memory rather than stream them. 
+     * @param input The compressed file
+     * @param output The file the restored bytes are written to
+     * @param opts The settings to decode with
+     * @throws IOException if either file cannot be accessed or the input is not a valid encoding
      */
-    private byte constructByte(String in)
+    public static void decode(File input, File output, HuffmanOptions opts) throws IOException
     {
-        int offset = (in.length() % 8); //determine the amount leftover with which to deal with separately by padding. 
+        if(opts.getThreads() > 1 && isBlocked(input)) //every block at once, straight into the output file
+        {
+            new BlockDecoder(opts.getThreads()).decode(input, output);
+            return;
+        }
+        
+        InputStream in;
+        
+        if(opts.isMapped())
+            in = new MappedInputStream(input);
+        else
+            in = new BufferedInputStream(new FileInputStream(input));
         
-        byte partialByte = 0; //initialise the output byte
-        Byte pattern = Byte.parseByte("00000001",2); //Create a pattern of 1, for using OR with;
+        OutputStream out = null;
         
-        for(int i = 0; i < in.length(); i++) //for the remaining characters in the string...
+        try
         {
-            if(in.charAt(i) == ('1')) //This part of the bitpattern is a 1, add accordingly. 
+            HuffmanHeader header = HuffmanHeader.read(in);
+            
+            if(opts.isMapped()) //the restored length is known, so the output can be created at its full size
+                out = new MappedOutputStream(output, header.getLength());
+            else
+                out = new FileOutputStream(output);
+            
+            if(header.isSplit()) //each block names its own code, so the header's needs no decoder here
+            {
+                new SplitDecoder(header).decode(in, out);
+                return;
+            }
+            
+            HuffmanDecoder decoder;
+            
+            if(opts.getCodeCache() != null && !header.isStored()) //share the tables of an earlier file with the same code
+                decoder = opts.getCodeCache().get(header).newDecoder();
+            else
+                decoder = new HuffmanDecoder(header.getCodes(), header.getCodeLengths());
+            
+            if(header.isStored()) //copy the blocks, which follow one another with nothing between
+            {
+                byte [] buffer = new byte [HuffmanDecoder.BUFFER_SIZE];
+                
+                decoder.begin(in);
+                
+                for(long left = header.getLength(); left > 0; left = left - buffer.length)
+                {
+                    int n = (int)Math.min(left, buffer.length);
+                    
+                    decoder.readBytes(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                }
+            }
+            else if(header.isBlocked()) //decode the blocks one after the other
             {
-                partialByte = (byte)(partialByte << 1); //shift bits to the right
+                decoder.begin(in);
                 
-                partialByte = (byte)(partialByte | pattern.byteValue()); //do an OR to put a 1 at the end of the bit pattern
+                for(long left = header.getLength(); left > 0; left = left - header.getBlockSize())
+                    decoder.decodeBlock(out, Math.min(left, header.getBlockSize()));
             }
-            else //the part of the bitpattern is simply a zero, therefore just increment
+            else
             {
-                partialByte = (byte)(partialByte <<1);
+                decoder.decode(in, out, header.getLength());
             }
         }
-        
-        for(int i=0; i< 8 - offset && offset != 0; i++) //pad with zeroes if necessary
+        finally
         {
-            partialByte = (byte)(partialByte << 1); 
+            in.close();
+            
+            if(out != null)
+                out.close();
         }
+    }
+    
+    /**
+     * mappedOutput
+     * Encodes the mapped input, a window at a time, straight into a mapped output. The 
+     * input is read again through the mapping it was counted through, when there is 
+     * one, rather than mapped a second time. The size of the output is known exactly 
+     * from the frequencies and code lengths, so it is created at its full size before 
+     * anything is written. 
+     * @param input the file being read in to be transcoded
+     * @param output the file being written to
+     */
+    private void mappedOutput(File input, File output) throws IOException
+    {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        new HuffmanHeader(originalLength(), codeLengths).write(header);
         
-        return partialByte;
+        //A mapping of its own only if the one the input was counted through is gone. The output is 
+        //closed first, and fails if the input no longer matches its histogram; a failure before 
+        //that is passed on with the failures to close added to it. 
+        try(MappedInputStream opened = (mapping == null) ? new MappedInputStream(input) : null;
+            MappedOutputStream out = new MappedOutputStream(output, header.size() + encodedLength()))
+        {
+            MappedInputStream in = (opened != null) ? opened : mapping;
+            
+            if(in == mapping)
+                in.rewind();
+            
+            header.writeTo(out);
+            
+            HuffmanEncoder encoder = new HuffmanEncoder(codes, codeLengths, out);
+            
+            for(java.nio.ByteBuffer window = in.nextWindow(); window != null; window = in.nextWindow())
+                encoder.encode(window);
+            
+            encoder.finish();
+        }
     }
     
     /**
-     * outputString
-     * The transcode method being performed on the object variables
+     * closeMapping
+     * Lets go of the mapping the input was counted through, if it is still open. A 
+     * failure to close it is added to the failure already on its way to the caller, 
+     * if there is one, rather than hiding it. 
+     * @param failure The failure being passed on, or null
      */
-    private void outputString() throws IOException
+    private void closeMapping(Exception failure) throws IOException
     {
+        if(mapping == null)
+            return;
+        
+        MappedInputStream m = mapping;
+        mapping = null;
+        
         try
         {
-            transcode(inputFile, huffmanMap);
+            m.close();
         }
         catch(IOException e)
         {
-            throw e;
+            if(failure == null)
+                throw e;
+            
+            failure.addSuppressed(e);
+        }
+    }
+    
+    /**
+     * encodedLength
+     * Returns the length in bytes of the encoding of the input, the total of the 
+     * code lengths of its bytes rounded up to a whole byte. 
+     */
+    private long encodedLength()
+    {
+        return (encodedBits() + 7) / 8;
+    }
+    
+    /**
+     * encodedBits
+     * Returns the length in bits of the encoding of the input, the total of the code 
+     * lengths of its bytes. 
+     */
+    private long encodedBits()
+    {
+        long bits = 0;
+        
+        for(int b = 0; b < codeLengths.length; b++)
+            bits = bits + histogram.getCount(b) * codeLengths[b];
+        
+        return bits;
+    }
+    
+    /**
+     * isBlocked
+     * Returns whether a compressed file is made up of separately coded blocks.
+     * @param input The compressed file
+     */
+    private static boolean isBlocked(File input) throws IOException
+    {
+        InputStream in = new BufferedInputStream(new FileInputStream(input));
+        
+        try
+        {
+            return HuffmanHeader.read(in).isBlocked();
+        }
+        finally
+        {
+            in.close();
         }
     }
     
     /**
      * transcode
-     * Takes an input stream and produces a string arranged as a set of bytes with the equivalent huffman Mapping. 
-     * Requires that a huffman mapping already exists. 
+     * Reads the input file in blocks and streams the huffman encoding of each byte to 
+     * the output. Requires that the code tables already exist. If the counts were 
+     * sampled, every byte is counted too, to measure the code against. 
      * 
-     * Because of it's reliace upon Strings, it is very vulnerable to problems with string concatenation.
-     * To circumvent this problem, a StringBuffer allows for far greater performance. 
+     * Each byte is looked up as a primitive (code, length) pair and packed by a 
+     * HuffmanEncoder, so memory use is constant no matter how large the input. 
+     * @param in the file being read in to be transcoded
+     * @param out the stream the encoding is written to. It is flushed but not closed. 
      */
-    private String transcode(File in, Map map) throws IOException, NullPointerException
+    private void transcode(File in, OutputStream out) throws IOException
     {
         InputStream inputStream;
         
@@ -340,29 +861,38 @@ public class HuffmanTree
             throw new IOException("IOException: A problem has occured in the transcoding from the file to Huffman Coding");
         }
         
-        int currByte = inputStream.read(); //the current byte with which to read and translate from with the map. 
-        StringBuffer outputStream = new StringBuffer();//The output stream to append to
-        String huffValues; //temporary array in which to store each block as they are retrieved from the map. should be 1x2 array;
+        HuffmanEncoder encoder = new HuffmanEncoder(codes, codeLengths, out);
+        byte [] block = new byte [HuffmanEncoder.BUFFER_SIZE]; //the block of input being worked on
+        long [] counts = isSampled() ? new long [Histogram.SYMBOLS] : null; //measure the sample against every byte
         
-        while(currByte != -1)
+        try
         {
+            int read = inputStream.read(block);
             
-            try
-            {
-                huffValues = (String)map.get(currByte +""); //Get the key from byte from the map
-            }
-            catch (NullPointerException e)
+            while(read != -1)
             {
-                throw new NullPointerException("Key not in map, serious error");
+                encoder.encode(block, 0, read);
+                
+                if(counts != null)
+                {
+                    Histogram h = Histogram.of(block, 0, read);
+                    
+                    for(int b = 0; b < Histogram.SYMBOLS; b++)
+                        counts[b] = counts[b] + h.getCount(b);
+                }
+                
+                read = inputStream.read(block);
             }
             
-            outputStream.append(huffValues);//Add the key value to the output vector. 
+            encoder.finish(); //pad the last byte and flush
             
-            currByte = inputStream.read();
+            if(counts != null)
+                exact = new Histogram(counts);
+        }
+        finally
+        {
+            inputStream.close();
         }
-        
-
-        return outputStream.toString();
     }
     
     /**
@@ -375,216 +905,134 @@ public class HuffmanTree
         return new HuffNode(0, l.getFreq() + r.getFreq(), l, r); 
     }
     
-    /**
-     * getFreqDistList
-     * Returns the mapping of values and their frequencies as a List. 
-     */
-    private List getFreqDistList(Map m)
-    {
-        return new Vector(m.values());
-    }
-    
-    
     /**
      * printByteFreq
      * A simple method to illustrate the byte frequency in the read file. Used for debugging.
      */
     public String printByteFreq()
     {
-        
-        Vector v = null;
-        
-        try
-        {
-            v = new Vector(getFreqDistList(freqDist(new FileInputStream(inputFile)))); //create the appropriate vector
-        }
-        catch(IOException e)
-        {}
         StringBuffer s = new StringBuffer(); //output 
         
         s.append("\nByte Frequency: \n\n byte \t char \t freq");
         
-        for(int i = 0; i < v.size(); i++)
+        for(int i = 0; i < Histogram.SYMBOLS; i++)
         {
-            int [] values = (int [])v.get(i);
-            s.append("\n" + values[0] + "\t" + (char)values[0] + "\t" + values[1]);
+            if(histogram.getCount(i) > 0)
+                s.append("\n" + i + "\t" + (char)i + "\t" + histogram.getCount(i));
         }
         
         return s.toString();
     }
     
+    /**
+     * getCodes
+     * Returns a copy of the canonical code of each byte value, right aligned. 
+     */
+    public int [] getCodes()
+    {
+        return codes.clone();
+    }
+    
+    /**
+     * getCodeLengths
+     * Returns a copy of the length in bits of the code of each byte value, 0 if it does not occur. 
+     */
+    public byte [] getCodeLengths()
+    {
+        return codeLengths.clone();
+    }
+    
+    /**
+     * getHistogram
+     * Returns the frequency distribution of the input. 
+     */
+    public Histogram getHistogram()
+    {
+        return histogram;
+    }
+    
     /**
      * createQueue
-     * Takes a list of characters and their frequency distribution as HuffNodes
-     * and places them in the priority queue according to there distribution
-     * frequency. Intended to have it such that characters with the higher
-     * distribution frequency will have higher priority in the queue. 
+     * Takes the frequency distribution and places a HuffNode for every byte that 
+     * occurs in the priority queue according to its frequency. Intended to have 
+     * it such that characters with the lower distribution frequency will have 
+     * higher priority in the queue, so they are joined first. 
      * 
-     * Note that it is assumed that this will enqueue HuffNodes, it cannot 
-     * use another data type. It is assumed that this method will decode the 
-     * 2 unit array produced elsewhere. 
+     * Returns a priority queue: a RadixPriorityQueue if options.isRadixQueue(), 
+     * otherwise a LongPriorityQueueHeap.
      * 
-     * Returns a priority queue.
-     * 
-     * @param l The Orderedlist of elements
+     * @param h The frequency distribution
      */
-    private PriorityQueue createQueue(List l)
+    private LongPriorityQueue<HuffNode> createQueue(Histogram h)
     {
-        PriorityQueue priorityQueue= new PriorityQueueHeap();
+        LongPriorityQueue<HuffNode> priorityQueue;
+        
+        if(options.isRadixQueue()) //the weights taken never decrease, so a radix queue will do
+            priorityQueue = new RadixPriorityQueue<HuffNode>();
+        else
+            priorityQueue = new LongPriorityQueueHeap<HuffNode>(Histogram.SYMBOLS);
+        
+        long [] priorities = new long [Histogram.SYMBOLS];
+        HuffNode [] leaves = new HuffNode [Histogram.SYMBOLS];
+        int n = 0;
         
-        for(int i=0; i<l.size(); i++)
+        for(int byteValue = 0; byteValue < Histogram.SYMBOLS; byteValue++)
         {
-            int [] block = (int []) l.get(i);
-            
-            int byteValue = block[0]; //expicitly declared for clarity; 
-            int priority = block[1];
-            
-            HuffNode h = new HuffNode(byteValue, priority);
+            long priority = h.getCount(byteValue);
             
-            priorityQueue.enqueue(priority, h);
+            if(priority > 0)
+            {
+                priorities[n] = priority;
+                leaves[n] = new HuffNode(byteValue, priority);
+                n++;
+            }
         }
         
+        //queued all together, which orders them in one pass rather than one at a time
+        priorityQueue.enqueueAll(Arrays.copyOf(priorities, n), Arrays.copyOf(leaves, n));
+        
         return priorityQueue;
     }
     
     /**
      * freqDist
-     * returns a frequency distribution for the bytes for the file. 
-     * each element of the Map is a size 2 array, first with the byte
-     * and then followed by the frequency. 
+     * returns a frequency distribution for the bytes for the file: the number of 
+     * times each byte value is found. 
      * 
      * thus:
      * 
-     * Map:
-     *  | [a][3]
-     *  | [b][1]
-     *  | [c][4]
+     * Histogram:
+     *  | a: 3
+     *  | b: 1
+     *  | c: 4
      *  
      *  indicates 'a' is found 3 times, b found once etc. 
      *  
-     *  To do this, it uses a hashmap, increasing the counter of each byte as found. 
+     *  The stream is read in large blocks and counted into primitive arrays; see Histogram. 
      */
-    public  Map freqDist(InputStream readFile) throws IOException
+    public Histogram freqDist(InputStream readFile) throws IOException
     {
-        Map map = new HashMap(); //initialise the frequency map
-        int freqCounter = 0; //initialise a frequency counter to catch a particular bug
-        
-        try{
-            int currByte = readFile.read(); //initial byte
-    
-            while(currByte != -1) //while not at the end, keep reading
-            {
-                if(map.containsKey(currByte)) //if current byte already exists...
-                {
-                    int [] elem = (int[])map.get(currByte); //get the block and...
-                    elem[1] = elem[1] + 1; //increment the frequency by one. 
-                }
-    
-                else //The byte is not in the table, add it now. 
-                {
-                    int [] elem = new int [] {currByte, 1} ;//create a block with freq 1. 
-    
-                    map.put(currByte, elem); //put in into the mapping
-                }
-    
-                currByte = readFile.read(); //get next byte for reading. 
-    
-            }
-        }
-        catch(IOException e)
-        {
-            throw e;
-        }
-
-        if(freqCounter == 1) //throw single byte exception
-            throw new IOException("HuffmanCoding is a frequency based compression algorithm. It does not work on a single byte."); 
-        
-        return map;
+        return Histogram.of(readFile);
     }
     
     /**
-     * huffmanCodingMap
-     * Uses the codes generated to create a map of byes. Uses the genCodes() method
-     * to create an array and then stores returns the following as a map with the 
-     * byte value as the key and the mapping object the huffman code. 
-     * 
-     * Note that that for every entry in genCodes();
-     * [0] - byte value
-     * [1] - Huffman code
+     * getMap
+     * Provides a map of the data: the huffman code of each byte value, keyed by 
+     * the byte value as a String. Built on request from the code tables. 
      */
-    private Map huffmanCodingMap()
+    public Map getMap()
     {
-        Vector v = genCodes(); //create the variables to work with
         Map map = new HashMap();
         
-        for(int i=0; i<v.size(); i++) //iterate over the output vector,
+        for(int i = 0; i < codeLengths.length; i++)
         {
-            String [] codes = (String [])v.get(i); //and the the individual array blocks
-            map.put(codes[0], codes[1]); //and place them into the mapping, using the huffman coding as a key value. 
+            if(codeLengths[i] > 0)
+                map.put(i + "", codeString(i));
         }
         
-        //Debugging feature: pass the vector to the output on screen for testing. 
-        //printMappings(v);
-        mappingList = v; //Store the mapping for debugging later. 
-        
         return map;
     }
     
-    /**
-     * genCodes
-     * Starts the code genearation method
-     */
-    public Vector genCodes()
-    {
-        return genCodes(root, "");
-    }
-    
-    /**
-     * genCodes
-     * Generates the huffmoan codes by tranversing the tree. 
-     * Returns codes as an array int the following format:
-     * Stored as an array within a vector.
-     * 
-     * Vector:
-     * | [ByteValue] [Code] 
-     * | [ByteValue] [Code] 
-     */
-    private Vector genCodes(HuffNode h, String path)
-    {
-        if (h != null)
-        {
-            Vector v = new Vector();
-            
-            if(h.getL() != null && h.getR() != null) //if not a leaf node, continue transversal
-            { //And concantenate the arrays given by the left and right transversals:
-                v.addAll(genCodes(h.getL(),  path +"" + 0 )); //get left elements recursively
-                //need to add to direction string. 
-                
-                v.addAll(genCodes(h.getR(), path + "" + 1)); //get right elements recursively.               
-            }
-            else //leaf node
-            {
-                Vector out = new Vector(); //create a new vector to output
-                out.add(new String []  {h.getByte() + "", path} ); //add the 
-                return out;   
-            }
-            
-            
-            return v;
-        }
-        
-        else return null; //Nothing contained in the element. 
-    }
-    
-    /**
-     * getMap
-     * Provides a map of the data
-     */
-    public Map getMap()
-    {
-        return huffmanMap;
-    }
-    
     
     /**
      * HuffNode
@@ -598,7 +1046,7 @@ public class HuffmanTree
         private HuffNode left;      //Left node
         private HuffNode right;     //Right node
 
-        private int freq;           //The frequency of the byte value
+        private long freq;          //The frequency of the byte value
         private int byteVal;        //the byte value being stored. 
 
         /**
@@ -609,7 +1057,7 @@ public class HuffmanTree
          * @param l The left Huffman Node.
          * @param r The right huffman node. 
          */
-        public HuffNode(int b, int f, HuffNode l, HuffNode r)
+        public HuffNode(int b, long f, HuffNode l, HuffNode r)
         {
             freq = f;
             byteVal = b;
@@ -623,7 +1071,7 @@ public class HuffmanTree
          * @param b The byte value stored in the node.
          * @param f The frequency of the byte value. 
          */
-        public HuffNode (int b, int f)
+        public HuffNode (int b, long f)
         {
             freq = f;
             byteVal = b;
@@ -664,7 +1112,7 @@ public class HuffmanTree
          * Sets the frequency of the byte value. 
          * @param f The Frequency of the byte value. 
          */
-        public void setFreq(int f)
+        public void setFreq(long f)
         {
             freq = f;
         }
@@ -691,7 +1139,7 @@ public class HuffmanTree
          * getFreq
          * Returns the frequency of the node.
          */
-        public int getFreq()
+        public long getFreq()
         {
             return freq;
         }
@@ -0,0 +1,107 @@
+/**
+ * IntPriorityQueue
+ * A priority queue keyed by plain ints, so a priority need not be boxed to be
+ * queued or compared. As with every priority queue, the lowest key has the
+ * highest priority.
+ *
+ * Besides elements, the queue can hold plain int indices, such as the number
+ * of a node in an array, so a caller that keeps its data in arrays queues no
+ * objects at all. A queue holds either elements or indices, not both at once.
+ * @author David Porter
+ * @version 1
+ * @param <T> The type of the elements being stored
+ */
+public interface IntPriorityQueue <T> extends PriorityQueue <T, Integer>
+{
+
+    /**
+     * enqueue
+     * Places an element in the queue with an unboxed priority.
+     * @param priority - the assigned priority of the element, lowest first
+     * @param element - the entity being added to the queue
+     * @throws IllegalStateException if the queue holds indices
+     */
+    public void enqueue(int priority, T element);
+
+    /**
+     * enqueueIndex
+     * Places an index in the queue with an unboxed priority.
+     * @param priority - the assigned priority of the index, lowest first
+     * @param index - the index being added to the queue
+     * @throws IllegalStateException if the queue holds elements
+     */
+    public void enqueueIndex(int priority, int index);
+
+    /**
+     * enqueueAll
+     * Places many elements in the queue at once, with unboxed priorities.
+     * @param priorities - the assigned priority of each element
+     * @param elements - the entities being added, in the same order
+     * @throws IllegalArgumentException if the arrays differ in length
+     * @throws IllegalStateException if the queue holds indices
+     */
+    public void enqueueAll(int [] priorities, T [] elements);
+
+    /**
+     * enqueueIndices
+     * Places many indices in the queue at once.
+     * @param priorities - the assigned priority of each index
+     * @param indices - the indices being added, in the same order
+     * @throws IllegalArgumentException if the arrays differ in length
+     * @throws IllegalStateException if the queue holds elements
+     */
+    public void enqueueIndices(int [] priorities, int [] indices);
+
+    /**
+     * replaceTop
+     * Replaces the front of the queue with an element of unboxed priority.
+     * @param priority - the assigned priority of the new element
+     * @param element - the entity replacing the front of the queue
+     * @throws EmptyQueueException if the queue is empty
+     * @throws IllegalStateException if the queue holds indices
+     */
+    public void replaceTop(int priority, T element) throws EmptyQueueException;
+
+    /**
+     * replaceTopIndex
+     * Replaces the front of the queue with an index.
+     * @param priority - the assigned priority of the new index
+     * @param index - the index replacing the front of the queue
+     * @throws EmptyQueueException if the queue is empty
+     * @throws IllegalStateException if the queue holds elements
+     */
+    public void replaceTopIndex(int priority, int index) throws EmptyQueueException;
+
+    /**
+     * pollIndex
+     * Removes the index with the highest priority and returns it.
+     * @return The index that was at the front of the queue
+     * @throws EmptyQueueException if the queue is empty
+     * @throws IllegalStateException if the queue holds elements
+     */
+    public int pollIndex() throws EmptyQueueException;
+
+    /**
+     * frontIndex
+     * Returns the index with the highest priority.
+     * @return The index at the front of the queue
+     * @throws EmptyQueueException if the queue is empty
+     * @throws IllegalStateException if the queue holds elements
+     */
+    public int frontIndex() throws EmptyQueueException;
+
+    /**
+     * frontPriority
+     * Returns the priority of the front of the queue, the lowest in it.
+     * @return The priority at the front of the queue
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public int frontPriority() throws EmptyQueueException;
+
+    /**
+     * length
+     * Returns the number of elements, or indices, in the queue.
+     * @return the length of the queue
+     */
+    public int length();
+}
@@ -0,0 +1,491 @@
+import java.util.*;
+
+/**
+ * IntPriorityQueueHeap
+ *
+ * An array based heap implementation of the priority queue for int keys. It
+ * is laid out like PriorityQueueHeap, but the keys are kept unboxed in an
+ * int[] and what goes with each key, its payload, in a parallel int[]:
+ *
+ * keys:     [ ] [2] [7] [4] [8]... [n]
+ * payloads: [ ] [5] [0] [3] [1]... [p]
+ *
+ * Location 1 is the root of the heap and holds the lowest key. The payload is
+ * either an index given by the caller or, for an element, the slot of the
+ * element in a side array; the slots of dequeued elements are reused. So no
+ * object is created per element and no priority is boxed, and the arrays only
+ * grow, doubling when full.
+ *
+ * Elements move with the comparisons PriorityQueueHeap used before it broke
+ * ties first in first out: equal priorities come out in an order set by their
+ * places in the heap, the same every time for the same sequence of operations,
+ * so codes built with it never change. Instead of being swapped at each step,
+ * the element being placed is held aside while the others move into the hole,
+ * and written once where it belongs.
+ *
+ * @author David Porter
+ * @version 1
+ * @param <T> The type of the elements being stored
+ */
+public class IntPriorityQueueHeap <T> implements IntPriorityQueue <T>
+{
+
+    //---------------------------------------------Constants------------------
+
+    /*
+     * The start location along the arrays. Location 0 is never used.
+     */
+    private static final int START_LOC = 1;
+
+    /*
+     * The number of elements there is room for at first.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    //---------------------------------------------Variables----------------
+    private int [] keys; //The priority at each location of the heap
+    private int [] payloads; //The index, or the element's slot, at each location
+    private int endLoc; //The location after the last element of the heap
+    private Object [] elements; //The element in each slot, null while the queue holds indices
+    private int [] freeSlots; //A stack of the slots not in use
+    private int freeCount; //The number of slots on the stack
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * IntPriorityQueueHeap Constructor
+     * Creates an empty queue with room for a few elements.
+     */
+    public IntPriorityQueueHeap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * IntPriorityQueueHeap Constructor: capacity
+     * Creates an empty queue with room for the given number of elements before
+     * it has to grow.
+     * @param capacity The number of elements expected, at least 1
+     */
+    public IntPriorityQueueHeap(int capacity)
+    {
+        if (capacity < 1)
+            throw new IllegalArgumentException("The capacity must be positive");
+
+        keys = new int [capacity + START_LOC];
+        payloads = new int [capacity + START_LOC];
+        endLoc = START_LOC;
+    }
+
+    //-----------------------------------------Interface methods--------------
+    /**
+     * enqueue
+     * Places an element in the queue, unboxing its priority.
+     * @param priority The priority of the element, lowest first
+     * @param element The data being stored along with the key value
+     */
+    public void enqueue(Integer priority, T element)
+    {
+        enqueue(priority.intValue(), element);
+    }
+
+    /**
+     * enqueue
+     * Places an element in the queue, storing it in a free slot.
+     * @param priority The priority of the element, lowest first
+     * @param element The data being stored along with the key value
+     * @throws IllegalStateException if the queue holds indices
+     */
+    public void enqueue(int priority, T element)
+    {
+        insert(priority, slotFor(element));
+    }
+
+    /**
+     * enqueueIndex
+     * Places an index in the queue.
+     * @param priority The priority of the index, lowest first
+     * @param index The index being stored along with the key value
+     * @throws IllegalStateException if the queue holds elements
+     */
+    public void enqueueIndex(int priority, int index)
+    {
+        useIndices();
+        insert(priority, index);
+    }
+
+    /**
+     * enqueueAll
+     * Places every element in the queue, unboxing their priorities.
+     * @param priorities The priority of each element
+     * @param elements The data, in the same order
+     * @throws IllegalArgumentException if the arrays differ in length
+     */
+    public void enqueueAll(Integer [] priorities, T [] elements)
+    {
+        if (priorities.length != elements.length)
+            throw new IllegalArgumentException("There must be one priority for each element");
+
+        for (int i = 0; i < elements.length; i++)
+            append(priorities[i].intValue(), slotFor(elements[i]));
+
+        heapify();
+    }
+
+    /**
+     * enqueueAll
+     * Places every element in the queue, adding them all to the end and then
+     * restoring the heap from the bottom up, in time in proportion to the
+     * length of the heap.
+     * @param priorities The priority of each element
+     * @param elements The data, in the same order
+     * @throws IllegalArgumentException if the arrays differ in length
+     * @throws IllegalStateException if the queue holds indices
+     */
+    public void enqueueAll(int [] priorities, T [] elements)
+    {
+        if (priorities.length != elements.length)
+            throw new IllegalArgumentException("There must be one priority for each element");
+
+        for (int i = 0; i < elements.length; i++)
+            append(priorities[i], slotFor(elements[i]));
+
+        heapify();
+    }
+
+    /**
+     * enqueueIndices
+     * Places every index in the queue, adding them all to the end and then
+     * restoring the heap from the bottom up.
+     * @param priorities The priority of each index
+     * @param indices The indices, in the same order
+     * @throws IllegalArgumentException if the arrays differ in length
+     * @throws IllegalStateException if the queue holds elements
+     */
+    public void enqueueIndices(int [] priorities, int [] indices)
+    {
+        if (priorities.length != indices.length)
+            throw new IllegalArgumentException("There must be one priority for each index");
+
+        useIndices();
+
+        for (int i = 0; i < indices.length; i++)
+            append(priorities[i], indices[i]);
+
+        heapify();
+    }
+
+    /**
+     * dequeue
+     * Removes the element or index with the highest priority from the queue.
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public void dequeue() throws EmptyQueueException
+    {
+        if (isEmpty())
+            throw new EmptyQueueException();
+
+        if (elements != null) //let go of the element and free its slot
+        {
+            int slot = payloads[START_LOC];
+            elements[slot] = null;
+            freeSlots[freeCount++] = slot;
+        }
+
+        endLoc = endLoc - 1;
+
+        if (! isEmpty())
+            bubbleDown(START_LOC, keys[endLoc], payloads[endLoc]); //the last moves to the root
+    }
+
+    /**
+     * poll
+     * Removes the element with the highest priority and returns it.
+     * @return The element that had the highest priority
+     * @throws EmptyQueueException if the queue is empty
+     * @throws IllegalStateException if the queue holds indices
+     */
+    public T poll() throws EmptyQueueException
+    {
+        T element = front();
+        dequeue();
+
+        return element;
+    }
+
+    /**
+     * pollIndex
+     * Removes the index with the highest priority and returns it.
+     * @return The index that was at the front of the queue
+     * @throws EmptyQueueException if the queue is empty
+     * @throws IllegalStateException if the queue holds elements
+     */
+    public int pollIndex() throws EmptyQueueException
+    {
+        int index = frontIndex();
+        dequeue();
+
+        return index;
+    }
+
+    /**
+     * replaceTop
+     * Replaces the element with the highest priority, unboxing the priority.
+     * @param priority The priority of the new element, lowest first
+     * @param element The data being stored along with the key value
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public void replaceTop(Integer priority, T element) throws EmptyQueueException
+    {
+        replaceTop(priority.intValue(), element);
+    }
+
+    /**
+     * replaceTop
+     * Replaces the element with the highest priority by a new one, which takes
+     * over its slot and is bubbled down from the root.
+     * @param priority The priority of the new element, lowest first
+     * @param element The data being stored along with the key value
+     * @throws EmptyQueueException if the queue is empty
+     * @throws IllegalStateException if the queue holds indices
+     */
+    public void replaceTop(int priority, T element) throws EmptyQueueException
+    {
+        front(); //checks there is an element to replace
+
+        int slot = payloads[START_LOC];
+        elements[slot] = element;
+        bubbleDown(START_LOC, priority, slot);
+    }
+
+    /**
+     * replaceTopIndex
+     * Replaces the index with the highest priority by a new one, which is
+     * bubbled down from the root.
+     * @param priority The priority of the new index, lowest first
+     * @param index The index being stored along with the key value
+     * @throws EmptyQueueException if the queue is empty
+     * @throws IllegalStateException if the queue holds elements
+     */
+    public void replaceTopIndex(int priority, int index) throws EmptyQueueException
+    {
+        frontIndex(); //checks there is an index to replace
+
+        bubbleDown(START_LOC, priority, index);
+    }
+
+    /**
+     * isEmpty
+     * Returns true if the queue is empty.
+     * @return Returns true if the queue is empty.
+     */
+    public boolean isEmpty()
+    {
+        return endLoc == START_LOC;
+    }
+
+    /**
+     * front
+     * Returns the element with the highest priority.
+     * @return The element with the highest priority
+     * @throws EmptyQueueException if the queue is empty
+     * @throws IllegalStateException if the queue holds indices
+     */
+    @SuppressWarnings("unchecked")
+    public T front() throws EmptyQueueException
+    {
+        if (isEmpty())
+            throw new EmptyQueueException();
+
+        if (elements == null)
+            throw new IllegalStateException("The queue holds indices, not elements");
+
+        return (T)elements[payloads[START_LOC]];
+    }
+
+    /**
+     * frontIndex
+     * Returns the index with the highest priority.
+     * @return The index at the front of the queue
+     * @throws EmptyQueueException if the queue is empty
+     * @throws IllegalStateException if the queue holds elements
+     */
+    public int frontIndex() throws EmptyQueueException
+    {
+        if (isEmpty())
+            throw new EmptyQueueException();
+
+        if (elements != null)
+            throw new IllegalStateException("The queue holds elements, not indices");
+
+        return payloads[START_LOC];
+    }
+
+    /**
+     * frontPriority
+     * Returns the priority of the front of the queue, the lowest in it.
+     * @return The priority at the front of the queue
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public int frontPriority() throws EmptyQueueException
+    {
+        if (isEmpty())
+            throw new EmptyQueueException();
+
+        return keys[START_LOC];
+    }
+
+    /**
+     * length
+     * Returns the number of elements in the priority queue.
+     * @return the length of the queue
+     */
+    public int length()
+    {
+        return endLoc - START_LOC;
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * slotFor
+     * Stores an element in a free slot, doubling the slots if every one is in use.
+     * @param element The element
+     * @return The slot it is stored in
+     * @throws IllegalStateException if the queue holds indices
+     */
+    private int slotFor(T element)
+    {
+        if (elements == null)
+        {
+            if (! isEmpty())
+                throw new IllegalStateException("The queue holds indices, not elements");
+
+            elements = new Object [keys.length - START_LOC];
+            freeSlots = new int [elements.length];
+            freeCount = 0;
+
+            for (int s = elements.length - 1; s >= 0; s--) //slot 0 on top
+                freeSlots[freeCount++] = s;
+        }
+
+        if (freeCount == 0) //every slot in use, double them
+        {
+            int used = elements.length;
+            elements = Arrays.copyOf(elements, 2 * used);
+            freeSlots = new int [2 * used];
+
+            for (int s = 2 * used - 1; s >= used; s--)
+                freeSlots[freeCount++] = s;
+        }
+
+        int slot = freeSlots[--freeCount];
+        elements[slot] = element;
+
+        return slot;
+    }
+
+    /**
+     * useIndices
+     * Readies the queue to hold indices.
+     * @throws IllegalStateException if the queue holds elements
+     */
+    private void useIndices()
+    {
+        if (elements != null)
+        {
+            if (! isEmpty())
+                throw new IllegalStateException("The queue holds elements, not indices");
+
+            elements = null; //empty, so it can change over
+            freeSlots = null;
+        }
+    }
+
+    /**
+     * append
+     * Adds a key and its payload at the end of the heap, out of order, growing
+     * the arrays if they are full.
+     * @param key The priority
+     * @param payload The index or slot that goes with it
+     */
+    private void append(int key, int payload)
+    {
+        if (endLoc == keys.length)
+        {
+            keys = Arrays.copyOf(keys, 2 * keys.length);
+            payloads = Arrays.copyOf(payloads, 2 * payloads.length);
+        }
+
+        keys[endLoc] = key;
+        payloads[endLoc] = payload;
+        endLoc = endLoc + 1;
+    }
+
+    /**
+     * insert
+     * Adds a key and its payload at the end of the heap and bubbles them up.
+     * @param key The priority
+     * @param payload The index or slot that goes with it
+     */
+    private void insert(int key, int payload)
+    {
+        append(key, payload);
+
+        int child = endLoc - 1;
+
+        //While not at the root and the parent is of lesser priority, move the parent down
+        while (child > START_LOC && keys[child / 2] > key)
+        {
+            keys[child] = keys[child / 2];
+            payloads[child] = payloads[child / 2];
+            child = child / 2;
+        }
+
+        keys[child] = key;
+        payloads[child] = payload;
+    }
+
+    /**
+     * heapify
+     * Restores the heap after appends by bubbling down every parent, the last
+     * first (Floyd's method).
+     */
+    private void heapify()
+    {
+        for (int loc = (endLoc - 1) / 2; loc >= START_LOC; loc--)
+            bubbleDown(loc, keys[loc], payloads[loc]);
+    }
+
+    /**
+     * bubbleDown
+     * Places a key and its payload at a location and moves them down past every
+     * child of higher priority, preferring the right child only when it has the
+     * strictly higher priority of the two.
+     * @param loc The location, the root unless the heap is being restored
+     * @param key The priority
+     * @param payload The index or slot that goes with it
+     */
+    private void bubbleDown(int loc, int key, int payload)
+    {
+        int parent = loc;
+        int lChild = 2 * parent;
+
+        while (lChild < endLoc)
+        {
+            int child = lChild;
+
+            if (lChild + 1 < endLoc && keys[lChild + 1] < keys[lChild]) //the right is higher
+                child = lChild + 1;
+
+            if (keys[child] >= key) //both children are of lesser or equal priority
+                break;
+
+            keys[parent] = keys[child];
+            payloads[parent] = payloads[child];
+            parent = child;
+            lChild = 2 * parent;
+        }
+
+        keys[parent] = key;
+        payloads[parent] = payload;
+    }
+}
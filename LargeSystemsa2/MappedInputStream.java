@@ -0,0 +1,188 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * MappedInputStream
+ *
+ * Reads a file through memory mapped windows rather than read calls. A
+ * mapping is limited to 2 GB, so a larger file is mapped a window at a time:
+ *
+ * file:    [ window 0 ][ window 1 ][ window 2 ]...[ last, shorter ]
+ *
+ * Bytes may be read as from any stream, which copies them out of the mapping
+ * without a system call, or a window at a time with nextWindow, which hands
+ * out the mapped buffer itself so a loop can work on it directly.
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class MappedInputStream extends InputStream
+{
+    //---------------------------------------------Constants------------------
+
+    /*
+     * The default size of each mapped window.
+     */
+    public static final int WINDOW_SIZE = 1 << 30;
+
+    //---------------------------------------------Variables----------------
+    private RandomAccessFile file; //The file being read
+    private FileChannel channel; //Its channel, which the windows are mapped from
+    private long size; //The length of the file
+    private int windowSize; //The size of each window
+    private long mapped; //The offset in the file of the end of the current window
+    private ByteBuffer window; //The current window, positioned at the next byte to read
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * Constructor
+     * Opens a file to be read through windows of the default size.
+     * @param f The file to read
+     * @throws IOException if the file cannot be opened
+     */
+    public MappedInputStream(File f) throws IOException
+    {
+        this(f, WINDOW_SIZE);
+    }
+
+    /**
+     * Constructor: window size
+     * Opens a file to be read through windows of the given size.
+     * @param f The file to read
+     * @param windowSize The size of each window, at least 1
+     * @throws IOException if the file cannot be opened
+     */
+    public MappedInputStream(File f, int windowSize) throws IOException
+    {
+        if (windowSize < 1)
+            throw new IllegalArgumentException("The window size must be positive");
+
+        file = new RandomAccessFile(f, "r");
+        channel = file.getChannel();
+        size = channel.size();
+        this.windowSize = windowSize;
+        mapped = 0;
+        window = null;
+    }
+
+    //-----------------------------------------Public methods-----------------
+    /**
+     * read
+     * Reads a single byte.
+     * @return The byte, 0 - 255, or -1 at the end of the file
+     */
+    public int read() throws IOException
+    {
+        if (! fill())
+            return -1;
+
+        return window.get() & 0xFF;
+    }
+
+    /**
+     * read
+     * Copies up to len bytes of the current window into the array.
+     * @return The number of bytes read, or -1 at the end of the file
+     */
+    public int read(byte [] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+            return 0;
+
+        if (! fill())
+            return -1;
+
+        int n = Math.min(len, window.remaining());
+        window.get(b, off, n);
+
+        return n;
+    }
+
+    /**
+     * available
+     * Returns the number of bytes left in the current window.
+     */
+    public int available()
+    {
+        return window == null ? 0 : window.remaining();
+    }
+
+    /**
+     * nextWindow
+     * Returns the unread part of the current window, or the next window if it has
+     * all been read, and moves past it.
+     * @return The mapped bytes, or null at the end of the file
+     * @throws IOException if the next window cannot be mapped
+     */
+    public ByteBuffer nextWindow() throws IOException
+    {
+        if (! fill())
+            return null;
+
+        ByteBuffer rest = window.slice();
+        window.position(window.limit());
+
+        return rest;
+    }
+
+    /**
+     * rewind
+     * Goes back to the start of the file, so it can be read again. While only the
+     * first window has been mapped it is kept and read again, so a file that fits
+     * one window is mapped once however many times it is read.
+     */
+    public void rewind()
+    {
+        if (window != null && mapped <= windowSize)
+        {
+            window.rewind(); //the first window, still mapped
+        }
+        else
+        {
+            mapped = 0;
+            window = null;
+        }
+    }
+
+    /**
+     * length
+     * Returns the length of the file.
+     */
+    public long length()
+    {
+        return size;
+    }
+
+    /**
+     * close
+     * Closes the file. The windows stay valid until they are garbage collected,
+     * but must not be used.
+     */
+    public void close() throws IOException
+    {
+        window = null;
+        file.close();
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * fill
+     * Maps the next window if the current one has been read.
+     * @return false at the end of the file
+     */
+    private boolean fill() throws IOException
+    {
+        if (window != null && window.hasRemaining())
+            return true;
+
+        if (mapped >= size)
+            return false;
+
+        long len = Math.min(windowSize, size - mapped);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, mapped, len);
+        mapped = mapped + len;
+
+        return true;
+    }
+}
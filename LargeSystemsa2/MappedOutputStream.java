@@ -0,0 +1,132 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * MappedOutputStream
+ *
+ * Writes a file of a size known in advance through memory mapped windows
+ * rather than write calls. The file is created at its full size up front,
+ * then each window is mapped in turn and filled:
+ *
+ * file:    [ window 0 ][ window 1 ]...[ last, shorter ]
+ *
+ * A mapping is limited to 2 GB, so a larger file is written a window at a
+ * time. Exactly the promised number of bytes must be written before the
+ * stream is closed.
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class MappedOutputStream extends OutputStream
+{
+    //---------------------------------------------Variables----------------
+    private RandomAccessFile file; //The file being written
+    private FileChannel channel; //Its channel, which the windows are mapped from
+    private long size; //The length the file will have
+    private int windowSize; //The size of each window
+    private long mapped; //The offset in the file of the end of the current window
+    private ByteBuffer window; //The current window, positioned at the next byte to write
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * Constructor
+     * Creates, or replaces, a file of the given size to be written through windows
+     * of the default size.
+     * @param f The file to write
+     * @param size The number of bytes that will be written
+     * @throws IOException if the file cannot be created
+     */
+    public MappedOutputStream(File f, long size) throws IOException
+    {
+        this(f, size, MappedInputStream.WINDOW_SIZE);
+    }
+
+    /**
+     * Constructor: window size
+     * Creates, or replaces, a file of the given size to be written through windows
+     * of the given size.
+     * @param f The file to write
+     * @param size The number of bytes that will be written
+     * @param windowSize The size of each window, at least 1
+     * @throws IOException if the file cannot be created
+     */
+    public MappedOutputStream(File f, long size, int windowSize) throws IOException
+    {
+        if (windowSize < 1)
+            throw new IllegalArgumentException("The window size must be positive");
+
+        file = new RandomAccessFile(f, "rw");
+        file.setLength(size);
+        channel = file.getChannel();
+        this.size = size;
+        this.windowSize = windowSize;
+        mapped = 0;
+        window = null;
+    }
+
+    //-----------------------------------------Public methods-----------------
+    /**
+     * write
+     * Writes a single byte.
+     * @throws IOException if the file is already full
+     */
+    public void write(int b) throws IOException
+    {
+        room();
+        window.put((byte)b);
+    }
+
+    /**
+     * write
+     * Copies len bytes of the array into the file.
+     * @throws IOException if that is more than the file has room for
+     */
+    public void write(byte [] b, int off, int len) throws IOException
+    {
+        while (len > 0)
+        {
+            room();
+
+            int n = Math.min(len, window.remaining());
+            window.put(b, off, n);
+            off = off + n;
+            len = len - n;
+        }
+    }
+
+    /**
+     * close
+     * Closes the file, checking it was filled.
+     * @throws IOException if fewer bytes were written than promised
+     */
+    public void close() throws IOException
+    {
+        long written = mapped - (window == null ? 0 : window.remaining());
+
+        window = null;
+        file.close();
+
+        if (written != size)
+            throw new IOException("Expected " + size + " bytes to be written but there were " + written);
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * room
+     * Maps the next window if the current one is full.
+     * @throws IOException if the whole file has been written
+     */
+    private void room() throws IOException
+    {
+        if (window != null && window.hasRemaining())
+            return;
+
+        if (mapped >= size)
+            throw new IOException("More than the expected " + size + " bytes were written");
+
+        long len = Math.min(windowSize, size - mapped);
+        window = channel.map(FileChannel.MapMode.READ_WRITE, mapped, len);
+        mapped = mapped + len;
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * PairingPriorityQueueHeap
+ *
+ * A pairing heap implementation of the priority queue: a tree in which every
+ * node is of higher priority than its children, with no other shape kept.
+ * Each node points to its first child and to its next sibling:
+ *
+ *        1
+ *        |
+ *        3 -- 2 -- 6        (the children of 1)
+ *        |         |
+ *        4 -- 5    7        (the children of 3 and of 6)
+ *
+ * Enqueuing makes the new node a child of the root, or the root a child of
+ * the new node, and two heaps are melded the same way, both in constant time.
+ * Dequeuing removes the root and pairs its children off left to right, then
+ * joins the pairs right to left into the new root, which is O(log n)
+ * amortized. This suits workloads that enqueue much more than they dequeue,
+ * or that merge queues, such as a scheduler combining the queues of several
+ * sources; an array heap is faster when elements go in and out evenly.
+ *
+ * @author David Porter
+ * @version 1
+ * @param <T> The type of the elements being stored
+ * @param <K> The key value of the elements. Must implement Comparable.
+ */
+public class PairingPriorityQueueHeap <T, K extends Comparable<K>> implements PriorityQueue <T, K>
+{
+
+    //---------------------------------------------Variables----------------
+    private Node<T, K> root; //The node of highest priority, null when empty
+    private int size; //The number of elements in the heap
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * PairingPriorityQueueHeap Constructor
+     * Creates an empty heap.
+     */
+    public PairingPriorityQueueHeap()
+    {
+        root = null;
+        size = 0;
+    }
+
+    //-----------------------------------------Public methods-----------------
+    /**
+     * meld
+     * Moves every element of another heap into this one, in constant time. The
+     * other heap is left empty.
+     * @param other The heap to take the elements of
+     */
+    public void meld(PairingPriorityQueueHeap<T, K> other)
+    {
+        if (other == this)
+            throw new IllegalArgumentException("A heap cannot be melded with itself");
+
+        root = link(root, other.root);
+        size = size + other.size;
+
+        other.root = null;
+        other.size = 0;
+    }
+
+    //-----------------------------------------Interface methods--------------
+    /**
+     * enqueue
+     * Links a new node with the root.
+     * @param priority The Comparable object being used to compare priority.
+     * @param element The data being stored along with the key value.
+     */
+    public void enqueue(K priority, T element)
+    {
+        root = link(root, new Node<T, K>(priority, element));
+        size = size + 1;
+    }
+
+    /**
+     * dequeue
+     * Removes the root; its children are paired up into the new root.
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public void dequeue() throws EmptyQueueException
+    {
+        if (isEmpty())
+            throw new EmptyQueueException();
+
+        root = mergePairs(root.child);
+        size = size - 1;
+    }
+
+    /**
+     * isEmpty
+     * Returns true if the queue is empty.
+     * @return Returns true if the queue is empty.
+     */
+    public boolean isEmpty()
+    {
+        return root == null;
+    }
+
+    /**
+     * front
+     * Returns the element with the highest priority, that of the root.
+     * @return The element with the highest priority
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public T front() throws EmptyQueueException
+    {
+        if (isEmpty())
+            throw new EmptyQueueException();
+
+        return root.element;
+    }
+
+    /**
+     * poll
+     * Removes the element with the highest priority and returns it.
+     * @return The element that had the highest priority
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public T poll() throws EmptyQueueException
+    {
+        T element = front();
+        dequeue();
+
+        return element;
+    }
+
+    /**
+     * replaceTop
+     * Replaces the element with the highest priority by a new one. The root's
+     * node is reused for it and linked with the pairing of the old children.
+     * @param priority The Comparable object being used to compare priority.
+     * @param element The data being stored along with the key value.
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public void replaceTop(K priority, T element) throws EmptyQueueException
+    {
+        if (isEmpty())
+            throw new EmptyQueueException();
+
+        Node<T, K> top = root;
+        Node<T, K> children = top.child;
+
+        top.child = null;
+        top.priority = priority;
+        top.element = element;
+
+        root = link(top, mergePairs(children));
+    }
+
+    /**
+     * enqueueAll
+     * Enqueues every element. Each enqueue takes constant time, so there is
+     * nothing to be gained by doing them together.
+     * @param priorities The priority of each element
+     * @param elements The data, in the same order
+     * @throws IllegalArgumentException if the arrays differ in length
+     */
+    public void enqueueAll(K [] priorities, T [] elements)
+    {
+        if (priorities.length != elements.length)
+            throw new IllegalArgumentException("There must be one priority for each element");
+
+        for (int i = 0; i < elements.length; i++)
+            enqueue(priorities[i], elements[i]);
+    }
+
+    /**
+     * length
+     * Returns the number of elements in the priority queue.
+     * @return the length of the queue
+     */
+    public int length()
+    {
+        return size;
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * link
+     * Joins two trees: the root of lower priority becomes the first child of
+     * the other. On a tie the first stays on top.
+     * @param a The root of one tree, which has no siblings, or null
+     * @param b The root of the other, which has no siblings, or null
+     * @return The root of the joined tree
+     */
+    private Node<T, K> link(Node<T, K> a, Node<T, K> b)
+    {
+        if (a == null)
+            return b;
+
+        if (b == null)
+            return a;
+
+        if (b.priority.compareTo(a.priority) < 0)
+        {
+            Node<T, K> swap = a;
+            a = b;
+            b = swap;
+        }
+
+        b.sibling = a.child;
+        a.child = b;
+
+        return a;
+    }
+
+    /**
+     * mergePairs
+     * Joins a list of siblings into one tree: they are linked in pairs left to
+     * right, then the pairs are linked right to left. Done without recursion,
+     * so a long list of children cannot overflow the stack.
+     * @param first The first sibling, or null
+     * @return The root of the joined tree, or null
+     */
+    private Node<T, K> mergePairs(Node<T, K> first)
+    {
+        Node<T, K> pairs = null; //the linked pairs, the last first, chained by sibling
+
+        while (first != null)
+        {
+            Node<T, K> a = first;
+            Node<T, K> b = a.sibling;
+            first = (b == null) ? null : b.sibling;
+
+            a.sibling = null;
+            if (b != null)
+                b.sibling = null;
+
+            Node<T, K> pair = link(a, b);
+            pair.sibling = pairs;
+            pairs = pair;
+        }
+
+        Node<T, K> joined = null;
+
+        while (pairs != null)
+        {
+            Node<T, K> next = pairs.sibling;
+            pairs.sibling = null;
+            joined = link(pairs, joined);
+            pairs = next;
+        }
+
+        return joined;
+    }
+
+    /**
+     * Node
+     * A node of the heap: an element, its priority, its first child and its
+     * next sibling.
+     * @param <T> The type of data being stored in the node.
+     * @param <K> The Comparable type of the priority.
+     */
+    private static class Node <T, K extends Comparable<K>>
+    {
+        private K priority; //The priority of the element
+        private T element; //The element
+        private Node<T, K> child; //The first child, null for none
+        private Node<T, K> sibling; //The next sibling, null for the last
+
+        /**
+         * Constructor
+         * @param p The priority
+         * @param e The element
+         */
+        private Node(K p, T e)
+        {
+            priority = p;
+            element = e;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+import java.io.*;
+
+/**
+ * PeriodicHuffman
+ *
+ * A single pass Huffman coder for inputs that can only be read once, faster
+ * than the per byte updates of AdaptiveHuffman. The input is coded in blocks
+ * of up to period bytes. The encoder and decoder both start from the same
+ * flat code and, after every block, rebuild the canonical code from the
+ * counts of the bytes seen so far, so the code follows the input a block
+ * behind without any header. The counts are halved after every rebuild, so
+ * older blocks count for less and the code keeps up with input whose make up
+ * drifts. The first block is only FIRST_BLOCK bytes and
+ * each block after is twice the one before, up to the period, so even a
+ * short input soon gets a code fitted to it:
+ *
+ * [count : 32 bits][codes of count bytes][count][codes]...[0 : 32 bits][padding]
+ *
+ * Every count starts at one, so every byte value always has a code. Within a
+ * block the table driven HuffmanEncoder and HuffmanDecoder do the work; only
+ * the rebuilding between blocks costs extra.
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class PeriodicHuffman
+{
+    //---------------------------------------------Constants------------------
+
+    /*
+     * The default number of bytes coded between rebuilds of the code.
+     */
+    public static final int DEFAULT_PERIOD = 1 << 16;
+
+    /*
+     * The width of the count at the start of each block.
+     */
+    private static final int COUNT_BITS = 32;
+
+    /*
+     * The size of the first block, before the code has learnt anything.
+     */
+    public static final int FIRST_BLOCK = 1 << 10;
+
+    //---------------------------------------------Variables----------------
+    private long [] counts; //How often each byte value has been seen, older blocks counting for less. Never 0.
+    private int [] codes; //The current code of each byte value
+    private byte [] lengths; //The current length of each code
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * Constructor
+     * Creates the starting model, in which every byte value is equally likely.
+     */
+    private PeriodicHuffman()
+    {
+        counts = new long [Histogram.SYMBOLS];
+        java.util.Arrays.fill(counts, 1);
+
+        rebuild();
+    }
+
+    //-----------------------------------------Factory methods----------------
+    /**
+     * encode
+     * Encodes every byte of the input with the default period.
+     * @param in The bytes to encode, read once
+     * @param out The stream to write the encoding to
+     * @throws IOException if either stream fails
+     */
+    public static void encode(InputStream in, OutputStream out) throws IOException
+    {
+        encode(in, out, DEFAULT_PERIOD);
+    }
+
+    /**
+     * encode
+     * Encodes every byte of the input, rebuilding the code after every period
+     * bytes, and pads the last byte. The output is flushed but neither stream
+     * is closed.
+     * @param in The bytes to encode, read once
+     * @param out The stream to write the encoding to
+     * @param period The number of bytes in each block, at least 1
+     * @throws IOException if either stream fails
+     */
+    public static void encode(InputStream in, OutputStream out, int period) throws IOException
+    {
+        if (period < 1)
+            throw new IllegalArgumentException("The period must be positive");
+
+        PeriodicHuffman model = new PeriodicHuffman();
+        HuffmanEncoder encoder = new HuffmanEncoder(model.codes, model.lengths, out);
+        byte [] block = new byte [period];
+        int size = Math.min(FIRST_BLOCK, period); //the size of the next block
+
+        for (int n = fill(in, block, size); n > 0; n = fill(in, block, size))
+        {
+            size = (int)Math.min(2L * size, period);
+
+            encoder.writeBits(n, COUNT_BITS);
+            encoder.encode(block, 0, n);
+
+            model.add(block, n);
+            encoder.setCode(model.codes, model.lengths);
+        }
+
+        encoder.writeBits(0, COUNT_BITS); //the end
+        encoder.finish();
+    }
+
+    /**
+     * decode
+     * Decodes an encoding made with the default period.
+     * @param in The encoding
+     * @param out The stream the restored bytes are written to
+     * @throws IOException if the input ends early, is not a valid encoding, or if either stream fails
+     */
+    public static void decode(InputStream in, OutputStream out) throws IOException
+    {
+        decode(in, out, DEFAULT_PERIOD);
+    }
+
+    /**
+     * decode
+     * Decodes every block and writes the restored bytes to the output. The
+     * period must be the one the input was encoded with: no block may be
+     * longer than the encoder would have made it, so a corrupt count is
+     * caught before anything is allocated for it. The output is flushed but
+     * neither stream is closed.
+     * @param in The encoding
+     * @param out The stream the restored bytes are written to
+     * @param period The number of bytes in each block, at least 1
+     * @throws IOException if the input ends early, is not a valid encoding, or if either stream fails
+     */
+    public static void decode(InputStream in, OutputStream out, int period) throws IOException
+    {
+        if (period < 1)
+            throw new IllegalArgumentException("The period must be positive");
+
+        PeriodicHuffman model = new PeriodicHuffman();
+        HuffmanDecoder decoder = new HuffmanDecoder(model.codes, model.lengths);
+        byte [] block = new byte [0];
+        int size = Math.min(FIRST_BLOCK, period); //the longest the next block can be
+
+        decoder.begin(in);
+
+        for (int n = decoder.readBits(COUNT_BITS); n != 0; n = decoder.readBits(COUNT_BITS))
+        {
+            if (n < 0 || n > size)
+                throw new IOException("Corrupt Huffman data: block of " + (n & 0xFFFFFFFFL) + " bytes, at most " + size + " expected");
+
+            size = (int)Math.min(2L * size, period);
+
+            if (block.length < n) //blocks grow up to the period
+                block = new byte [n];
+
+            decoder.decode(block, 0, n);
+            out.write(block, 0, n);
+
+            model.add(block, n);
+            decoder.setCode(model.codes, model.lengths);
+        }
+
+        decoder.endBlock(); //fails if the input ran out
+        out.flush();
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * add
+     * Counts a block and rebuilds the code, then ages the counts.
+     * @param block The bytes of the block
+     * @param n The number of bytes
+     */
+    private void add(byte [] block, int n)
+    {
+        Histogram h = Histogram.of(block, 0, n);
+
+        for (int b = 0; b < Histogram.SYMBOLS; b++)
+            counts[b] = counts[b] + h.getCount(b);
+
+        rebuild();
+
+        for (int b = 0; b < Histogram.SYMBOLS; b++) //halve, rounding up so no count reaches 0
+            counts[b] = counts[b] - counts[b] / 2;
+    }
+
+    /**
+     * rebuild
+     * Builds the canonical code for the current counts, limited to the longest
+     * code the encoder can take.
+     */
+    private void rebuild()
+    {
+        lengths = CanonicalCode.lengths(counts);
+        CanonicalCode.limit(lengths, counts, HuffmanEncoder.MAX_CODE_LENGTH);
+        codes = CanonicalCode.assign(lengths);
+    }
+
+    /**
+     * fill
+     * Reads until the block holds the given number of bytes or the input ends.
+     * @param in The input
+     * @param block The block to fill
+     * @param size The number of bytes wanted
+     * @return The number of bytes read, 0 at the end of the input
+     */
+    private static int fill(InputStream in, byte [] block, int size) throws IOException
+    {
+        int n = 0;
+
+        while (n < size)
+        {
+            int read = in.read(block, n, size - n);
+
+            if (read == -1)
+                break;
+
+            n = n + read;
+        }
+
+        return n;
+    }
+}
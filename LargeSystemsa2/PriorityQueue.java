@@ -50,4 +50,37 @@ public interface PriorityQueue <T, K extends Comparable<K>>
      * empty. 
      */
     public T front() throws EmptyQueueException;
+
+    /**
+     * poll
+     * Removes the element with the highest priority from the queue and
+     * returns it: front and dequeue in one.
+     * @return The object that had the highest priority
+     * @throws EmptyQueueException if the priority queue is already empty
+     */
+    public T poll() throws EmptyQueueException;
+
+    /**
+     * replaceTop
+     * Removes the element with the highest priority and places a new one
+     * in the queue: dequeue and enqueue in one, with only a single pass
+     * down the queue to put it in order.
+     *
+     * @param priority - the assigned priority of the new object
+     * @param element - the entity replacing the front of the queue
+     * @throws EmptyQueueException if the priority queue is empty, so
+     * there is no front to replace
+     */
+    public void replaceTop(K priority, T element) throws EmptyQueueException;
+
+    /**
+     * enqueueAll
+     * Places many elements in the queue at once. Putting them in order
+     * together is cheaper than enqueuing them one by one.
+     *
+     * @param priorities - the assigned priority of each element
+     * @param elements - the entities being added, in the same order
+     * @throws IllegalArgumentException if the arrays differ in length
+     */
+    public void enqueueAll(K [] priorities, T [] elements);
 }
@@ -31,6 +31,11 @@ import java.util.*;
  * Therefore, this could be easily changed to any appropriate list structure
  * which imposes order. 
  * 
+ * Equal priorities come out first in first out: every node is numbered as 
+ * it is made, and of two nodes of equal priority the lower number is taken 
+ * first. So the order never depends on where the heap happened to put them, 
+ * and the same elements enqueued in the same order always come out the same. 
+ * 
  * @author David Porter
  * @version 1
  * @param <T> The type of the the data being stored in this particular PriorityQueue
@@ -45,7 +50,7 @@ public class PriorityQueueHeap <T, K extends Comparable<K>> implements PriorityQ
      * queue:
      * The primary set of data being abstracted as a heap. 
      */
-    private AbstractList queue; 
+    private AbstractList<Node<T, K>> queue; 
 
     /* int endLoc:
      * The end of the heap in the vector. Must always be null. 
@@ -55,6 +60,11 @@ public class PriorityQueueHeap <T, K extends Comparable<K>> implements PriorityQ
      */
     private int endLoc; 
 
+    /* long sequence:
+     * The number given to the next node made, so ties go to the older node. 
+     */
+    private long sequence; 
+
     //---------------------------------------------Constants------------------
 
     /*
@@ -71,7 +81,8 @@ public class PriorityQueueHeap <T, K extends Comparable<K>> implements PriorityQ
     public PriorityQueueHeap ()
     {
         endLoc = START_LOC; //Assign the last location
-        queue = new Vector(); //setup the AbstractList
+        sequence = 0; 
+        queue = new Vector<Node<T, K>>(); //setup the AbstractList
 
         //Create as many initial spaces as required 
         //(usually just 1) in the AbstractList. 
@@ -98,7 +109,7 @@ public class PriorityQueueHeap <T, K extends Comparable<K>> implements PriorityQ
         addToendLoc(); //increment length
 
         //Create Node:
-        Node n = new Node(priority, element);
+        Node<T, K> n = new Node<T, K>(priority, element);
 
         queue.add(addLoc, n); //add node to the last location. 
 
@@ -128,7 +139,7 @@ public class PriorityQueueHeap <T, K extends Comparable<K>> implements PriorityQ
         endLoc = endLoc - 1;
 
         if (! isEmpty())
-            bubbleDown(); //bubble-down heap
+            bubbleDown(START_LOC); //bubble-down heap
     }
 
     /**
@@ -151,7 +162,7 @@ public class PriorityQueueHeap <T, K extends Comparable<K>> implements PriorityQ
     {
         if (! isEmpty())
         {
-            Node <T, K> data = (Node)queue.get(START_LOC);
+            Node <T, K> data = queue.get(START_LOC);
             
             return data.getData();
         }
@@ -169,6 +180,67 @@ public class PriorityQueueHeap <T, K extends Comparable<K>> implements PriorityQ
         return endLoc -1; //subtract 1 because of the offset by position 1
     }
 
+    /**
+     * poll
+     * Removes the element with the highest priority and returns it. 
+     * @return The object that had the highest priority
+     * @throws EmptyQueueException Throws exception if the queue is empty. 
+     */
+    public T poll() throws EmptyQueueException
+    {
+        if (isEmpty())
+            throw new EmptyQueueException ();
+
+        T data = front();
+        dequeue();
+
+        return data;
+    }
+
+    /**
+     * replaceTop
+     * Replaces the element with the highest priority by a new one, which is
+     * then bubbled down. Unlike a dequeue followed by an enqueue, the heap is
+     * only put back in order once. 
+     * @param priority The Comparable object being used to compare priority.
+     * @param element The data being stored along with the key value. 
+     * @throws EmptyQueueException Throws exception if the queue is empty. 
+     */
+    public void replaceTop(K priority, T element) throws EmptyQueueException
+    {
+        if (isEmpty())
+            throw new EmptyQueueException ();
+
+        queue.set(START_LOC, new Node<T, K>(priority, element));
+
+        bubbleDown(START_LOC);
+    }
+
+    /**
+     * enqueueAll
+     * Adds every element to the end of the heap and then restores the heap
+     * from the bottom up (Floyd's method): each parent, last first, is 
+     * bubbled down. Most parents are near the bottom and move only a little, 
+     * so this takes time in proportion to the length of the heap, rather 
+     * than n log(n) for enqueuing one at a time. 
+     * @param priorities The priority of each element
+     * @param elements The data, in the same order
+     */
+    public void enqueueAll(K [] priorities, T [] elements)
+    {
+        if (priorities.length != elements.length)
+            throw new IllegalArgumentException("There must be one priority for each element");
+
+        for (int i = 0; i < elements.length; i++)
+        {
+            queue.add(endLoc, new Node<T, K>(priorities[i], elements[i]));
+            addToendLoc();
+        }
+
+        for (int loc = parent(endLoc - 1); loc >= START_LOC; loc--) //every parent, the last first
+            bubbleDown(loc);
+    }
+
     //------------------------------------------Private methods --------------
     /**
      * parent
@@ -246,15 +318,15 @@ public class PriorityQueueHeap <T, K extends Comparable<K>> implements PriorityQ
         int parent = parent(loc); //its parent
 
         //For clarity, the nodes being worked with:
-        Node childNode = (Node)queue.get(child); //the child node
-        Node parentNode = (Node)queue.get(parent); //the parent node
+        Node<T, K> childNode = queue.get(child); //the child node
+        Node<T, K> parentNode = queue.get(parent); //the parent node
 
         //While not at the root and the parent is of lesser priority 
         //than the current element, swap
         while (parent > 0 && 
-            parentNode.getPriority().compareTo(childNode.getPriority()) > 0)
+            compare(parentNode, childNode) > 0)
         {
-            Object temp = parentNode; //get the parent element and store temporarily
+            Node<T, K> temp = parentNode; //get the parent element and store temporarily
 
             queue.set(parent, childNode); //place the element in it's parent's place. 
 
@@ -265,8 +337,8 @@ public class PriorityQueueHeap <T, K extends Comparable<K>> implements PriorityQ
             parent = parent(parent);
 
             //and reassign nodes
-            childNode = (Node)queue.get(child);
-            parentNode = (Node)queue.get(parent);
+            childNode = queue.get(child);
+            parentNode = queue.get(parent);
 
         }
 
@@ -277,28 +349,29 @@ public class PriorityQueueHeap <T, K extends Comparable<K>> implements PriorityQ
      * is copied over the element with the highest priority (thereby removing it)
      * and then compared with its child nodes. Following the comparison, it is 
      * swapped with the node with the highest priority if it is of a lower priority
+     * @param loc - The element to bubble down, the root after a removal. 
      */
-    private void bubbleDown()
+    private void bubbleDown(int loc)
     {
 
         //Integers - used for clarity
-        int parent = START_LOC;//The parent node, also the node being bubbled down initially.
+        int parent = loc;//The parent node, also the node being bubbled down initially.
         int rChild = rChild(parent); //The right child node of the node being bubbled down...
         int lChild = lChild(parent); //...and the left child node. 
         
         //Parent Node. Corresponding Nodes, declared here for clarity
-        Node parentNode = (Node)queue.get(parent);
-        Node rChildNode = null;//rChild Node.
-        Node lChildNode = null;//lChild Node.
+        Node<T, K> parentNode = queue.get(parent);
+        Node<T, K> rChildNode = null;//rChild Node.
+        Node<T, K> lChildNode = null;//lChild Node.
 
         if (rChild < endLoc)//if the left and right nodes exist, create them now. 
         {
-            rChildNode = (Node)queue.get(rChild);
+            rChildNode = queue.get(rChild);
         }
 
         if (lChild < endLoc) //if the left node exists, create it as a variable here now. 
         {
-            lChildNode = (Node)queue.get(lChild);
+            lChildNode = queue.get(lChild);
         }
 
         //If there is bubbling required engage while loop:
@@ -307,12 +380,12 @@ public class PriorityQueueHeap <T, K extends Comparable<K>> implements PriorityQ
 
         if(rChildNode != null)//avoid empty branches to prevent null pointer exceptions. 
             //is there bubbling down required on the right?
-            if(parentNode.getPriority().compareTo(rChildNode.getPriority()) > 0) 
+            if(compare(parentNode, rChildNode) > 0) 
                 right = true;//if so, set the boolean flag to true to perform operations.
 
         if(lChildNode != null)
             //is there bubbling down required on the left?
-            if (parentNode.getPriority().compareTo(lChildNode.getPriority()) > 0) 
+            if (compare(parentNode, lChildNode) > 0) 
                 left = true;
 
         //if there is bubbling required, engage the loop:
@@ -324,7 +397,7 @@ public class PriorityQueueHeap <T, K extends Comparable<K>> implements PriorityQ
             if (left && right) 
             {
                 //If the node to the right is of greater priority, swap to the right:
-                if (rChildNode.getPriority().compareTo(lChildNode.getPriority()) < 0)  
+                if (compare(rChildNode, lChildNode) < 0)  
                 {
                     swapDown(parentNode, parent, rChildNode, rChild);
                     parent = rChild(parent);//and move iterator down to the right child
@@ -361,13 +434,13 @@ public class PriorityQueueHeap <T, K extends Comparable<K>> implements PriorityQ
             lChildNode = null;
             rChildNode = null;
             
-            parentNode = (Node)queue.get(parent);
+            parentNode = queue.get(parent);
             
             if (rChild < endLoc)
-                rChildNode = (Node)queue.get(rChild);//rChild Node.
+                rChildNode = queue.get(rChild);//rChild Node.
                 
             if (lChild < endLoc)
-                lChildNode = (Node)queue.get(lChild);//lChild Node.
+                lChildNode = queue.get(lChild);//lChild Node.
             
 
             left = false; //reset the swapping
@@ -376,16 +449,34 @@ public class PriorityQueueHeap <T, K extends Comparable<K>> implements PriorityQ
             //Test if it is necessary to bubble to the left and right:
             if (rChildNode !=null)//avoid empty branches to prevent null pointer exceptions. 
                 //is there bubbling down required on the right?
-                if(parentNode.getPriority().compareTo(rChildNode.getPriority()) > 0) 
+                if(compare(parentNode, rChildNode) > 0) 
                     right = true;//if so, set flag to true. 
 
             if (lChildNode !=null)//is there bubbling down required on the left?
-                if (parentNode.getPriority().compareTo(lChildNode.getPriority()) >0) 
+                if (compare(parentNode, lChildNode) > 0) 
                     left = true;
 
         }
     }
 
+    /**
+     * compare
+     * Compares two nodes by priority and then, if equal, by the order they 
+     * were made in, so no two nodes are ever equal. 
+     * @param a The first node
+     * @param b The second node
+     * @return Less than 0 if a comes out first, more than 0 if b does
+     */
+    private int compare(Node<T, K> a, Node<T, K> b)
+    {
+        int c = a.getPriority().compareTo(b.getPriority()); 
+
+        if (c != 0)
+            return c; 
+
+        return Long.compare(a.getSequence(), b.getSequence()); 
+    }
+
     /**
      * swapDown
      * A method which swaps the nodes around, taking Parent and placing it 
@@ -395,9 +486,9 @@ public class PriorityQueueHeap <T, K extends Comparable<K>> implements PriorityQ
      * @param childNode The child node being swapped
      * @param child the location of the child node as an integer
      */
-    public void swapDown(Node parentNode, int parent, Node childNode, int child)
+    public void swapDown(Node<T, K> parentNode, int parent, Node<T, K> childNode, int child)
     {
-        Node temp = childNode; //create a temporary variable
+        Node<T, K> temp = childNode; //create a temporary variable
         queue.set(child, parentNode); //...and...
         queue.set(parent, temp); //...swap
     }
@@ -432,6 +523,11 @@ public class Node <T, K extends Comparable <K>>
      */
     private K priority; 
     
+    /* sequence
+     * The number of the node in the order nodes were made, for breaking ties. 
+     */
+    private long sequence; 
+    
     /**
      * Constructor: priority value given
      * @param dataIn - The data object being assigned. 
@@ -441,6 +537,7 @@ public class Node <T, K extends Comparable <K>>
     {
         setData(dataIn);
         setPriority(givenPriority);
+        sequence = PriorityQueueHeap.this.sequence++; //number it after every node before
     }
     
     /**
@@ -463,6 +560,16 @@ public class Node <T, K extends Comparable <K>>
         return priority;
     }
     
+    /**
+     * getSequence
+     * Returns the number of the node in the order nodes were made. 
+     * @return The sequence number
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+    
     /**
      * setData
      * Sets the data stored in the node. 
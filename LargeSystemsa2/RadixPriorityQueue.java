@@ -0,0 +1,494 @@
+import java.util.*;
+
+/**
+ * RadixPriorityQueue
+ *
+ * A radix heap: a priority queue for non-negative long keys that are
+ * monotone, where no key enqueued is lower than the last one taken from the
+ * front. Building a Huffman tree is such a case, as every branch weighs at
+ * least as much as the two nodes it joins.
+ *
+ * Instead of being kept in order, keys are dropped into 65 buckets by the
+ * highest bit in which they differ from the last key taken:
+ *
+ * bucket 0:  keys equal to last
+ * bucket i:  keys whose highest bit differing from last is bit i - 1
+ *
+ * last = 12 (1100):  13 -> bucket 1,  14, 15 -> bucket 2,  16 - 31 -> bucket 5
+ *
+ * The front is found in bucket 0. When that is empty, the first bucket that
+ * is not has its lowest key taken as the new last, and its keys are spread
+ * into the buckets below, as they now differ from last in a lower bit. A
+ * key only ever moves down, so each is moved at most 64 times, and usually
+ * only a few: no comparisons between keys are made at all.
+ *
+ * Like the LongPriorityQueueHeap, the queue holds either elements or plain
+ * int indices, and keeps keys and payloads in primitive arrays, one pair per
+ * bucket, with no object per element. Equal keys come out in no set order.
+ *
+ * @author David Porter
+ * @version 1
+ * @param <T> The type of the elements being stored
+ */
+public class RadixPriorityQueue <T> implements LongPriorityQueue <T>
+{
+
+    //---------------------------------------------Constants------------------
+
+    /*
+     * The number of buckets: one for keys equal to last, one for each bit.
+     */
+    private static final int BUCKETS = 65;
+
+    /*
+     * The room in a bucket when it is first used.
+     */
+    private static final int BUCKET_CAPACITY = 4;
+
+    //---------------------------------------------Variables----------------
+    private long [][] keys; //The keys in each bucket, null until the bucket is used
+    private int [][] payloads; //The index, or the element's slot, of each key
+    private int [] counts; //The number of keys in each bucket
+    private long last; //The last key taken from the front; no lower key may be enqueued
+    private int size; //The number of keys in all the buckets
+    private Object [] elements; //The element in each slot, null while the queue holds indices
+    private int [] freeSlots; //A stack of the slots not in use
+    private int freeCount; //The number of slots on the stack
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * RadixPriorityQueue Constructor
+     * Creates an empty queue. Any non-negative key may be enqueued first.
+     */
+    public RadixPriorityQueue()
+    {
+        keys = new long [BUCKETS][];
+        payloads = new int [BUCKETS][];
+        counts = new int [BUCKETS];
+        last = 0;
+        size = 0;
+    }
+
+    //-----------------------------------------Interface methods--------------
+    /**
+     * enqueue
+     * Places an element in the queue, unboxing its priority.
+     * @param priority The priority of the element, at least the last one taken
+     * @param element The data being stored along with the key value
+     * @throws IllegalArgumentException if the priority is below the last one taken
+     */
+    public void enqueue(Long priority, T element)
+    {
+        enqueue(priority.longValue(), element);
+    }
+
+    /**
+     * enqueue
+     * Places an element in the queue, storing it in a free slot.
+     * @param priority The priority of the element, at least the last one taken
+     * @param element The data being stored along with the key value
+     * @throws IllegalArgumentException if the priority is below the last one taken
+     * @throws IllegalStateException if the queue holds indices
+     */
+    public void enqueue(long priority, T element)
+    {
+        check(priority);
+        insert(priority, slotFor(element));
+    }
+
+    /**
+     * enqueueIndex
+     * Places an index in the queue.
+     * @param priority The priority of the index, at least the last one taken
+     * @param index The index being stored along with the key value
+     * @throws IllegalArgumentException if the priority is below the last one taken
+     * @throws IllegalStateException if the queue holds elements
+     */
+    public void enqueueIndex(long priority, int index)
+    {
+        check(priority);
+        useIndices();
+        insert(priority, index);
+    }
+
+    /**
+     * enqueueAll
+     * Places every element in the queue, unboxing their priorities.
+     * @param priorities The priority of each element
+     * @param elements The data, in the same order
+     * @throws IllegalArgumentException if the arrays differ in length or a priority is below the last one taken
+     */
+    public void enqueueAll(Long [] priorities, T [] elements)
+    {
+        if (priorities.length != elements.length)
+            throw new IllegalArgumentException("There must be one priority for each element");
+
+        for (int i = 0; i < elements.length; i++)
+            enqueue(priorities[i].longValue(), elements[i]);
+    }
+
+    /**
+     * enqueueAll
+     * Places every element in the queue. Each enqueue takes constant time, so
+     * there is nothing to be gained by doing them together.
+     * @param priorities The priority of each element
+     * @param elements The data, in the same order
+     * @throws IllegalArgumentException if the arrays differ in length or a priority is below the last one taken
+     * @throws IllegalStateException if the queue holds indices
+     */
+    public void enqueueAll(long [] priorities, T [] elements)
+    {
+        if (priorities.length != elements.length)
+            throw new IllegalArgumentException("There must be one priority for each element");
+
+        for (int i = 0; i < elements.length; i++)
+            enqueue(priorities[i], elements[i]);
+    }
+
+    /**
+     * enqueueIndices
+     * Places every index in the queue.
+     * @param priorities The priority of each index
+     * @param indices The indices, in the same order
+     * @throws IllegalArgumentException if the arrays differ in length or a priority is below the last one taken
+     * @throws IllegalStateException if the queue holds elements
+     */
+    public void enqueueIndices(long [] priorities, int [] indices)
+    {
+        if (priorities.length != indices.length)
+            throw new IllegalArgumentException("There must be one priority for each index");
+
+        for (int i = 0; i < indices.length; i++)
+            enqueueIndex(priorities[i], indices[i]);
+    }
+
+    /**
+     * dequeue
+     * Removes the element or index with the highest priority from the queue.
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public void dequeue() throws EmptyQueueException
+    {
+        int slot = removeFront();
+
+        if (elements != null) //let go of the element and free its slot
+        {
+            elements[slot] = null;
+            freeSlots[freeCount++] = slot;
+        }
+    }
+
+    /**
+     * poll
+     * Removes the element with the highest priority and returns it.
+     * @return The element that had the highest priority
+     * @throws EmptyQueueException if the queue is empty
+     * @throws IllegalStateException if the queue holds indices
+     */
+    public T poll() throws EmptyQueueException
+    {
+        T element = front();
+        dequeue();
+
+        return element;
+    }
+
+    /**
+     * pollIndex
+     * Removes the index with the highest priority and returns it.
+     * @return The index that was at the front of the queue
+     * @throws EmptyQueueException if the queue is empty
+     * @throws IllegalStateException if the queue holds elements
+     */
+    public int pollIndex() throws EmptyQueueException
+    {
+        int index = frontIndex();
+        dequeue();
+
+        return index;
+    }
+
+    /**
+     * replaceTop
+     * Replaces the element with the highest priority, unboxing the priority.
+     * @param priority The priority of the new element, at least that of the front
+     * @param element The data being stored along with the key value
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public void replaceTop(Long priority, T element) throws EmptyQueueException
+    {
+        replaceTop(priority.longValue(), element);
+    }
+
+    /**
+     * replaceTop
+     * Replaces the element with the highest priority by a new one, which takes
+     * over its slot.
+     * @param priority The priority of the new element, at least that of the front
+     * @param element The data being stored along with the key value
+     * @throws EmptyQueueException if the queue is empty
+     * @throws IllegalArgumentException if the priority is below that of the front
+     * @throws IllegalStateException if the queue holds indices
+     */
+    public void replaceTop(long priority, T element) throws EmptyQueueException
+    {
+        front(); //checks there is an element to replace, and makes it last
+        check(priority);
+
+        int slot = removeFront();
+        elements[slot] = element;
+        insert(priority, slot);
+    }
+
+    /**
+     * replaceTopIndex
+     * Replaces the index with the highest priority by a new one.
+     * @param priority The priority of the new index, at least that of the front
+     * @param index The index being stored along with the key value
+     * @throws EmptyQueueException if the queue is empty
+     * @throws IllegalArgumentException if the priority is below that of the front
+     * @throws IllegalStateException if the queue holds elements
+     */
+    public void replaceTopIndex(long priority, int index) throws EmptyQueueException
+    {
+        frontIndex(); //checks there is an index to replace, and makes it last
+        check(priority);
+
+        removeFront();
+        insert(priority, index);
+    }
+
+    /**
+     * isEmpty
+     * Returns true if the queue is empty.
+     * @return Returns true if the queue is empty.
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * front
+     * Returns the element with the highest priority.
+     * @return The element with the highest priority
+     * @throws EmptyQueueException if the queue is empty
+     * @throws IllegalStateException if the queue holds indices
+     */
+    @SuppressWarnings("unchecked")
+    public T front() throws EmptyQueueException
+    {
+        settle();
+
+        if (elements == null)
+            throw new IllegalStateException("The queue holds indices, not elements");
+
+        return (T)elements[payloads[0][counts[0] - 1]];
+    }
+
+    /**
+     * frontIndex
+     * Returns the index with the highest priority.
+     * @return The index at the front of the queue
+     * @throws EmptyQueueException if the queue is empty
+     * @throws IllegalStateException if the queue holds elements
+     */
+    public int frontIndex() throws EmptyQueueException
+    {
+        settle();
+
+        if (elements != null)
+            throw new IllegalStateException("The queue holds elements, not indices");
+
+        return payloads[0][counts[0] - 1];
+    }
+
+    /**
+     * frontPriority
+     * Returns the priority of the front of the queue, the lowest in it.
+     * @return The priority at the front of the queue
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public long frontPriority() throws EmptyQueueException
+    {
+        settle();
+
+        return last;
+    }
+
+    /**
+     * length
+     * Returns the number of elements in the priority queue.
+     * @return the length of the queue
+     */
+    public int length()
+    {
+        return size;
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * check
+     * Checks a key keeps the queue monotone.
+     * @param priority The key
+     * @throws IllegalArgumentException if it is below the last key taken
+     */
+    private void check(long priority)
+    {
+        if (priority < last)
+            throw new IllegalArgumentException("The priority " + priority + " is below the last one taken, " + last);
+    }
+
+    /**
+     * bucket
+     * Returns the bucket a key belongs in: one more than the highest bit in which
+     * it differs from last, or 0 if it is equal.
+     * @param key The key, at least last
+     */
+    private int bucket(long key)
+    {
+        return 64 - Long.numberOfLeadingZeros(key ^ last);
+    }
+
+    /**
+     * insert
+     * Adds a key and its payload to their bucket, growing it if it is full.
+     * @param key The priority
+     * @param payload The index or slot that goes with it
+     */
+    private void insert(long key, int payload)
+    {
+        add(bucket(key), key, payload);
+        size = size + 1;
+    }
+
+    /**
+     * add
+     * Adds a key and its payload to a bucket, growing it if it is full.
+     * @param b The bucket
+     * @param key The priority
+     * @param payload The index or slot that goes with it
+     */
+    private void add(int b, long key, int payload)
+    {
+        if (keys[b] == null)
+        {
+            keys[b] = new long [BUCKET_CAPACITY];
+            payloads[b] = new int [BUCKET_CAPACITY];
+        }
+        else if (counts[b] == keys[b].length)
+        {
+            keys[b] = Arrays.copyOf(keys[b], 2 * counts[b]);
+            payloads[b] = Arrays.copyOf(payloads[b], 2 * counts[b]);
+        }
+
+        keys[b][counts[b]] = key;
+        payloads[b][counts[b]] = payload;
+        counts[b] = counts[b] + 1;
+    }
+
+    /**
+     * settle
+     * Makes sure bucket 0 holds the front. If it is empty, the lowest key of
+     * the first bucket that is not becomes last, and that bucket's keys are
+     * spread into the buckets below.
+     * @throws EmptyQueueException if the queue is empty
+     */
+    private void settle() throws EmptyQueueException
+    {
+        if (size == 0)
+            throw new EmptyQueueException();
+
+        if (counts[0] > 0)
+            return;
+
+        int b = 1;
+        while (counts[b] == 0)
+            b++;
+
+        long [] k = keys[b];
+        int [] p = payloads[b];
+        int n = counts[b];
+
+        long lowest = k[0];
+        for (int i = 1; i < n; i++)
+            lowest = Math.min(lowest, k[i]);
+
+        last = lowest;
+        counts[b] = 0;
+
+        for (int i = 0; i < n; i++) //every key now differs from last in a lower bit
+            add(bucket(k[i]), k[i], p[i]);
+    }
+
+    /**
+     * removeFront
+     * Removes the front from bucket 0.
+     * @return Its payload
+     * @throws EmptyQueueException if the queue is empty
+     */
+    private int removeFront() throws EmptyQueueException
+    {
+        settle();
+
+        counts[0] = counts[0] - 1;
+        size = size - 1;
+
+        return payloads[0][counts[0]];
+    }
+
+    /**
+     * slotFor
+     * Stores an element in a free slot, doubling the slots if every one is in use.
+     * @param element The element
+     * @return The slot it is stored in
+     * @throws IllegalStateException if the queue holds indices
+     */
+    private int slotFor(T element)
+    {
+        if (elements == null)
+        {
+            if (! isEmpty())
+                throw new IllegalStateException("The queue holds indices, not elements");
+
+            elements = new Object [BUCKET_CAPACITY];
+            freeSlots = new int [elements.length];
+            freeCount = 0;
+
+            for (int s = elements.length - 1; s >= 0; s--) //slot 0 on top
+                freeSlots[freeCount++] = s;
+        }
+
+        if (freeCount == 0) //every slot in use, double them
+        {
+            int used = elements.length;
+            elements = Arrays.copyOf(elements, 2 * used);
+            freeSlots = new int [2 * used];
+
+            for (int s = 2 * used - 1; s >= used; s--)
+                freeSlots[freeCount++] = s;
+        }
+
+        int slot = freeSlots[--freeCount];
+        elements[slot] = element;
+
+        return slot;
+    }
+
+    /**
+     * useIndices
+     * Readies the queue to hold indices.
+     * @throws IllegalStateException if the queue holds elements
+     */
+    private void useIndices()
+    {
+        if (elements != null)
+        {
+            if (! isEmpty())
+                throw new IllegalStateException("The queue holds elements, not indices");
+
+            elements = null; //empty, so it can change over
+            freeSlots = null;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+import java.io.*;
+
+/**
+ * SplitDecoder
+ *
+ * Restores the bitstream of a SPLIT file, as written by SplitEncoder. Each
+ * block names the code it was coded with: the code of the last coded block,
+ * the code shared in the file's header, or a new one whose lengths follow;
+ * or that it was stored as it is. Only the code changes between blocks; the
+ * one HuffmanDecoder reads on from where it was, so the blocks cost nothing
+ * to find. Stored bytes are copied, not decoded.
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class SplitDecoder
+{
+    //---------------------------------------------Variables----------------
+    private HuffmanDecoder shared; //Holds the tables of the shared code from the header, built once
+    private HuffmanDecoder decoder; //Decodes the bitstream, with the code of the current block
+    private long fileLeft; //The bytes of the file still to be restored
+    private long blockLeft; //The bytes of the current block still to be restored
+    private boolean stored; //Whether the current block is stored rather than coded
+    private boolean started; //Whether a block has been coded, so there is a code to reuse
+    private InputStream bits; //Reads whole bytes of the bitstream, for the lengths of a new code
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * Constructor
+     * Creates a decoder for the file with the given header.
+     * @param header The header of a SPLIT file
+     * @throws IllegalArgumentException if the file is not split
+     */
+    public SplitDecoder(HuffmanHeader header)
+    {
+        if (!header.isSplit())
+            throw new IllegalArgumentException("The file is not split");
+
+        shared = new HuffmanDecoder(header.getCodes(), header.getCodeLengths());
+        decoder = new HuffmanDecoder(shared);
+        fileLeft = header.getLength();
+
+        bits = new InputStream()
+        {
+            public int read() throws IOException
+            {
+                return decoder.readBits(8);
+            }
+        };
+    }
+
+    //-----------------------------------------Public methods-----------------
+    /**
+     * begin
+     * Starts decoding the bitstream, which follows the header in the given stream.
+     * @param in The stream positioned after the header
+     */
+    public void begin(InputStream in)
+    {
+        decoder.begin(in);
+        blockLeft = 0;
+        started = false;
+    }
+
+    /**
+     * read
+     * Restores up to len bytes into part of an array. Fewer are read only at
+     * the end of a block or of the file; after the last byte the padding of
+     * the bitstream is checked and skipped.
+     * @param b The array the restored bytes are written to
+     * @param off The first location to write
+     * @param len The most bytes to restore
+     * @return The number of bytes restored, or -1 if the file has ended
+     * @throws IOException if the input ends early or is corrupt
+     */
+    public int read(byte [] b, int off, int len) throws IOException
+    {
+        if (fileLeft == 0)
+            return -1;
+
+        if (len == 0)
+            return 0;
+
+        if (blockLeft == 0)
+            nextBlock();
+
+        int n = (int)Math.min(len, blockLeft);
+
+        if (stored)
+            decoder.readBytes(b, off, n);
+        else
+            decoder.decode(b, off, n);
+
+        blockLeft = blockLeft - n;
+        fileLeft = fileLeft - n;
+
+        if (fileLeft == 0)
+            decoder.endBlock();
+
+        return n;
+    }
+
+    /**
+     * decode
+     * Restores the whole file and writes it to the output. The output is
+     * flushed but neither stream is closed.
+     * @param in The stream positioned after the header
+     * @param out The stream the restored bytes are written to
+     * @throws IOException if the input ends early or is corrupt, or either stream fails
+     */
+    public void decode(InputStream in, OutputStream out) throws IOException
+    {
+        byte [] buffer = new byte [HuffmanDecoder.BUFFER_SIZE];
+
+        begin(in);
+
+        for (int n = read(buffer, 0, buffer.length); n != -1; n = read(buffer, 0, buffer.length))
+            out.write(buffer, 0, n);
+
+        out.flush();
+    }
+
+    /**
+     * unread
+     * Returns the bytes read from the input past the end of the bitstream,
+     * which must be given back to it before anything after is read. Only
+     * valid once read has returned -1.
+     * @return The bytes read but not decoded, in the order they came
+     */
+    public byte [] unread()
+    {
+        return decoder.unread();
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * nextBlock
+     * Reads the header of the next block and sets the decoder to its code.
+     * @throws IOException if the header is corrupt
+     */
+    private void nextBlock() throws IOException
+    {
+        int mode = decoder.readBits(SplitEncoder.MODE_BITS);
+        long length = decoder.readBits(SplitEncoder.LENGTH_BITS) & 0xFFFFFFFFL;
+
+        if (length < 1 || length > Math.min(fileLeft, SplitEncoder.MAX_BLOCK_SIZE))
+            throw new IOException("Corrupt Huffman data: a block of " + length + " bytes");
+
+        stored = false;
+
+        if (mode == SplitEncoder.STORED)
+        {
+            stored = true;
+        }
+        else if (mode == SplitEncoder.REUSE)
+        {
+            if (!started)
+                throw new IOException("Corrupt Huffman data: the first block reuses a code");
+        }
+        else if (mode == SplitEncoder.SHARED)
+        {
+            decoder.setCode(shared); //the tables built for the header, not built again
+        }
+        else if (mode == SplitEncoder.NEW)
+        {
+            byte [] lengths = HuffmanHeader.readLengths(bits);
+            decoder.setCode(CanonicalCode.assign(lengths), lengths);
+        }
+        else
+        {
+            throw new IOException("Corrupt Huffman data: unknown block mode " + mode);
+        }
+
+        blockLeft = length;
+        started = started || !stored;
+    }
+}
@@ -0,0 +1,423 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * SplitEncoder
+ *
+ * Encodes a file as a run of blocks cut where the make up of the input
+ * changes, each coded with whichever code makes it shortest. A single code
+ * for the whole file fits none of its parts well when, say, text and binary
+ * alternate; a block per part, each with a code of its own, fits them all.
+ *
+ * The input is read a segment at a time. A segment is added to the block
+ * being gathered unless coding the two apart promises to save more than a
+ * new code costs to describe, going by their entropy:
+ *
+ * bits(block + segment) - bits(block) - bits(segment) > SPLIT_BITS
+ *
+ * where bits(h) is the sum over the byte values of count * -log2(share).
+ * The entropy of a segment costs a pass over 256 counts, not a code, so
+ * splitting adds little to the time spent coding.
+ *
+ * Once cut, each block is written in the cheapest of four ways, the cost of
+ * a code being the sum of count * code length over the block's bytes, plus
+ * the code lengths it must carry:
+ *
+ *  REUSE  the code of the last coded block, which costs nothing to describe
+ *  SHARED the code of the whole file, kept once in the file's header
+ *  NEW    a code built from the block's own counts, which follows the block
+ *  STORED no code: the bytes as they are, 8 bits each
+ *
+ * Data that is already compressed or encrypted is stored, so it comes out
+ * no larger than it went in and is copied rather than coded both ways.
+ *
+ * Each block is written into the one bitstream behind a small header:
+ *
+ * [mode : 8 bits][length : 32 bits][code lengths, if NEW][codes]...
+ * [mode][length][padding to a whole byte, if STORED][bytes]...
+ *
+ * The code lengths are packed as in a HuffmanHeader; otherwise only stored
+ * blocks and the end of the last block are padded to a whole byte. No
+ * block is longer than MAX_BLOCK_SIZE, so memory use is bounded however
+ * large the file.
+ *
+ * @author David Porter
+ * @version 1
+ */
+public class SplitEncoder
+{
+    //---------------------------------------------Constants------------------
+
+    /*
+     * The modes of a block: the code it is coded with, or none.
+     */
+    public static final int REUSE = 0;
+    public static final int SHARED = 1;
+    public static final int NEW = 2;
+    public static final int STORED = 3;
+
+    /*
+     * The longest block. A longer run of much the same input is cut anyway,
+     * and the blocks after reuse the code.
+     */
+    public static final int MAX_BLOCK_SIZE = 1 << 22;
+
+    /*
+     * The fewest bits a split must promise to save, about what the code
+     * lengths of a new code cost to describe.
+     */
+    public static final int SPLIT_BITS = 8 * 40;
+
+    /*
+     * The width of the mode and of the length at the start of a block.
+     */
+    public static final int MODE_BITS = 8;
+    public static final int LENGTH_BITS = 32;
+
+    //---------------------------------------------Variables----------------
+    private CodeTable shared; //The code of the whole file, written in the header
+    private CodeTable previous; //The code of the last coded block, null before the first
+    private HuffmanOptions options; //The segment size, and the settings new codes are built with
+    private int segmentSize; //The length of the pieces the input is examined in
+    private long [] counts; //Where the bytes encoded are also counted, null if they are not
+    private int [] modes; //The number of blocks written in each mode
+
+    //-----------------------------------------Constructors--------------------
+    /**
+     * Constructor
+     * Creates a split encoder whose blocks may share the given code, examining
+     * the input in segments of the options' split size.
+     * @param lengths The length of the code of each byte value shared by the
+     * blocks, as written in the header
+     * @param opts The split size, and the settings new codes are built with
+     * @throws IllegalArgumentException if the split size is not between 1 and MAX_BLOCK_SIZE
+     */
+    public SplitEncoder(byte [] lengths, HuffmanOptions opts)
+    {
+        if (opts.getSplitSize() < 1 || opts.getSplitSize() > MAX_BLOCK_SIZE)
+            throw new IllegalArgumentException("The split size must be between 1 and " + MAX_BLOCK_SIZE);
+
+        shared = new CodeTable(lengths);
+        options = opts;
+        segmentSize = opts.getSplitSize();
+        modes = new int [STORED + 1];
+    }
+
+    //-----------------------------------------Public methods-----------------
+    /**
+     * setCounts
+     * Has every byte encoded from now on counted into the given array as well,
+     * so a code built from estimated counts can be measured against the exact
+     * ones. The counts of each segment are taken anyway, so this costs nothing.
+     * @param c The counts, indexed by byte value, or null to count nothing
+     */
+    public void setCounts(long [] c)
+    {
+        counts = c;
+    }
+
+    /**
+     * getBlockCount
+     * Returns the number of blocks written in the given mode.
+     * @param mode REUSE, SHARED, NEW or STORED
+     */
+    public int getBlockCount(int mode)
+    {
+        return modes[mode];
+    }
+
+    /**
+     * encode
+     * Splits the file into blocks and writes them, each behind its own header.
+     * The output is flushed but not closed.
+     * @param input The file to encode
+     * @param out The stream to write to, positioned after the file's header
+     * @throws IOException if the file cannot be read or the output written
+     */
+    public void encode(File input, OutputStream out) throws IOException
+    {
+        InputStream in = new FileInputStream(input);
+
+        try
+        {
+            encode(in, out);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * encode
+     * Splits everything the stream holds into blocks and writes them, each
+     * behind its own header. The output is flushed but neither stream is closed.
+     * @param in The bytes to encode
+     * @param out The stream to write to, positioned after the file's header
+     * @throws IOException if either stream fails
+     */
+    public void encode(InputStream in, OutputStream out) throws IOException
+    {
+        HuffmanEncoder encoder = new HuffmanEncoder(shared.getCodes(), shared.getCodeLengths(), out);
+        byte [] segment = new byte [segmentSize];
+        byte [] block = new byte [segmentSize];
+        int count = 0; //the bytes of the block gathered so far
+        long [] blockCounts = new long [Histogram.SYMBOLS];
+
+        previous = null;
+
+        for (int n = readSegment(in, segment); n > 0; n = readSegment(in, segment))
+        {
+            Histogram h = Histogram.of(segment, 0, n);
+            long [] segmentCounts = h.getCounts();
+
+            if (counts != null)
+                add(counts, segmentCounts);
+
+            if (count > 0 && (count + n > MAX_BLOCK_SIZE || isChange(blockCounts, segmentCounts)))
+            {
+                writeBlock(encoder, block, count, new Histogram(blockCounts));
+                count = 0;
+                blockCounts = new long [Histogram.SYMBOLS];
+            }
+
+            if (count + n > block.length) //grow the block as it gathers, up to MAX_BLOCK_SIZE
+                block = java.util.Arrays.copyOf(block, Math.min(Math.max(2 * block.length, count + n), MAX_BLOCK_SIZE));
+
+            System.arraycopy(segment, 0, block, count, n);
+            count = count + n;
+            add(blockCounts, segmentCounts);
+        }
+
+        if (count > 0)
+            writeBlock(encoder, block, count, new Histogram(blockCounts));
+
+        encoder.finish();
+    }
+
+    /**
+     * store
+     * Writes a whole file as stored blocks, for when no code could make it
+     * shorter. The file system copies the bytes with transferTo, so they are
+     * never read into the process at all.
+     * @param input The file to store
+     * @param out The channel to write to, positioned after the file's header
+     * @throws IOException if the file cannot be read or the output written
+     */
+    public static void store(File input, FileChannel out) throws IOException
+    {
+        FileInputStream in = new FileInputStream(input);
+
+        try
+        {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate((MODE_BITS + LENGTH_BITS) / 8); //whole bytes, so every block stays aligned
+
+            for (long position = 0; position < size; position = position + MAX_BLOCK_SIZE)
+            {
+                int len = (int)Math.min(MAX_BLOCK_SIZE, size - position);
+
+                header.clear();
+                header.put((byte)STORED);
+                header.putInt(len);
+                header.flip();
+
+                while (header.hasRemaining())
+                    out.write(header);
+
+                for (long done = 0; done < len; )
+                {
+                    long n = channel.transferTo(position + done, len - done, out);
+
+                    if (n <= 0 && position + done >= channel.size())
+                        throw new EOFException("The file shrank while being stored");
+
+                    done = done + n;
+                }
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * bits
+     * Returns the number of bits the given counts would ideally code to, each
+     * byte costing -log2 of the share of them it makes up.
+     * @param counts The counts, indexed by byte value
+     * @return The entropy of the counts times their total, in bits
+     */
+    public static double bits(long [] counts)
+    {
+        long total = 0;
+
+        for (int b = 0; b < counts.length; b++)
+            total = total + counts[b];
+
+        double bits = 0;
+
+        for (int b = 0; b < counts.length; b++)
+        {
+            if (counts[b] > 0)
+                bits = bits + counts[b] * Math.log((double)total / counts[b]);
+        }
+
+        return bits / Math.log(2);
+    }
+
+    //------------------------------------------Private methods --------------
+    /**
+     * isChange
+     * Returns whether the segment is made up differently enough from the block
+     * that coding them apart would save more than SPLIT_BITS.
+     * @param blockCounts The counts of the block gathered so far
+     * @param segmentCounts The counts of the segment that follows it
+     */
+    private boolean isChange(long [] blockCounts, long [] segmentCounts)
+    {
+        long [] both = blockCounts.clone();
+        add(both, segmentCounts);
+
+        return bits(both) - bits(blockCounts) - bits(segmentCounts) > SPLIT_BITS;
+    }
+
+    /**
+     * writeBlock
+     * Chooses the cheapest way to write a block and writes the block's header
+     * and contents. On a tie the way that costs least to describe or decode
+     * is chosen, and a code must save at least a bit to be chosen over
+     * storing the block, which is faster both ways. A code of the block's own
+     * is only built if the entropy of its counts, which no code can beat, is
+     * below the cost of storing it.
+     * @param encoder The encoder of the bitstream
+     * @param block The array holding the block
+     * @param len The length of the block
+     * @param h The counts of the block
+     */
+    private void writeBlock(HuffmanEncoder encoder, byte [] block, int len, Histogram h) throws IOException
+    {
+        int mode = STORED;
+        CodeTable table = null;
+        long stored = 8L * len; //and the padding to a whole byte, at most 7 bits
+        long best = stored;
+        byte [] lengths = null;
+
+        if (bits(h.getCounts()) < best)
+        {
+            CodeTable own;
+
+            if (options.getCodeCache() != null)
+                own = options.getCodeCache().get(h);
+            else
+                own = new CodeTable(new HuffmanTree(h, options).getCodeLengths());
+
+            ByteArrayOutputStream packed = new ByteArrayOutputStream();
+            HuffmanHeader.writeLengths(own.getCodeLengths(), packed);
+
+            if (cost(own, h) + 8L * packed.size() < best)
+            {
+                mode = NEW;
+                table = own;
+                best = cost(own, h) + 8L * packed.size();
+                lengths = packed.toByteArray();
+            }
+        }
+
+        if (cost(shared, h) <= best && cost(shared, h) < stored) //the shared code costs nothing but its bits
+        {
+            mode = SHARED;
+            table = shared;
+            best = cost(shared, h);
+        }
+
+        if (previous != null && cost(previous, h) <= best && cost(previous, h) < stored)
+        {
+            mode = REUSE;
+            table = previous;
+        }
+
+        encoder.writeBits(mode, MODE_BITS);
+        encoder.writeBits(len, LENGTH_BITS);
+
+        if (mode == STORED)
+        {
+            encoder.writeBytes(block, 0, len);
+        }
+        else
+        {
+            if (mode == NEW) //the lengths are whole bytes, so are written as they are
+            {
+                for (int i = 0; i < lengths.length; i++)
+                    encoder.writeBits(lengths[i], 8);
+            }
+
+            if (table != previous)
+                encoder.setCode(table.getCodes(), table.getCodeLengths());
+
+            encoder.encode(block, 0, len);
+            previous = table;
+        }
+
+        modes[mode]++;
+    }
+
+    /**
+     * cost
+     * Returns the number of bits a code codes the counts to, or Long.MAX_VALUE
+     * if the code has none for a byte that occurs.
+     * @param table The code
+     * @param h The counts
+     */
+    private static long cost(CodeTable table, Histogram h)
+    {
+        byte [] lengths = table.getCodeLengths();
+
+        for (int b = 0; b < lengths.length; b++)
+        {
+            if (lengths[b] == 0 && h.getCount(b) > 0)
+                return Long.MAX_VALUE;
+        }
+
+        return table.cost(h);
+    }
+
+    /**
+     * readSegment
+     * Reads a whole segment, shorter only at the end of the input.
+     * @param in The input
+     * @param segment The array to read into
+     * @return The number of bytes read, 0 at the end of the input
+     */
+    private static int readSegment(InputStream in, byte [] segment) throws IOException
+    {
+        int n = 0;
+
+        while (n < segment.length)
+        {
+            int r = in.read(segment, n, segment.length - n);
+
+            if (r == -1)
+                break;
+
+            n = n + r;
+        }
+
+        return n;
+    }
+
+    /**
+     * add
+     * Adds one set of counts to another.
+     * @param to The counts added to
+     * @param from The counts added
+     */
+    private static void add(long [] to, long [] from)
+    {
+        for (int b = 0; b < to.length; b++)
+            to[b] = to[b] + from[b];
+    }
+}